@@ -0,0 +1,80 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Archiver;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.UnArchiver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archiving and unArchiving of a generated file by the order-1 context model against one order-0 table.
+ * The compression ratio of every corpus and order is printed after the trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextBenchmark {
+    @Param({"text", "log", "skewed"})
+    public String corpus;
+
+    @Param({"16777216"})
+    public int size;
+
+    @Param({"0", "1"})
+    public int contextOrder;
+
+    /** Folder of the files */
+    private Path folder;
+
+    private Path source;
+
+    private Path archive;
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("archiver-benchmark");
+        source = Files.write(folder.resolve(corpus), Corpora.generate(corpus, size));
+        archive = folder.resolve(corpus + ".par");
+        target = folder.resolve(corpus + ".out");
+        archive(null);
+    }
+
+    @Benchmark
+    public int archive(ProcessedBytes processed) throws IOException {
+        Archiver archiver = new Archiver();
+        archiver.setContextOrder(contextOrder);
+        count(processed);
+        return archiver.archive(source.toString(), archive.toString());
+    }
+
+    @Benchmark
+    public int unArchive(ProcessedBytes processed) throws IOException {
+        count(processed);
+        return new UnArchiver().unArchive(archive.toString(), target.toString());
+    }
+
+    /** Counts the file as processed, the counter is absent when the method is called from the setup */
+    private void count(ProcessedBytes processed) {
+        if (processed != null) {
+            processed.bytes += size;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.out.printf("%nRatio of %s by order %d: %.4f%n", corpus, contextOrder, (double) Files.size(archive) / size);
+        for (Path file : new Path[]{source, archive, target}) {
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(folder);
+    }
+}
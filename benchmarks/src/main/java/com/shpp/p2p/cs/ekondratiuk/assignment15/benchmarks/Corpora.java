@@ -0,0 +1,106 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generated data for benchmarks. The data depends only on the corpus name and the size,
+ * so results of different runs and machines are comparable.
+ */
+public class Corpora {
+    /** Seed of all the generators */
+    private static final long SEED = 15;
+
+    /** Amount of words in the vocabulary of the text corpus */
+    private static final int VOCABULARY_SIZE = 4096;
+
+    /**
+     * Generates the corpus
+     *
+     * @param name "text" (words with Zipf-like frequencies), "log" (JSON log records), "random" (uniform bytes)
+     *             or "skewed" (bytes with geometric frequencies)
+     * @param size Size of the data in bytes
+     */
+    public static byte[] generate(String name, int size) {
+        switch (name) {
+            case "text":
+                return text(size);
+            case "log":
+                return log(size);
+            case "random":
+                return random(size);
+            case "skewed":
+                return skewed(size);
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + name);
+        }
+    }
+
+    /** Lines of lowercase words, rare words are long and frequent ones are short like in a natural text */
+    private static byte[] text(int size) {
+        Random random = new Random(SEED);
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 1 + Math.min(12, Integer.SIZE - Integer.numberOfLeadingZeros(i) / 2 + random.nextInt(3));
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = word.toString();
+        }
+        byte[] data = new byte[size];
+        int position = 0;
+        int wordsInLine = 0;
+        while (position < size) {
+            /* Zipf-like choice: the word rank is the exponent of a uniform value */
+            int rank = (int) Math.min(VOCABULARY_SIZE - 1, Math.exp(random.nextDouble() * Math.log(VOCABULARY_SIZE)) - 1);
+            String word = vocabulary[rank];
+            for (int i = 0; i < word.length() && position < size; i++) {
+                data[position++] = (byte) word.charAt(i);
+            }
+            if (position < size) {
+                data[position++] = (byte) (++wordsInLine % 12 == 0 ? '\n' : ' ');
+            }
+        }
+        return data;
+    }
+
+    /** Lines of JSON records with the same keys, where bytes depend much on the previous ones */
+    private static byte[] log(int size) {
+        Random random = new Random(SEED);
+        String[] levels = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+        String[] users = {"alice", "bob", "carol", "dave", "eve"};
+        StringBuilder text = new StringBuilder(size + 256);
+        long time = 1_700_000_000_000L;
+        while (text.length() < size) {
+            time += random.nextInt(1000);
+            text.append("{\"time\":").append(time)
+                    .append(",\"level\":\"").append(levels[random.nextInt(levels.length)])
+                    .append("\",\"user\":\"").append(users[random.nextInt(users.length)])
+                    .append("\",\"path\":\"/api/v1/items/").append(random.nextInt(10000))
+                    .append("\",\"status\":").append(random.nextInt(8) == 0 ? 404 : 200)
+                    .append(",\"ms\":").append(random.nextInt(500)).append("}\n");
+        }
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) text.charAt(i);
+        }
+        return data;
+    }
+
+    /** Uniform bytes, which can't be compressed */
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(SEED).nextBytes(data);
+        return data;
+    }
+
+    /** Bytes where every next value is twice as rare as the previous one, so codes are long for rare bytes */
+    private static byte[] skewed(int size) {
+        Random random = new Random(SEED);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) Math.min(255, Long.numberOfTrailingZeros(random.nextLong() | Long.MIN_VALUE));
+        }
+        return data;
+    }
+}
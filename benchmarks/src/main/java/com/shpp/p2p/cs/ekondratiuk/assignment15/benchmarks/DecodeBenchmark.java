@@ -0,0 +1,67 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.BlockDecoder;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.BlockEncoder;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one block by the multi-symbol table against the single-symbol one,
+ * and of a block of four interleaved streams against a block of one stream.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    /** Header of a block: raw size, encoded size and checksum */
+    private static final int BLOCK_HEADER_SIZE = 3 * Integer.BYTES;
+
+    @Param({"text", "random", "skewed"})
+    public String corpus;
+
+    @Param({"1048576"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean multiSymbol;
+
+    @Param({"1", "4"})
+    public int streams;
+
+    private final BlockDecoder decoder = new BlockDecoder();
+
+    /** Encoded block body */
+    private byte[] encodedBody;
+
+    /** Buffer for decoded data */
+    private byte[] decodedData;
+
+    @Setup
+    public void setUp() throws IOException {
+        BlockEncoder encoder = new BlockEncoder();
+        encoder.setStreams(streams);
+        encoder.encode(ByteBuffer.wrap(Corpora.generate(corpus, size)));
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.writeBlock(new DataOutputStream(block));
+        encodedBody = Arrays.copyOfRange(block.toByteArray(), BLOCK_HEADER_SIZE, block.size());
+        decodedData = new byte[size];
+        decoder.setMultiSymbol(multiSymbol);
+    }
+
+    @Benchmark
+    public byte[] decode(ProcessedBytes processed) throws IOException {
+        decoder.decode(encodedBody, 0, encodedBody.length, decodedData, 0, size);
+        processed.bytes += size;
+        return decodedData;
+    }
+}
@@ -0,0 +1,117 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Archiver;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.UnArchiver;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Archiving and unArchiving of a large generated file, whole-file and by blocks,
+ * with DeflaterOutputStream and InflaterInputStream of the same file as the baseline.
+ * The file is generated in the temporary folder once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileBenchmark {
+    /** Buffer size of the baseline streams */
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    @Param({"text", "skewed"})
+    public String corpus;
+
+    @Param({"67108864"})
+    public int size;
+
+    /** Block size, 0 for the whole-file mode */
+    @Param({"0", "1048576"})
+    public int blockSize;
+
+    /** Folder of the files */
+    private Path folder;
+
+    private Path source;
+
+    private Path archive;
+
+    private Path deflated;
+
+    private Path target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        folder = Files.createTempDirectory("archiver-benchmark");
+        source = Files.write(folder.resolve(corpus), Corpora.generate(corpus, size));
+        archive = folder.resolve(corpus + ".par");
+        deflated = folder.resolve(corpus + ".deflate");
+        target = folder.resolve(corpus + ".out");
+        archive(null);
+        deflate(null);
+    }
+
+    @Benchmark
+    public int archive(ProcessedBytes processed) throws IOException {
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(blockSize);
+        count(processed);
+        return archiver.archive(source.toString(), archive.toString());
+    }
+
+    @Benchmark
+    public int unArchive(ProcessedBytes processed) throws IOException {
+        count(processed);
+        return new UnArchiver().unArchive(archive.toString(), target.toString());
+    }
+
+    @Benchmark
+    public long deflate(ProcessedBytes processed) throws IOException {
+        count(processed);
+        Deflater deflater = new Deflater();
+        try (OutputStream out = new DeflaterOutputStream(Files.newOutputStream(deflated), deflater, STREAM_BUFFER_SIZE)) {
+            return Files.copy(source, out);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Benchmark
+    public long inflate(ProcessedBytes processed) throws IOException {
+        count(processed);
+        Inflater inflater = new Inflater();
+        try (InputStream in = new InflaterInputStream(Files.newInputStream(deflated), inflater, STREAM_BUFFER_SIZE)) {
+            return Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /** Counts the file as processed, the counter is absent when the method is called from the setup */
+    private void count(ProcessedBytes processed) {
+        if (processed != null) {
+            processed.bytes += size;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path file : new Path[]{source, archive, deflated, target}) {
+            Files.deleteIfExists(file);
+        }
+        Files.deleteIfExists(folder);
+    }
+}
@@ -0,0 +1,23 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counter of processed bytes. JMH reports it in bytes per second next to the operations,
+ * so the throughput of benchmarks with different data sizes is compared in MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ProcessedBytes {
+    /** Amount of uncompressed bytes processed in the iteration */
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.benchmarks;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.BlockDecoder;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.BlockEncoder;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Histogram;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanTree;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stages of archiving one block in memory: frequencies, the Huffman tree, the code table,
+ * encoding and decoding, with Deflater and Inflater of the same data as the baseline.
+ * Run with "-prof gc" to get allocations per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+    /** Header of a block: raw size, encoded size and checksum */
+    private static final int BLOCK_HEADER_SIZE = 3 * Integer.BYTES;
+
+    @Param({"text", "random", "skewed"})
+    public String corpus;
+
+    @Param({"1048576"})
+    public int size;
+
+    /** Data of the block */
+    private byte[] data;
+
+    /** Frequencies of the data */
+    private final long[] frequencies = new long[256];
+
+    /** Huffman tree of the data, it is rebuilt by every tree operation */
+    private final HuffmanTree tree = new HuffmanTree();
+
+    private final long[] codes = new long[256];
+
+    private final int[] codeLengths = new int[256];
+
+    private final BlockEncoder encoder = new BlockEncoder();
+
+    private final BlockDecoder decoder = new BlockDecoder();
+
+    /** Encoded block body */
+    private byte[] encodedBody;
+
+    /** Buffer for decoded or inflated data */
+    private byte[] processedData;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    private final Inflater inflater = new Inflater();
+
+    /** Buffer for deflated data */
+    private byte[] deflatedData;
+
+    /** Amount of bytes in the deflated data */
+    private int deflatedSize;
+
+    @Setup
+    public void setUp() throws IOException {
+        data = Corpora.generate(corpus, size);
+        Histogram.count(ByteBuffer.wrap(data), frequencies);
+        tree.build(frequencies);
+        encoder.encode(ByteBuffer.wrap(data));
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        encoder.writeBlock(new DataOutputStream(block));
+        encodedBody = Arrays.copyOfRange(block.toByteArray(), BLOCK_HEADER_SIZE, block.size());
+        processedData = new byte[size];
+        deflatedData = new byte[size + size / 1000 + 64];
+        deflatedSize = deflate();
+    }
+
+    @Benchmark
+    public long[] frequencies(ProcessedBytes processed) {
+        Arrays.fill(frequencies, 0);
+        Histogram.count(ByteBuffer.wrap(data), frequencies);
+        processed.bytes += size;
+        return frequencies;
+    }
+
+    @Benchmark
+    public HuffmanTree tree() {
+        tree.build(frequencies);
+        return tree;
+    }
+
+    @Benchmark
+    public long[] treeCodeTable() {
+        tree.getCodes(codes, codeLengths);
+        return codes;
+    }
+
+    @Benchmark
+    public long[] canonicalCodeTable() throws IOException {
+        CanonicalCodes.buildCodes(frequencies, codes, codeLengths);
+        return codes;
+    }
+
+    @Benchmark
+    public int encode(ProcessedBytes processed) throws IOException {
+        encoder.encode(ByteBuffer.wrap(data));
+        processed.bytes += size;
+        return encoder.getEncodedSize();
+    }
+
+    @Benchmark
+    public byte[] decode(ProcessedBytes processed) throws IOException {
+        decoder.decode(encodedBody, 0, encodedBody.length, processedData, 0, size);
+        processed.bytes += size;
+        return processedData;
+    }
+
+    @Benchmark
+    public int deflate(ProcessedBytes processed) {
+        processed.bytes += size;
+        return deflate();
+    }
+
+    @Benchmark
+    public byte[] inflate(ProcessedBytes processed) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(deflatedData, 0, deflatedSize);
+        inflater.inflate(processedData);
+        processed.bytes += size;
+        return processedData;
+    }
+
+    /** Deflates the data to the buffer */
+    private int deflate() {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        return deflater.deflate(deflatedData);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflater.end();
+        inflater.end();
+    }
+}
@@ -2,22 +2,128 @@ package com.shpp.p2p.cs.ekondratiuk.assignment15;
 
 import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
 
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiveDirectory;
 import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Archiver;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.BatchProcessor;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.CompressionDaemon;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.DaemonClient;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Dictionary;
 import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.UnArchiver;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ChannelOutputStream;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
 import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Tools;
 
 
-import java.io.IOException;
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * Archives and UnArchives files due to input program argument
  * using the Huffman algorithm
+ * Options "-b size" (block size, like 1048576, 512K or 4M) and "-j threads" turn on the block mode,
+ * where blocks are coded by their own tables in parallel. Blocks are decoded in parallel too.
+ * With the "-a" or "-u" flag the source or the target may be "-", which means the standard input or output,
+ * then the data is processed in one pass and messages go to the standard error if the output is the standard one.
+ * A directory as the source is archived to a multi-file archive, "-l archive" lists its entries,
+ * "-x archive entry" extracts one entry to a new file named by the last part of the entry name.
+ * "-t archive" tests the archive: it is decoded in memory, blocks are decoded and checked by checksums in parallel.
+ * "-B -a source..." or "-B -u source..." archives or unArchives many files concurrently in one process:
+ * sources are files, directories, glob patterns or "-" for a list of files on the standard input,
+ * "-j threads" sets the amount of files in work and "-M size" limits their total size.
+ * Option "-r offset:length" unArchives only the range of the original file from an archive of the block mode.
+ * Option "-s 4" codes every block by four streams which are decoded together, it turns on the block mode.
+ * Option "-c bits" limits code lengths of archiving, 15 bits by default.
+ * Option "-o 1" codes every byte by the table of the previous byte, which compresses structured text better.
+ * "-T dictionary sample..." trains a dictionary on all the files of the samples, which are files, directories
+ * or glob patterns. Option "-d dictionary" archives files by the dictionary in one pass without tables
+ * in their archives, and loads the dictionary which such archives need for unArchiving.
+ * Option "-m text" or "-m json" prints time, bytes and throughput of every phase of the process.
+ * "-S address" starts the daemon on the port of the local host or on the Unix socket, which archives
+ * and unArchives on requests with the options it is started with. Option "-R address" sends archiving
+ * and unArchiving, single or batch ones, to the daemon instead of doing them in this process,
+ * the standard streams are sent as data and the result comes back.
  */
 public class Assignment15Part1 {
 
+    /** Size of blocks in the block mode, 0 if the block mode is off */
+    private static int blockSize;
+
+    /** Amount of threads which encode or decode blocks */
+    private static int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Amount of streams of codes of a block */
+    private static int streams = 1;
+
+    /** Maximal total size of the files in work in the batch mode */
+    private static long batchBytesInFlight = DEFAULT_BATCH_BYTES_IN_FLIGHT;
+
+    /** Limit of code lengths of archiving */
+    private static int codeLengthLimit = DEFAULT_CODE_LENGTH_LIMIT;
+
+    /** Order of the context model of archiving */
+    private static int contextOrder;
+
+    /** Dictionary of archiving and unArchiving, null if it is not specified */
+    private static Dictionary dictionary;
+
+    /** Offset and length of the range to unArchive, null to unArchive the whole file */
+    private static long[] range;
+
+    /** Stream for messages. It is the standard error if the result goes to the standard output */
+    private static PrintStream messages = System.out;
+
+    /** Metrics of phases of the process, disabled if they are not printed */
+    private static ProcessMetrics metrics = ProcessMetrics.DISABLED;
+
+    /** True if metrics are printed as JSON */
+    private static boolean jsonMetrics;
+
+    /** Address of the daemon which processes the requests, null to process them here */
+    private static SocketAddress daemonAddress;
+
     public static void main(String[] args) {
         try {
+            args = extractOptions(args);
             if (Tools.checkArgs(args)) {
+                if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+                    serve(args[1]);
+                    return;
+                }
+                if (daemonAddress != null && (range != null || args.length > 0 && Arrays.asList(
+                        TRAIN_FLAG, LIST_FLAG, EXTRACT_FLAG, TEST_FLAG).contains(args[0]))) {
+                    throw new IllegalArgumentException("Only archiving and unArchiving can be sent to the daemon");
+                }
+                if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+                    processBatch(args[1].equals("-a"), Arrays.asList(args).subList(2, args.length));
+                    return;
+                }
+                if (args.length > 0 && args[0].equals(TRAIN_FLAG)) {
+                    trainDictionary(args[1], Arrays.asList(args).subList(2, args.length));
+                    return;
+                }
+                if (args.length > 0 && args[0].equals(LIST_FLAG)) {
+                    listArchive(args[1]);
+                    return;
+                }
+                if (args.length > 0 && args[0].equals(EXTRACT_FLAG)) {
+                    extractEntry(args[1], args[2]);
+                    return;
+                }
+                if (args.length > 0 && args[0].equals(TEST_FLAG)) {
+                    testArchive(args[1]);
+                    return;
+                }
                 if (args.length == 0) {
                     fileToArchive(null, null);
                 }
@@ -45,26 +151,115 @@ public class Assignment15Part1 {
                 }
             }
         } catch (IllegalArgumentException | IOException exception) {
-            System.out.println("\nFAIL!: " + exception.getMessage());
+            messages.println("\nFAIL!: " + exception.getMessage());
         }
     }
 
+    /**
+     * Sets the block mode options if they are specified
+     *
+     * @return The rest arguments without options
+     */
+    private static String[] extractOptions(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        String blockSizeOption = Tools.extractOption(arguments, BLOCK_SIZE_OPTION);
+        String threadsOption = Tools.extractOption(arguments, THREADS_OPTION);
+        String batchMemoryOption = Tools.extractOption(arguments, BATCH_MEMORY_OPTION);
+        String rangeOption = Tools.extractOption(arguments, RANGE_OPTION);
+        String metricsOption = Tools.extractOption(arguments, METRICS_OPTION);
+        String codeLengthLimitOption = Tools.extractOption(arguments, CODE_LENGTH_LIMIT_OPTION);
+        String streamsOption = Tools.extractOption(arguments, STREAMS_OPTION);
+        String dictionaryOption = Tools.extractOption(arguments, DICTIONARY_OPTION);
+        String contextOrderOption = Tools.extractOption(arguments, CONTEXT_ORDER_OPTION);
+        String daemonOption = Tools.extractOption(arguments, DAEMON_OPTION);
+        /* Threads of the batch mode process whole files, so they don't turn on the block mode */
+        boolean batchMode = !arguments.isEmpty() && arguments.get(0).equals(BATCH_FLAG);
+        if (blockSizeOption != null) {
+            blockSize = Tools.parseSize(blockSizeOption);
+        }
+        if (threadsOption != null) {
+            threads = Tools.parseSize(threadsOption);
+            if (blockSizeOption == null && !batchMode) {
+                blockSize = DEFAULT_BLOCK_SIZE;
+            }
+        }
+        if (batchMemoryOption != null) {
+            batchBytesInFlight = Tools.parseLongSize(batchMemoryOption);
+        }
+        if (rangeOption != null) {
+            range = Tools.parseRange(rangeOption);
+        }
+        if (streamsOption != null) {
+            streams = Tools.parseSize(streamsOption);
+            if (blockSizeOption == null) {
+                blockSize = DEFAULT_BLOCK_SIZE;
+            }
+        }
+        if (codeLengthLimitOption != null) {
+            codeLengthLimit = Tools.parseSize(codeLengthLimitOption);
+        }
+        if (contextOrderOption != null) {
+            if (!contextOrderOption.equals("0") && !contextOrderOption.equals("1")) {
+                throw new IllegalArgumentException("Context order must be 0 or 1");
+            }
+            contextOrder = Integer.parseInt(contextOrderOption);
+            if (contextOrder > 0 && blockSize > 0) {
+                throw new IllegalArgumentException("The context model can't be used in the block mode");
+            }
+        }
+        if (dictionaryOption != null) {
+            if (blockSize > 0) {
+                throw new IllegalArgumentException("A dictionary can't be used in the block mode");
+            }
+            dictionary = Dictionary.load(Paths.get(PATH_TO_FILE + dictionaryOption));
+        }
+        if (daemonOption != null) {
+            daemonAddress = Tools.parseDaemonAddress(daemonOption);
+        }
+        if (metricsOption != null) {
+            if (!metricsOption.equals("text") && !metricsOption.equals("json")) {
+                throw new IllegalArgumentException("Metrics format must be text or json");
+            }
+            metrics = new ProcessMetrics();
+            jsonMetrics = metricsOption.equals("json");
+        }
+        return arguments.toArray(new String[0]);
+    }
+
     /**
      * Runs archiving process of specified file as source to specified file as target
      * Counts the whole operation's time and prints result of the process if it was successful.
      */
     private static void fileToArchive(String source, String target) throws IOException {
+        if (daemonAddress != null) {
+            sendToDaemon(true, source == null ? DEFAULT_FILE_NAME : source, target);
+            return;
+        }
+        if (Tools.isStandardStream(source) || Tools.isStandardStream(target)) {
+            streamToArchive(source, target);
+            return;
+        }
         String sourceFile = source == null ? PATH_TO_FILE + DEFAULT_FILE_NAME : PATH_TO_FILE + source;
         String targetFile = target == null ? sourceFile + ARCHIVED_FILE_EXT : PATH_TO_FILE + target;
         Archiver archiver = new Archiver();
+        archiver.setBlockSize(blockSize);
+        archiver.setThreads(threads);
+        archiver.setStreams(streams);
+        archiver.setCodeLengthLimit(codeLengthLimit);
+        archiver.setContextOrder(contextOrder);
+        archiver.setDictionary(dictionary);
+        archiver.setMetrics(metrics);
 
         long startTime = System.currentTimeMillis();
-        int process = archiver.archive(sourceFile, targetFile);
+        int process = Files.isDirectory(Paths.get(sourceFile)) ?
+                archiver.archiveDirectory(sourceFile, targetFile) :
+                archiver.archive(sourceFile, targetFile);
         long finishTime = System.currentTimeMillis();
 
         if (process == 0) {
             System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
             archiver.printProcessResults();
+            printMetrics();
         } else {
             System.out.println("\n" + FAIL_PROCESS_MESSAGE);
         }
@@ -75,9 +270,23 @@ public class Assignment15Part1 {
      * Counts the whole operation's time and prints result of the process if it was successful.
      */
     private static void archiveToFile(String source, String target) throws IOException {
+        if (range != null) {
+            rangeToFile(source, target);
+            return;
+        }
+        if (daemonAddress != null) {
+            sendToDaemon(false, source, target);
+            return;
+        }
+        if (Tools.isStandardStream(source) || Tools.isStandardStream(target)) {
+            archiveToStream(source, target);
+            return;
+        }
         String sourceFile = PATH_TO_FILE + source;
         String targetFile = target == null ? Tools.getFileNameWithoutLastExt(sourceFile) : PATH_TO_FILE + target;
         UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setThreads(threads);
+        unArchiver.setMetrics(metrics);
 
         long startTime = System.currentTimeMillis();
         int process = unArchiver.unArchive(sourceFile, targetFile);
@@ -86,8 +295,353 @@ public class Assignment15Part1 {
         if (process == 0) {
             System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
             unArchiver.printProcessResults();
+            printMetrics();
+        } else {
+            System.out.println("\n" + FAIL_PROCESS_MESSAGE);
+        }
+    }
+
+    /**
+     * Runs archiving process in one pass where the source or the target is the standard stream
+     * Counts the whole operation's time and prints it if the process was successful.
+     */
+    private static void streamToArchive(String source, String target) throws IOException {
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(blockSize);
+        archiver.setThreads(threads);
+        archiver.setStreams(streams);
+        archiver.setCodeLengthLimit(codeLengthLimit);
+        archiver.setContextOrder(contextOrder);
+        archiver.setDictionary(dictionary);
+        archiver.setMetrics(metrics);
+
+        long startTime = System.currentTimeMillis();
+        try (InputStream in = openInput(source); OutputStream out = openOutput(target)) {
+            archiver.archive(in, out);
+        }
+        long finishTime = System.currentTimeMillis();
+        messages.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        printMetrics();
+    }
+
+    /**
+     * Runs unArchiving process in one pass where the source or the target is the standard stream
+     * Counts the whole operation's time and prints it if the process was successful.
+     */
+    private static void archiveToStream(String source, String target) throws IOException {
+        UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setMetrics(metrics);
+
+        long startTime = System.currentTimeMillis();
+        try (InputStream in = openInput(source); OutputStream out = openOutput(target)) {
+            unArchiver.unArchive(in, out);
+        }
+        long finishTime = System.currentTimeMillis();
+        messages.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        printMetrics();
+    }
+
+    /**
+     * Archives or unArchives all the files of the sources concurrently.
+     * Threads process whole files, so "-j" doesn't turn on the block mode here
+     *
+     * @param archiving True to archive the files, false to unArchive them
+     * @param sources   Files, directories, glob patterns or "-" for a list of files on the standard input
+     */
+    private static void processBatch(boolean archiving, List<String> sources) throws IOException {
+        if (daemonAddress != null) {
+            sendBatchToDaemon(archiving, sources);
+            return;
+        }
+        BatchProcessor batch = new BatchProcessor(archiving);
+        batch.setThreads(threads);
+        batch.setMaxBytesInFlight(batchBytesInFlight);
+        batch.setBlockSize(blockSize);
+        batch.setStreams(streams);
+        batch.setCodeLengthLimit(codeLengthLimit);
+        batch.setContextOrder(contextOrder);
+        batch.setDictionary(dictionary);
+        batch.setMetrics(metrics);
+        int failures = batch.process(Paths.get(PATH_TO_FILE), sources);
+        if (failures == 0) {
+            System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + batch.getTimeMs() + "ms");
+        } else {
+            System.out.println("\n" + FAIL_PROCESS_MESSAGE);
+        }
+        batch.printProcessResults(System.out);
+        printMetrics();
+    }
+
+    /**
+     * Trains the dictionary on all the files of the samples and writes it.
+     * Archives are not taken from directories and patterns
+     *
+     * @param target  The dictionary file
+     * @param samples Files, directories, glob patterns or "-" for a list of files on the standard input
+     */
+    private static void trainDictionary(String target, List<String> samples) throws IOException {
+        long startTime = System.currentTimeMillis();
+        List<Path> files = new ArrayList<>();
+        for (String sample : samples) {
+            try (Stream<Path> sampleFiles = BatchProcessor.listFiles(Paths.get(PATH_TO_FILE), sample,
+                    file -> !file.toString().endsWith(ARCHIVED_FILE_EXT))) {
+                sampleFiles.forEach(files::add);
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+        }
+        long[] frequencies = Dictionary.countFrequencies(files);
+        Dictionary trained = Dictionary.train(frequencies, codeLengthLimit);
+        Path targetFile = Paths.get(PATH_TO_FILE + target);
+        trained.write(targetFile);
+        long finishTime = System.currentTimeMillis();
+
+        long sampleSize = LongStream.of(frequencies).sum();
+        System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        System.out.println("Dictionary file name..: " + targetFile);
+        System.out.println("Dictionary id.........: " + String.format("%08x", trained.getId()));
+        System.out.println("Dictionary size.......: " + String.format("%,dB", Files.size(targetFile)));
+        System.out.println("Sample files..........: " + String.format("%,d", files.size()));
+        System.out.println("Sample size...........: " + String.format("%,dB", sampleSize));
+        System.out.println("Average code length...: " + String.format("%.3f bits per byte",
+                sampleSize == 0 ? 0 : (double) trained.getCodedBits(frequencies) / sampleSize));
+    }
+
+    /**
+     * Runs the daemon with the options of archiving until the process is stopped
+     *
+     * @param address Port of the local host or path of the Unix domain socket
+     */
+    private static void serve(String address) throws IOException {
+        CompressionDaemon daemon = new CompressionDaemon();
+        daemon.setThreads(threads);
+        daemon.setBlockSize(blockSize);
+        daemon.setStreams(streams);
+        daemon.setCodeLengthLimit(codeLengthLimit);
+        daemon.setContextOrder(contextOrder);
+        daemon.setDictionary(dictionary);
+        daemon.serve(Tools.parseDaemonAddress(address), System.out);
+    }
+
+    /**
+     * Sends one archiving or unArchiving to the daemon and prints its result.
+     * Files are sent as paths, the standard streams are sent and received as data
+     *
+     * @param archiving True to archive, false to unArchive
+     * @param source    The source file or "-"
+     * @param target    The target file, "-" or null for the default one
+     */
+    private static void sendToDaemon(boolean archiving, String source, String target) throws IOException {
+        long startTime = System.currentTimeMillis();
+        DaemonClient.Result result;
+        try (DaemonClient client = new DaemonClient(daemonAddress)) {
+            if (Tools.isStandardStream(source) || Tools.isStandardStream(target)) {
+                byte[] data;
+                /* FileInputStream.readNBytes seeks, which fails on a pipe, so the input is read through a buffer */
+                try (InputStream in = new BufferedInputStream(openInput(source))) {
+                    data = in.readNBytes(MAX_DAEMON_PAYLOAD_SIZE + 1);
+                }
+                if (archiving) {
+                    client.compress(data);
+                } else {
+                    client.decompress(data);
+                }
+            } else {
+                String sourceFile = PATH_TO_FILE + source;
+                String targetFile = target != null ? PATH_TO_FILE + target : archiving ?
+                        sourceFile + ARCHIVED_FILE_EXT : Tools.getFileNameWithoutLastExt(sourceFile);
+                sendFile(client, archiving, sourceFile, targetFile);
+            }
+            result = client.receive();
+        }
+        if (result.failure != null) {
+            throw new IOException(result.failure);
+        }
+        if (Tools.isStandardStream(source) || Tools.isStandardStream(target)) {
+            try (OutputStream out = openOutput(target == null ? STANDARD_STREAM_NAME : target)) {
+                out.write(result.data);
+            }
+        }
+        long finishTime = System.currentTimeMillis();
+        messages.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        printDaemonResult(result);
+    }
+
+    /**
+     * Sends all the files of the sources to the daemon without waiting for their results,
+     * then prints the result of every file and the summary
+     *
+     * @param archiving True to archive the files, false to unArchive them
+     * @param sources   Files, directories, glob patterns or "-" for a list of files on the standard input
+     */
+    private static void sendBatchToDaemon(boolean archiving, List<String> sources) throws IOException {
+        long startTime = System.currentTimeMillis();
+        Map<Integer, String> names = new HashMap<>();
+        int failures = 0;
+        long daemonTime = 0;
+        try (DaemonClient client = new DaemonClient(daemonAddress)) {
+            for (String source : sources) {
+                try (Stream<Path> files = BatchProcessor.listFiles(Paths.get(PATH_TO_FILE), source,
+                        file -> file.toString().endsWith(ARCHIVED_FILE_EXT) != archiving)) {
+                    Iterator<Path> iterator = files.iterator();
+                    while (iterator.hasNext()) {
+                        String file = iterator.next().toString();
+                        String target = archiving ? file + ARCHIVED_FILE_EXT : Tools.getFileNameWithoutLastExt(file);
+                        names.put(sendFile(client, archiving, file, target), file);
+                    }
+                } catch (UncheckedIOException exception) {
+                    throw exception.getCause();
+                }
+            }
+            DaemonClient.Result result;
+            while ((result = client.receive()) != null) {
+                if (result.failure != null) {
+                    failures++;
+                    System.out.println("FAIL!: " + names.get(result.id) + ": " + result.failure);
+                } else {
+                    daemonTime += result.timeNanos;
+                    System.out.println(names.get(result.id) + String.format(": %,dB -> %,dB, %.2fms",
+                            result.inputSize, result.outputSize, result.timeNanos / 1e6));
+                }
+            }
+        }
+        long finishTime = System.currentTimeMillis();
+        System.out.println("\n" + (failures == 0 ?
+                SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms" : FAIL_PROCESS_MESSAGE));
+        System.out.println("Processed files.......: " + String.format("%,d", names.size() - failures));
+        System.out.println("Failed files..........: " + String.format("%,d", failures));
+        System.out.println("Time in the daemon....: " + String.format("%,.1fms", daemonTime / 1e6));
+    }
+
+    /**
+     * Sends the request for the file with paths of this process, the daemon may have another working directory
+     *
+     * @return Id of the request
+     */
+    private static int sendFile(DaemonClient client, boolean archiving, String source, String target)
+            throws IOException {
+        String sourcePath = Paths.get(source).toAbsolutePath().toString();
+        String targetPath = Paths.get(target).toAbsolutePath().toString();
+        return archiving ? client.archive(sourcePath, targetPath) : client.unArchive(sourcePath, targetPath);
+    }
+
+    /** Prints the sizes and the times of the request which is processed by the daemon */
+    private static void printDaemonResult(DaemonClient.Result result) {
+        messages.println("Input size............: " + String.format("%,dB", result.inputSize));
+        messages.println("Output size...........: " + String.format("%,dB", result.outputSize));
+        messages.println("Time in the daemon....: " + String.format("%.2fms", result.timeNanos / 1e6));
+        messages.println("Round trip time.......: " + String.format("%.2fms", result.roundTripNanos / 1e6));
+    }
+
+    /** Opens the source file or the standard input */
+    private static InputStream openInput(String source) throws IOException {
+        if (Tools.isStandardStream(source)) {
+            return new FileInputStream(FileDescriptor.in);
+        }
+        return new FileInputStream(PATH_TO_FILE + source);
+    }
+
+    /**
+     * Opens the target file or the standard output.
+     * Messages go to the standard error while the standard output is the target
+     */
+    private static OutputStream openOutput(String target) throws IOException {
+        if (Tools.isStandardStream(target)) {
+            messages = System.err;
+            return new ChannelOutputStream(new FileOutputStream(FileDescriptor.out).getChannel());
+        }
+        return new ChannelOutputStream(new FileOutputStream(PATH_TO_FILE + target).getChannel());
+    }
+
+    /** Prints entries of the multi-file archive: sizes before and after archiving and names */
+    private static void listArchive(String source) throws IOException {
+        UnArchiver unArchiver = new UnArchiver();
+        List<ArchiveDirectory.Entry> entries = unArchiver.list(PATH_TO_FILE + source);
+        for (ArchiveDirectory.Entry entry : entries) {
+            System.out.println(String.format("%,15dB %,15dB  ", entry.originalSize, entry.compressedSize) + entry.name);
+        }
+        System.out.println("Entries amount........: " + entries.size());
+    }
+
+    /**
+     * Runs extracting process of one entry of the multi-file archive to the file with the last part of its name.
+     * An existing file is not overwritten
+     * Counts the whole operation's time and prints result of the process if it was successful.
+     */
+    private static void extractEntry(String source, String entry) throws IOException {
+        String sourceFile = PATH_TO_FILE + source;
+        String targetFile = PATH_TO_FILE + entry.substring(entry.lastIndexOf('/') + 1);
+        UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setThreads(threads);
+        unArchiver.setMetrics(metrics);
+
+        long startTime = System.currentTimeMillis();
+        int process = unArchiver.extractEntry(sourceFile, entry, targetFile);
+        long finishTime = System.currentTimeMillis();
+
+        if (process == 0) {
+            System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+            unArchiver.printProcessResults();
+            printMetrics();
         } else {
             System.out.println("\n" + FAIL_PROCESS_MESSAGE);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Runs the test of the archive, which decodes it in memory without writing the result
+     * Counts the whole operation's time and prints result of the test if it was successful.
+     */
+    private static void testArchive(String source) throws IOException {
+        String sourceFile = PATH_TO_FILE + source;
+        UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setThreads(threads);
+        unArchiver.setMetrics(metrics);
+
+        long startTime = System.currentTimeMillis();
+        unArchiver.test(sourceFile);
+        long finishTime = System.currentTimeMillis();
+
+        System.out.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        unArchiver.printTestResults(finishTime - startTime);
+        printMetrics();
+    }
+
+    /**
+     * Runs unArchiving process of the range of the original file to the target file or the standard output
+     * Counts the whole operation's time and prints it if the process was successful.
+     */
+    private static void rangeToFile(String source, String target) throws IOException {
+        if (Tools.isStandardStream(source)) {
+            throw new IllegalArgumentException("A range can be unArchived only from a file");
+        }
+        String sourceFile = PATH_TO_FILE + source;
+        if (target == null) {
+            target = Tools.getFileNameWithoutLastExt(source);
+        }
+        UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setMetrics(metrics);
+
+        long startTime = System.currentTimeMillis();
+        long written;
+        try (OutputStream out = openOutput(target)) {
+            written = unArchiver.unArchiveRange(sourceFile, range[0], range[1], out);
+        }
+        long finishTime = System.currentTimeMillis();
+        messages.println("\n" + SUCCESSFUL_PROCESS_MESSAGE + " " + (finishTime - startTime) + "ms");
+        messages.println("Range size............: " + String.format("%,dB", written));
+        printMetrics();
+    }
+
+    /** Prints metrics of the process if they are collected */
+    private static void printMetrics() {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        if (jsonMetrics) {
+            metrics.printJson(messages);
+        } else {
+            metrics.print(messages);
+        }
+    }
+}
@@ -9,18 +9,232 @@ public final class Constants {
     protected static final String DEFAULT_FILE_NAME = "test.txt";
 
     /** Extension which identifies a file as archived */
-    protected static final String ARCHIVED_FILE_EXT = ".par";
+    public static final String ARCHIVED_FILE_EXT = ".par";
 
-    public static final String INIT_STRING = "";
+    /** Bytes amount of the output buffer of the bits writer */
+    public static final int BIT_WRITER_BUFFER_SIZE = 64 * 1024;
 
-    /** Bytes amount to read a file as a part of a stream */
-    public static final int BUFFER_SIZE = 512;
+    /** Bytes amount of the input buffer of the bits reader */
+    public static final int BIT_READER_BUFFER_SIZE = 64 * 1024;
 
-    /** "0" means  - to go left on the tree */
-    public static  final String GO_LEFT = "0";
+    /** Bytes amount to decode at once before writing them to the output */
+    public static final int DECODING_BUFFER_SIZE = 64 * 1024;
 
-    /** "1" means  - to go right on the tree */
-    public static  final String GO_RIGHT = "1";
+    /** Bytes amount of a buffer which is handed between the reader or the writer thread and the coding one */
+    public static final int PIPELINE_BUFFER_SIZE = 1024 * 1024;
+
+    /** Amount of buffers of the reader or the writer thread, so it runs ahead or falls behind by three buffers */
+    public static final int PIPELINE_BUFFERS = 4;
+
+    /** Minimal size of the data to read or write it by its own thread while it is coded */
+    public static final long MIN_PIPELINED_SIZE = 4 * 1024 * 1024;
+
+    /** Bits amount which the decoder resolves by one table lookup */
+    public static final int DECODING_TABLE_BITS = 11;
+
+    /** Minimal size of a file to memory-map it rather than read it */
+    public static final long MIN_MAPPED_FILE_SIZE = 1024 * 1024;
+
+    /** Maximal size of one memory-mapped region of a file */
+    public static final int MAX_MAPPED_REGION_SIZE = 1024 * 1024 * 1024;
+
+    /** Bytes amount of a region which is read rather than mapped */
+    public static final int READ_REGION_SIZE = 1024 * 1024;
+
+    /** Minimal size of a part of a region which is counted by a separate thread */
+    public static final int MIN_PARALLEL_HISTOGRAM_PART_SIZE = 4 * 1024 * 1024;
+
+    /** Writes shorter than this size are collected to go to the output together with the next large one */
+    public static final int GATHERING_THRESHOLD = 8 * 1024;
+
+    /** Amount of different byte values */
+    public static final int ALPHABET_SIZE = 256;
+
+    /** Bit 0 means  - to go left on the tree */
+    public static  final int GO_LEFT_BIT = 0;
+
+    /** Bit 1 means  - to go right on the tree */
+    public static  final int GO_RIGHT_BIT = 1;
+
+    /** Magic number which starts every archive except the legacy ones ("PAR!") */
+    public static final int FORMAT_MAGIC = 0x50415221;
+
+    /** Bytes amount to represent the format magic number */
+    public static final int FORMAT_MAGIC_IN_BYTES = 4;
+
+    /** Bytes amount to represent the format version */
+    public static final int FORMAT_VERSION_IN_BYTES = 1;
+
+    /**
+     * Version of archives without the magic number: the file size,
+     * the tree shape and the tree leaves in the header
+     */
+    public static final int LEGACY_FORMAT_VERSION = 1;
+
+    /** Version of archives with canonical codes: only code lengths in the header */
+    public static final int CANONICAL_FORMAT_VERSION = 2;
+
+    /**
+     * Version of archives split into blocks: every block has its own code lengths table,
+     * the blocks index and the trailer are at the end of the archive
+     */
+    public static final int BLOCK_FORMAT_VERSION = 3;
+
+    /**
+     * Version of archives of many files: every entry is a whole archive of the canonical or the block format,
+     * the central directory of entries and the trailer are at the end of the archive
+     */
+    public static final int MULTI_FILE_FORMAT_VERSION = 4;
+
+    /**
+     * Version of archives split into blocks like the block format, where every block header,
+     * every index entry and the trailer also have CRC32C checksums of the block data and of the whole file
+     */
+    public static final int CHECKED_BLOCK_FORMAT_VERSION = 5;
+
+    /**
+     * Version of archives of the checked block format where every block body starts with the coding mode
+     * of the block, so blocks of one archive may be coded differently
+     */
+    public static final int TAGGED_BLOCK_FORMAT_VERSION = 6;
+
+    /**
+     * Version of archives coded by a trained dictionary: the file size and the dictionary id in the header,
+     * coded data without any table after it
+     */
+    public static final int DICTIONARY_FORMAT_VERSION = 7;
+
+    /**
+     * Version of archives coded by the order-1 context model: the file size in the header, then the table
+     * of every previous byte, code lengths tables of the contexts and the shared table, and coded data
+     */
+    public static final int CONTEXT_FORMAT_VERSION = 8;
+
+    /** Magic number which starts every dictionary file ("PAD!") */
+    public static final int DICTIONARY_MAGIC = 0x50414421;
+
+    /** Version of dictionary files: the id and the code lengths table after the magic */
+    public static final int DICTIONARY_FILE_VERSION = 1;
+
+    /** Bytes amount of the dictionary id */
+    public static final int DICTIONARY_ID_IN_BYTES = 4;
+
+    /** Magic number which a client of the daemon sends first ("PARD") */
+    public static final int DAEMON_MAGIC = 0x50415244;
+
+    /** Request to the daemon which ends the connection */
+    public static final int END_REQUEST = 0;
+
+    /** Request to the daemon to archive the file: the request id, the source and the target paths */
+    public static final int ARCHIVE_REQUEST = 1;
+
+    /** Request to the daemon to unArchive the file: the request id, the source and the target paths */
+    public static final int UNARCHIVE_REQUEST = 2;
+
+    /** Request to the daemon to compress the data: the request id, the data size and the data */
+    public static final int COMPRESS_REQUEST = 3;
+
+    /** Request to the daemon to decompress the data: the request id, the data size and the data */
+    public static final int DECOMPRESS_REQUEST = 4;
+
+    /** Maximal amount of requests of one connection which the daemon has in work */
+    public static final int DAEMON_REQUESTS_IN_FLIGHT = 64;
+
+    /** Maximal size of the data which is sent to the daemon or returned by it in a request */
+    public static final int MAX_DAEMON_PAYLOAD_SIZE = 256 * 1024 * 1024;
+
+    /** Total size of the data of requests and results which the daemon holds for all its clients */
+    public static final long DAEMON_BYTES_IN_FLIGHT = 512L * 1024 * 1024;
+
+    /** Maximal size of the buffer which a thread of the daemon keeps for the next request */
+    public static final int MAX_RETAINED_DAEMON_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /** Coding mode of a block: the code lengths table and one stream of codes */
+    public static final int HUFFMAN_BLOCK_MODE = 0;
+
+    /**
+     * Coding mode of a block: the code lengths table, sizes of the first streams
+     * and several streams of codes of consecutive parts of the block, which are decoded together
+     */
+    public static final int INTERLEAVED_BLOCK_MODE = 1;
+
+    /** Coding mode of a block: the block data as it is, for data which Huffman coding doesn't compress */
+    public static final int STORED_BLOCK_MODE = 2;
+
+    /** Coding mode of a block of one repeated byte: only the byte, the amount is the raw size of the block */
+    public static final int CONSTANT_BLOCK_MODE = 3;
+
+    /**
+     * Minimal part of a block which Huffman coding must save by the entropy estimate of the block,
+     * otherwise the block is stored
+     */
+    public static final double MIN_CODED_BLOCK_SAVING = 0.02;
+
+    /** Amount of streams of codes of a block in the interleaved mode */
+    public static final int INTERLEAVED_STREAMS = 4;
+
+    /** Bytes amount of the coding mode of a block */
+    public static final int BLOCK_MODE_IN_BYTES = 1;
+
+    /** Bytes amount of a CRC32C checksum */
+    public static final int CHECKSUM_IN_BYTES = 4;
+
+    /** Default size of blocks in the block mode */
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    /** Minimal allowed size of blocks in the block mode */
+    public static final int MIN_BLOCK_SIZE = 4 * 1024;
+
+    /** Maximal allowed size of blocks in the block mode */
+    public static final int MAX_BLOCK_SIZE = 256 * 1024 * 1024;
+
+    /** Default maximal total size of the files in work in the batch mode */
+    public static final long DEFAULT_BATCH_BYTES_IN_FLIGHT = 256L * 1024 * 1024;
+
+    /** Amount of blocks per encoding thread which are read or encoded at the same time */
+    public static final int BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+
+    /** Amount of files per thread which are processed or queued at the same time in the batch mode */
+    public static final int FILES_IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * Bytes amount of a block header: raw size and encoded size, 4 bytes each.
+     * Headers, index entries and trailers of the checked block format have a checksum more
+     */
+    public static final int BLOCK_HEADER_SIZE = 8;
+
+    /** Bytes amount of an index entry: block offset(8), encoded size(4), raw size(4) */
+    public static final int BLOCK_INDEX_ENTRY_SIZE = 16;
+
+    /** Bytes amount of the trailer: index offset(8), file size(8), magic(4) */
+    public static final int BLOCK_TRAILER_SIZE = 20;
+
+    /** Bytes amount of the multi-file archive trailer: directory offset(8), magic(4) */
+    public static final int DIRECTORY_TRAILER_SIZE = 12;
+
+    /** Initial amount of entries in the blocks index */
+    public static final int INITIAL_INDEX_CAPACITY = 64;
+
+    /**
+     * Maximal amount of entries in the blocks index. The format doesn't limit the amount of blocks, so this only keeps
+     * the doubling of the int capacity from overflowing, a bit below Integer.MAX_VALUE that some VMs can't allocate
+     */
+    public static final int MAX_INDEX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /** Maximal bytes amount of the code lengths table */
+    public static final int MAX_LENGTHS_TABLE_SIZE = 256;
+
+    /** Maximal code length which can be stored in the code lengths table */
+    public static final int MAX_CODE_LENGTH = 62;
+
+    /**
+     * Default limit of code lengths. Codes up to the limit are decoded by one or two table lookups,
+     * the limited codes of real data are longer than Huffman codes by a small fraction of a percent
+     */
+    public static final int DEFAULT_CODE_LENGTH_LIMIT = 15;
+
+    /** Minimal limit of code lengths: all the 256 bytes must have codes */
+    public static final int MIN_CODE_LENGTH_LIMIT = 8;
 
     /** Bytes amount to represent a tree size */
     public static final int TREE_SIZE_IN_BYTES = 2;
@@ -37,20 +251,61 @@ public final class Constants {
      */
     public static final int FILE_SIZE_IN_BYTES = 8;
 
-    /** Byte size(in bits) to represent a num as a binary one or vice versa */
-    public static final int BYTE_SIZE = 8;
+    /** Option to set the block size and turn on the block mode */
+    protected static final String BLOCK_SIZE_OPTION = "-b";
+
+    /** Option to set the threads amount and turn on the block mode */
+    protected static final String THREADS_OPTION = "-j";
+
+    /** Option to unArchive only the range "offset:length" of the original file */
+    protected static final String RANGE_OPTION = "-r";
+
+    /** Option to set the maximal total size of the files in work in the batch mode */
+    protected static final String BATCH_MEMORY_OPTION = "-M";
+
+    /** Option to set the amount of streams of codes in a block: 1 or 4 */
+    protected static final String STREAMS_OPTION = "-s";
 
-    /** Bytes amount in the integer type of a num */
-    public static final int BYTES_IN_LONG = 8;
+    /** Option to set the limit of code lengths in bits */
+    protected static final String CODE_LENGTH_LIMIT_OPTION = "-c";
+
+    /** Option to set the order of the context model of archiving: 0 or 1 */
+    protected static final String CONTEXT_ORDER_OPTION = "-o";
+
+    /** Option to set the dictionary which files are archived by or which archives need */
+    protected static final String DICTIONARY_OPTION = "-d";
+
+    /** Option to print metrics of phases of the process as "text" or "json" */
+    protected static final String METRICS_OPTION = "-m";
+
+    /** Option to send the requests to the daemon on the port of the local host or on the Unix socket */
+    protected static final String DAEMON_OPTION = "-R";
+
+    /** Flag of the batch mode: "-B -a|-u source..." archives or unArchives all the files of the sources */
+    public static final String BATCH_FLAG = "-B";
+
+    /** Flag to train a dictionary: "-T dictionary sample..." builds the table from all the files of the samples */
+    public static final String TRAIN_FLAG = "-T";
+
+    /** Flag to start the daemon: "-S address" serves requests on the port of the local host or on the Unix socket */
+    public static final String SERVE_FLAG = "-S";
+
+    /** Flag to list entries of a multi-file archive */
+    public static final String LIST_FLAG = "-l";
+
+    /** Flag to extract one entry of a multi-file archive */
+    public static final String EXTRACT_FLAG = "-x";
+
+    /** Flag to test an archive: decode it in memory and check its checksums */
+    public static final String TEST_FLAG = "-t";
+
+    /** Name of a source or a target which means the standard input or output instead of a file */
+    public static final String STANDARD_STREAM_NAME = "-";
 
     /** The message about unsuccessful archiving/unArchiving operation */
     protected static final String FAIL_PROCESS_MESSAGE = "Fail! Something went wrong.";
 
-    /** The message about unsuccessful archiving due to a little unique bytes amount */
-    public static final String NOT_ALLOWED_FILE_MESSAGE =
-            "The specified file cannot be processed. It has less than two unique symbols";
-
-    /** Minimal allowed unique bytes in file to start archiving */
+    /** Minimal unique bytes in the tree of a legacy archive */
     public static final int ALLOWED_DIFFERENT_BYTES_IN_FILE = 2;
 
     /** Message about successful archiving/unArchiving operation */
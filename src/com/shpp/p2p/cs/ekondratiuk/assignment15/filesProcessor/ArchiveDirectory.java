@@ -0,0 +1,133 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Central directory of a multi-file archive. It is written after the last entry,
+ * and the fixed-size trailer at the end of the archive points to it,
+ * so entries are listed and found by their names without reading the entries themselves.
+ */
+public class ArchiveDirectory {
+    /** Entries in the order of the archive */
+    private final List<Entry> entries = new ArrayList<>();
+
+    /** Entries by their names */
+    private final Map<String, Entry> entriesByNames = new HashMap<>();
+
+    /** An archived file */
+    public static class Entry {
+        /** Name of the file relative to the archived directory, parts are separated by "/" */
+        public final String name;
+
+        /** Size of the file before archiving */
+        public final long originalSize;
+
+        /** Offset of the entry from the beginning of the archive */
+        public final long offset;
+
+        /** Size of the archived entry */
+        public final long compressedSize;
+
+        public Entry(String name, long originalSize, long offset, long compressedSize) {
+            this.name = name;
+            this.originalSize = originalSize;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+        }
+    }
+
+    /** Adds the next entry to the directory */
+    public void add(Entry entry) throws IOException {
+        if (entriesByNames.putIfAbsent(entry.name, entry) != null) {
+            throw new IOException("Duplicated entry " + entry.name);
+        }
+        entries.add(entry);
+    }
+
+    /** Gets entries in the order of the archive */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Gets the entry by its name
+     *
+     * @return The entry or null if the archive has no such entry
+     */
+    public Entry getEntry(String name) {
+        return entriesByNames.get(name);
+    }
+
+    /** Gets the total size of the archived files */
+    public long getOriginalSize() {
+        long originalSize = 0;
+        for (Entry entry : entries) {
+            originalSize += entry.originalSize;
+        }
+        return originalSize;
+    }
+
+    /**
+     * Writes the directory and the trailer
+     *
+     * @param dos             Output stream of the archive
+     * @param directoryOffset Offset of the directory from the beginning of the archive
+     */
+    public void write(DataOutputStream dos, long directoryOffset) throws IOException {
+        dos.writeInt(entries.size());
+        for (Entry entry : entries) {
+            dos.writeUTF(entry.name);
+            dos.writeLong(entry.originalSize);
+            dos.writeLong(entry.offset);
+            dos.writeLong(entry.compressedSize);
+        }
+        /* The trailer */
+        dos.writeLong(directoryOffset);
+        dos.writeInt(FORMAT_MAGIC);
+    }
+
+    /**
+     * Reads the directory using the trailer at the end of the archive
+     *
+     * @param file The archive
+     * @return     The directory
+     */
+    public static ArchiveDirectory read(RandomAccessFile file) throws IOException {
+        long fileSize = file.length();
+        if (fileSize < DIRECTORY_TRAILER_SIZE) {
+            throw new IOException("The archive has no directory");
+        }
+        file.seek(fileSize - DIRECTORY_TRAILER_SIZE);
+        long directoryOffset = file.readLong();
+        if (file.readInt() != FORMAT_MAGIC || directoryOffset < FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES ||
+                directoryOffset > fileSize - DIRECTORY_TRAILER_SIZE - Integer.BYTES ||
+                fileSize - DIRECTORY_TRAILER_SIZE - directoryOffset > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted archive directory");
+        }
+        byte[] directoryData = new byte[(int) (fileSize - DIRECTORY_TRAILER_SIZE - directoryOffset)];
+        file.seek(directoryOffset);
+        file.readFully(directoryData);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(directoryData));
+        ArchiveDirectory directory = new ArchiveDirectory();
+        try {
+            int entriesAmount = dis.readInt();
+            for (int i = 0; i < entriesAmount; i++) {
+                Entry entry = new Entry(dis.readUTF(), dis.readLong(), dis.readLong(), dis.readLong());
+                if (entry.originalSize < 0 || entry.offset < FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES ||
+                        entry.compressedSize < 0 || entry.offset + entry.compressedSize > directoryOffset) {
+                    throw new IOException("Corrupted archive directory");
+                }
+                directory.add(entry);
+            }
+        } catch (EOFException | UTFDataFormatException exception) {
+            throw new IOException("Corrupted archive directory");
+        }
+        if (dis.available() != 0) {
+            throw new IOException("Corrupted archive directory");
+        }
+        return directory;
+    }
+}
@@ -1,15 +1,30 @@
 package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
 
-import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanTreeNode;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitWriter;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ChannelOutputStream;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ContextModel;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.FileRegions;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Histogram;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics.Phase;
 import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Tools;
 
 import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 public class Archiver {
 
@@ -19,23 +34,130 @@ public class Archiver {
     /** Output file for the result of archiving */
     private String fileOut;
 
-    /** Unique bytes - binary sequence table */
-    public HashMap<Byte, String> codingTable = new HashMap<>();
+    /** Size of the archived data: the file or all the files of the directory */
+    private long inputSize;
 
-    /** String constructor used as a dynamic binary stack */
-    private final StringBuilder binaryStack = new StringBuilder();
+    /** Size of the archive written to a stream */
+    private long outputSize;
 
-    /** String constructor representing tree shape as a binary sequence */
-    private final StringBuilder treeShape = new StringBuilder();
+    /** Metrics where phases of archiving are measured */
+    private ProcessMetrics metrics = ProcessMetrics.DISABLED;
 
-    /** List of unique bytes as leaves of the tree */
-    private final List<Byte> treeLeaves = new ArrayList<>();
+    /** Binary codes of unique bytes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
 
-    /** Tree leaves processed for writing to the output file */
-    private byte[] processedTreeLeaves;
+    /** Lengths(in bits) of the codes indexed by the unsigned byte value */
+    private final int[] codeLengths = new int[ALPHABET_SIZE];
 
-    /** Tree shape processed for writing to the output file */
-    private byte[] processedTreeShape;
+    /** Size of blocks in the block mode. 0 means the whole file is coded by one table */
+    private int blockSize;
+
+    /** Amount of streams of codes of a block in the block mode */
+    private int streams = 1;
+
+    /** Limit of code lengths */
+    private int codeLengthLimit = DEFAULT_CODE_LENGTH_LIMIT;
+
+    /** Amount of coded bits more than Huffman codes would give because of the limit of code lengths */
+    private long extraBits;
+
+    /** Trained dictionary which files are coded by in one pass, null to code every file by its own table */
+    private Dictionary dictionary;
+
+    /** Order of the context model: 0 to code all the bytes by one table, 1 to code them by tables of the previous byte */
+    private int contextOrder;
+
+    /** Context model of the current file in the order-1 mode, null in other modes */
+    private ContextModel contextModel;
+
+    /** Amount of threads which count frequencies of large files and encode blocks in the block mode */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Bits writer of files of the canonical format, its buffer is reused from file to file */
+    private BitWriter fileBitWriter;
+
+    /**
+     * Blocks of the block mode with their encoders and buffers. They are reused by the next file
+     * of the same block size, the blocks of a failed file are dropped, since its threads may still use them
+     */
+    private List<Block> blocks = List.of();
+
+    /**
+     * Sets the block mode: the file is split into blocks of the specified size,
+     * every block is coded by its own table
+     *
+     * @param blockSize Size of blocks in bytes, 0 to code the whole file by one table
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize != 0 && (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE)) {
+            throw new IllegalArgumentException("Block size must be from " + MIN_BLOCK_SIZE +
+                    " to " + MAX_BLOCK_SIZE + " bytes");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Sets the amount of streams of codes of a block in the block mode.
+     * Four streams of consecutive parts of a block are decoded together, which is faster than one stream
+     *
+     * @param streams 1 or 4
+     */
+    public void setStreams(int streams) {
+        if (streams != 1 && streams != INTERLEAVED_STREAMS) {
+            throw new IllegalArgumentException("Streams amount must be 1 or " + INTERLEAVED_STREAMS);
+        }
+        this.streams = streams;
+    }
+
+    /**
+     * Sets the limit of code lengths. Shorter codes are decoded faster,
+     * but rare bytes get longer codes than Huffman codes, so the archive becomes a bit larger
+     *
+     * @param codeLengthLimit Limit of code lengths in bits
+     */
+    public void setCodeLengthLimit(int codeLengthLimit) {
+        if (codeLengthLimit < MIN_CODE_LENGTH_LIMIT || codeLengthLimit > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length limit must be from " + MIN_CODE_LENGTH_LIMIT +
+                    " to " + MAX_CODE_LENGTH + " bits");
+        }
+        this.codeLengthLimit = codeLengthLimit;
+    }
+
+    /**
+     * Sets the dictionary: files are coded by its table in one pass and their archives refer to it by its id.
+     * The dictionary is not used in the block mode
+     *
+     * @param dictionary The trained dictionary, null to code every file by its own table
+     */
+    public void setDictionary(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Sets the order of the context model. In the order-1 mode every byte is coded by the table of the previous byte,
+     * tables of sparse contexts are merged into one shared table. It is not used in the block mode
+     *
+     * @param contextOrder 0 or 1
+     */
+    public void setContextOrder(int contextOrder) {
+        if (contextOrder != 0 && contextOrder != 1) {
+            throw new IllegalArgumentException("Context order must be 0 or 1");
+        }
+        this.contextOrder = contextOrder;
+    }
+
+    /** Sets the amount of threads which count frequencies of large files and encode blocks in the block mode */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads amount must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /** Sets metrics where phases of archiving are measured */
+    public void setMetrics(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
 
     /**
      * Makes the archived file(target) from the source one
@@ -43,259 +165,546 @@ public class Archiver {
      * @return 0 if operation is successful
      */
     public int archive(String fileIn, String fileOut) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
         this.fileIn = fileIn;
         this.fileOut = fileOut;
-        TreeMap<Byte, Integer> keysFrequencies = getFrequencies();
-        HuffmanTreeNode huffmanTreeRoot = getHuffmanTree(keysFrequencies);
-        buildCodingTable(huffmanTreeRoot, INIT_STRING);
-        packHuffmanTree(huffmanTreeRoot);
-        ProcessFile();
+        this.inputSize = Tools.getFileSize(fileIn);
+        this.extraBits = 0;
+        this.contextModel = null;
+        checkModes();
+        if (blockSize > 0) {
+            processFileByBlocks();
+        } else if (contextOrder > 0) {
+            contextModel = buildContextModel();
+            ProcessFile();
+        } else if (dictionary != null) {
+            /* The table is known, so the file is read only once */
+            useDictionaryCodes();
+            ProcessFile();
+        } else {
+            long[] frequencies = getFrequencies();
+            if (isStoredByBlocks(frequencies)) {
+                blockSize = DEFAULT_BLOCK_SIZE;
+                try {
+                    processFileByBlocks();
+                } finally {
+                    blockSize = 0;
+                }
+            } else {
+                /* Empty files are allowed, their codes are built anyway */
+                extraBits = CanonicalCodes.buildCodes(frequencies, codes, codeLengths, codeLengthLimit, metrics);
+                ProcessFile();
+            }
+        }
+        span.end(inputSize);
+        metrics.addSizes("archive", inputSize, Tools.getFileSize(fileOut), true);
         return 0;
     }
 
     /**
-     * Gets frequencies of bytes encountered in the source file to archive
+     * Makes the multi-file archive(target) from all the files of the directory(source) and its subdirectories.
+     * Every file is archived to its own entry by the canonical or the block format,
+     * then the central directory of entries and the trailer are written
      *
-     * @return             The TreeMap of the file bytes with their frequencies
-     * @throws IOException Exception if the file has less than two different bytes
+     * @return 0 if operation is successful
      */
-    private TreeMap<Byte, Integer> getFrequencies() throws IOException {
-        BufferedInputStream fis;
-        fis = new BufferedInputStream(new FileInputStream(fileIn));
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int i, bytesInBuffer;
-        byte tempByte;
-        TreeMap<Byte, Integer> bytes = new TreeMap<>();
-        while ((bytesInBuffer = fis.read(buffer)) != -1) {
-            for (i = 0; i < bytesInBuffer; i++) {
-                tempByte = buffer[i];
-                bytes.put(tempByte, bytes.get(tempByte) == null ? 1 : bytes.get(tempByte) + 1);
-            }
+    public int archiveDirectory(String directoryIn, String fileOut) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        this.fileOut = fileOut;
+        Path root = Paths.get(directoryIn);
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(root)) {
+            /* The archive itself is not archived if it is inside the directory */
+            Path archive = Paths.get(fileOut).toAbsolutePath().normalize();
+            files = paths.filter(Files::isRegularFile)
+                    .filter(file -> !file.toAbsolutePath().normalize().equals(archive))
+                    .sorted()
+                    .collect(Collectors.toList());
         }
-        fis.close();
-        /* Check if the source file has less than two different symbols */
-        if (bytes.size() < ALLOWED_DIFFERENT_BYTES_IN_FILE) {
-            throw new IOException(NOT_ALLOWED_FILE_MESSAGE);
+        ArchiveDirectory directory = new ArchiveDirectory();
+        this.extraBits = 0;
+        checkModes();
+        try (ChannelOutputStream out = new ChannelOutputStream(openOutputChannel())) {
+            out.setMetrics(metrics);
+            DataOutputStream dos = new DataOutputStream(out);
+            BitWriter bitWriter = new BitWriter(out, BIT_WRITER_BUFFER_SIZE);
+            dos.writeInt(FORMAT_MAGIC);
+            dos.writeByte(MULTI_FILE_FORMAT_VERSION);
+            for (Path file : files) {
+                this.fileIn = file.toString();
+                long offset = out.getPosition();
+                long fileSize = archiveEntry(dos, bitWriter);
+                String name = root.relativize(file).toString().replace(File.separatorChar, '/');
+                directory.add(new ArchiveDirectory.Entry(name, fileSize, offset, out.getPosition() - offset));
+            }
+            directory.write(dos, out.getPosition());
         }
-        return bytes;
+        this.fileIn = directoryIn;
+        this.inputSize = directory.getOriginalSize();
+        span.end(inputSize);
+        metrics.addSizes("archive directory", inputSize, Tools.getFileSize(fileOut), true);
+        return 0;
     }
 
     /**
-     * Gets the Huffman tree as a HuffmanTreeNode object with its structure and features
+     * Writes the current input file as an entry of the multi-file archive
      *
-     * @param frequencies TreeMap of frequencies of every byte in the source file
-     * @return            Huffman tree
+     * @param dos       Stream of the archive
+     * @param bitWriter Bits writer over the same stream
+     * @return          The file size
      */
-    private HuffmanTreeNode getHuffmanTree(TreeMap<Byte, Integer> frequencies) {
-        /* Use the priority queue with the comparator for convenient counting */
-        PriorityQueue<HuffmanTreeNode> nodesQueue =
-                new PriorityQueue<>(Comparator.comparingInt(huffmanTreeNode -> huffmanTreeNode.frequencyValue));
-        for (Map.Entry<Byte, Integer> freq : frequencies.entrySet()) {
-            nodesQueue.add(new HuffmanTreeNode(freq.getKey(), freq.getValue()));
-        }
-        /* One object in the queue means that it is the root of the Huffman tree */
-        while (nodesQueue.size() > 1)
-        {
-            /* Poll two objects with minimal frequencies */
-            HuffmanTreeNode first = nodesQueue.poll();
-            HuffmanTreeNode second = nodesQueue.poll();
-            if (first != null && second != null) {
-                /* Get sum of th two minimal frequencies */
-                int newFrequencyValue = first.frequencyValue + second.frequencyValue;
-                /* Put a new object with gotten frequency and two children of polled objects to the same queue */
-                nodesQueue.add(new HuffmanTreeNode(newFrequencyValue, first, second));
+    private long archiveEntry(DataOutputStream dos, BitWriter bitWriter) throws IOException {
+        if (blockSize > 0) {
+            int regionSize = Math.max(1, MAX_MAPPED_REGION_SIZE / blockSize) * blockSize;
+            try (FileRegions regions = new FileRegions(fileIn, regionSize)) {
+                return encodeBlocks(regions, dos);
+            }
+        }
+        contextModel = null;
+        if (contextOrder > 0) {
+            contextModel = buildContextModel();
+        } else if (dictionary != null) {
+            useDictionaryCodes();
+        }
+        if (contextModel != null || dictionary != null) {
+            try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+                return writeCanonicalData(regions, bitWriter, Tools.getFileSize(fileIn));
+            }
+        }
+        long[] frequencies = getFrequencies();
+        if (isStoredByBlocks(frequencies)) {
+            blockSize = DEFAULT_BLOCK_SIZE;
+            try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+                return encodeBlocks(regions, dos);
+            } finally {
+                blockSize = 0;
             }
         }
-        return nodesQueue.peek();
+        /* Empty files are allowed, their codes are built anyway */
+        extraBits += CanonicalCodes.buildCodes(frequencies, codes, codeLengths, codeLengthLimit, metrics);
+        try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+            return writeCanonicalData(regions, bitWriter, LongStream.of(frequencies).sum());
+        }
+    }
+
+    /** Checks that the dictionary and the context model are not set together or with the block mode */
+    private void checkModes() {
+        if (dictionary != null && blockSize > 0) {
+            throw new IllegalArgumentException("A dictionary can't be used in the block mode");
+        }
+        if (contextOrder > 0 && blockSize > 0) {
+            throw new IllegalArgumentException("The context model can't be used in the block mode");
+        }
+        if (contextOrder > 0 && dictionary != null) {
+            throw new IllegalArgumentException("The context model can't be used with a dictionary");
+        }
     }
 
     /**
-     * Gets recursively a set of correspondences  of bytes and their representations for file coding
-     * If current is leaf, put to table its value and the gotten string as a path to the lief
-     * If current is node, try to go deeper in the tree and write the corresponding part of a path
+     * Checks if the file without a block size is archived by the block format with blocks of the default size.
+     * It is so for a file of one repeated byte and for a file which Huffman coding would not compress
+     * by the entropy estimate of its frequencies: such blocks keep only the byte or are stored as they are,
+     * while the canonical format would code them by at least one bit per byte.
+     * Files smaller than the minimal block size keep the canonical format, which has less framing
      *
-     * @param currentNode The current node for processing. Initial value is the root of th Huffman tree
-     * @param string      The current string of bits as a coding sequence as a path where to go in the tree
+     * @param frequencies Frequencies of bytes of the file indexed by the unsigned byte value
      */
-    private void buildCodingTable(HuffmanTreeNode currentNode, String string) {
-        if (currentNode != null) {
-            if (currentNode.isLeaf()) {
-                codingTable.put(currentNode.byteValue, string);
+    private static boolean isStoredByBlocks(long[] frequencies) {
+        long size = LongStream.of(frequencies).sum();
+        if (size < MIN_BLOCK_SIZE) {
+            return false;
+        }
+        return Histogram.countSymbols(frequencies) == 1 || BlockEncoder.isStored(frequencies, size);
+    }
+
+    /** Counts pairs of bytes of the source file and builds its order-1 context model */
+    private ContextModel buildContextModel() throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.FREQUENCIES);
+        long[] frequencies = new long[ContextModel.CONTEXTS * ALPHABET_SIZE];
+        int previous = 0;
+        try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+            ByteBuffer region;
+            while ((region = regions.nextRegion()) != null) {
+                previous = Histogram.countPairs(region, previous, frequencies);
             }
-            /* If node, run the same method recursively for the gotten children */
-            buildCodingTable(currentNode.leftChild, string + GO_LEFT);
-            buildCodingTable(currentNode.rightChild, string + GO_RIGHT);
         }
+        span.end(LongStream.of(frequencies).sum());
+        return ContextModel.build(frequencies, codeLengthLimit, metrics);
+    }
+
+    /** Takes codes of the dictionary instead of building them from frequencies of the file */
+    private void useDictionaryCodes() {
+        System.arraycopy(dictionary.getCodes(), 0, codes, 0, ALPHABET_SIZE);
+        System.arraycopy(dictionary.getCodeLengths(), 0, codeLengths, 0, ALPHABET_SIZE);
     }
 
     /**
-     * Packs the Huffman tree as HuffmanTreeNode object to a StringBuilder
-     * The initial value is the Huffman tree root
+     * Gets frequencies of bytes encountered in the source file to archive.
+     * Large mapped regions are counted by several threads
      *
-     * @param currentNode The Huffman tree node. The root of the Huffman tree as initial
+     * @return Frequencies indexed by the unsigned byte value
      */
-    private void packHuffmanTree(HuffmanTreeNode currentNode) {
-        if (currentNode.isLeaf()) {
-            /* If a leaf, add its value to leaves list and "0" to tree shape string */
-            treeLeaves.add(currentNode.byteValue);
-            treeShape.append(0);
-        } else {
-            /* If a node, add "1" to tree shape string and relaunch itself for its children */
-            treeShape.append(1);
-            packHuffmanTree(currentNode.leftChild);
-            packHuffmanTree(currentNode.rightChild);
+    private long[] getFrequencies() throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.FREQUENCIES);
+        long[] frequencies = new long[ALPHABET_SIZE];
+        ExecutorService executor = null;
+        try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+            ByteBuffer region;
+            while ((region = regions.nextRegion()) != null) {
+                if (threads > 1 && region.remaining() >= 2 * MIN_PARALLEL_HISTOGRAM_PART_SIZE) {
+                    if (executor == null) {
+                        executor = Executors.newFixedThreadPool(threads);
+                    }
+                    Histogram.count(region, frequencies, executor, threads);
+                } else {
+                    Histogram.count(region, frequencies);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
+        span.end(LongStream.of(frequencies).sum());
+        return frequencies;
     }
 
-    /** Reads, archives and writes a file buffer by buffer using a stream */
+    /**
+     * Reads, archives and writes a file region by region.
+     * Large files are memory-mapped, so the data is coded without copying,
+     * and their archives are written by the writer thread while the next data is coded
+     */
     private void ProcessFile() throws IOException {
-        BufferedInputStream fis;
-        BufferedOutputStream fos;
-        fis = new BufferedInputStream(new FileInputStream(fileIn));
-        fos = new BufferedOutputStream(new FileOutputStream(fileOut));
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesInBuffer;
-        byte[] headerData = buildFileHeaderData();
-        /* Write header data to the output file */
-        fos.write(headerData);
-        fos.write(processedTreeShape);
-        fos.write(processedTreeLeaves);
-        fos.flush();
-        /* Read the data to process by specified buffers */
-        while ((bytesInBuffer = fis.read(buffer)) != -1) {
-            byte[] bytesToProcess = Arrays.copyOfRange(buffer, 0, bytesInBuffer);
-            byte[] processedData = getProcessedData(bytesToProcess, binaryStack);
-            /* Write the processed data by specified buffers */
-            fos.write(processedData);
-        }
-        /* Process and write the append data if it is */
-        if (binaryStack.length() != 0) {
-            byte[] appendData = getProcessedData(null, binaryStack);
-            fos.write(appendData);
-        }
-        fos.flush();
-        fis.close();
+        try (
+                FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE);
+                OutputStream fos = Tools.openFileOutput(fileOut, inputSize, metrics)
+        ) {
+            if (fileBitWriter == null) {
+                fileBitWriter = new BitWriter(fos, BIT_WRITER_BUFFER_SIZE);
+            }
+            fileBitWriter.reset(fos);
+            writeCanonicalData(regions, fileBitWriter, inputSize);
+        }
     }
 
-    /** Builds header data for a current file */
-    private byte[] buildFileHeaderData() throws IOException {
-        /* Tree shape size as the number of bits in the binary representation */
-        int treeShapeSize = treeShape.length();
-        /* Get tree shape as the bytes array */
-        processedTreeShape = getProcessedData(null, treeShape);
-        /* Get tree leaves as the bytes array */
-        processedTreeLeaves = new byte[treeLeaves.size()];
-        for (int i = 0; i < treeLeaves.size(); i++) {
-            processedTreeLeaves[i] = treeLeaves.get(i);
-        }
-        /* Define the header's size */
-        int fileHeaderSize = FILE_SIZE_IN_BYTES +
-                TREE_SHAPE_IN_BITES +
-                TREE_SIZE_IN_BYTES +
-                TREE_LEAVES_NUMBER_IN_BYTES;
-        byte[] headerData = new byte[fileHeaderSize];
-        int bytesCounter = 0;
+    /**
+     * Writes the archive of the canonical format: the header, the code lengths table and coded data.
+     * The archive of the dictionary format has the dictionary id in the header instead of the table,
+     * the archive of the context format has the context model instead of it.
+     * The header goes to the output together with the table and coded data
+     *
+     * @param regions   Regions of the input
+     * @param bitWriter Writer of the archive
+     * @param size      Size of the input
+     * @return          Size of the input
+     */
+    private long writeCanonicalData(FileRegions regions, BitWriter bitWriter, long size) throws IOException {
+        bitWriter.writeBits(FORMAT_MAGIC, FORMAT_MAGIC_IN_BYTES * Byte.SIZE);
+        int version = contextModel != null ? CONTEXT_FORMAT_VERSION :
+                dictionary != null ? DICTIONARY_FORMAT_VERSION : CANONICAL_FORMAT_VERSION;
+        bitWriter.writeBits(version, FORMAT_VERSION_IN_BYTES * Byte.SIZE);
         /* File size  in 8 bytes*/
-        for (byte num : intToBytesArray(Tools.getFileSize(fileIn))) {
-            headerData[bytesCounter++] = num;
+        bitWriter.writeBits(size, FILE_SIZE_IN_BYTES * Byte.SIZE);
+        ProcessMetrics.Span span = metrics.begin(Phase.ENCODE);
+        if (contextModel != null) {
+            contextModel.write(bitWriter);
+            bitWriter.alignToByte();
+        } else if (dictionary != null) {
+            bitWriter.writeBits(dictionary.getId() & 0xffffffffL, DICTIONARY_ID_IN_BYTES * Byte.SIZE);
+        } else {
+            CanonicalCodes.writeLengths(codeLengths, bitWriter);
+            bitWriter.alignToByte();
         }
-        /* Tree bites size in 2 bytes */
-        for (byte num : intToBytesArray(treeShapeSize)) {
-            headerData[bytesCounter++] = num;
+        ByteBuffer region;
+        /* The context of the first byte is zero */
+        int previous = 0;
+        while ((region = regions.nextRegion()) != null) {
+            if (contextModel != null) {
+                previous = contextModel.encode(region, previous, bitWriter);
+            } else {
+                writeProcessedData(region, bitWriter);
+            }
         }
-        /* Tree bytes size in 2 bytes */
-        for (byte num : intToBytesArray(processedTreeShape.length)) {
-            headerData[bytesCounter++] = num;
+        /* Pad and write the append data if it is */
+        bitWriter.finish();
+        span.end(size);
+        return size;
+    }
+
+    /** Opens the output file for writing from its beginning */
+    private FileChannel openOutputChannel() throws IOException {
+        return FileChannel.open(Paths.get(fileOut),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Archives the stream to the stream in one pass, so the input may be a pipe
+     * and its size is not needed beforehand. The block format is used,
+     * its blocks carry their own sizes and the original size goes to the trailer.
+     * Blocks of the default size are used if the block size is not set.
+     * Streams are not closed
+     *
+     * @param in  Stream of the data to archive
+     * @param out Stream for the archive
+     */
+    public void archive(InputStream in, OutputStream out) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        extraBits = 0;
+        if (dictionary != null || contextOrder > 0) {
+            throw new IllegalArgumentException("A dictionary and the context model are used only for files, " +
+                    "streams are archived by blocks");
+        }
+        /* The default size is used for this stream only, files keep the canonical format */
+        int setBlockSize = blockSize;
+        if (blockSize == 0) {
+            blockSize = DEFAULT_BLOCK_SIZE;
         }
-        /* Tree leaves amount in 2 bytes */
-        for (Byte num : intToBytesArray(treeLeaves.size())) {
-            headerData[bytesCounter++] = num;
+        try {
+            DataOutputStream dos = new DataOutputStream(out);
+            inputSize = encodeBlocks(new FileRegions(Channels.newChannel(in)), dos);
+            dos.flush();
+        } finally {
+            blockSize = setBlockSize;
+        }
+        span.end(inputSize);
+        metrics.addSizes("archive stream", inputSize, outputSize, true);
+    }
+
+    /** Reads, archives and writes a file block by block */
+    private void processFileByBlocks() throws IOException {
+        /* Mapped regions are split into blocks, so they have to hold whole blocks */
+        int regionSize = Math.max(1, MAX_MAPPED_REGION_SIZE / blockSize) * blockSize;
+        try (
+                FileRegions regions = new FileRegions(fileIn, regionSize);
+                ChannelOutputStream out = new ChannelOutputStream(openOutputChannel())
+        ) {
+            out.setMetrics(metrics);
+            DataOutputStream dos = new DataOutputStream(out);
+            encodeBlocks(regions, dos);
+            dos.flush();
         }
-        return headerData;
     }
 
     /**
-     * Gets processed input data in bytes array using binary form to process
+     * Encodes the input block by block and writes the archive of the tagged block format.
+     * Blocks are encoded in parallel and written in their order, one thread encodes them by itself,
+     * then the blocks index and the trailer are written.
+     * The output is written only forward, so it may be a stream
      *
-     * @param bytesToProcess Array of bytes to process
-     * @param builder        StringBuilder with binary data to process
-     * @return               Processed data bytes array
+     * @param regions Regions of the input
+     * @param dos     Stream for the archive
+     * @return        Size of the input. The size of the archive is kept as the output size
      */
-    private byte[] getProcessedData(byte[] bytesToProcess, StringBuilder builder) {
-        /* Build binary string with binary data from coding table corresponding
-         to bytes from the source file */
-        if (bytesToProcess != null) {
-            for (byte num : bytesToProcess) {
-                builder.append(codingTable.get(num));
-            }
-        } else {
-            /* Check if the binary String has sufficient signs number */
-            int left = builder.length() % BYTE_SIZE;
-            if (left != 0) {
-                left = BYTE_SIZE - left;
-                while (left > 0) {
-                    builder.append(0);
-                    left--;
+    private long encodeBlocks(FileRegions regions, DataOutputStream dos) throws IOException {
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        /* At most BLOCKS_IN_FLIGHT_PER_THREAD blocks of the block size per thread are read or encoded at once */
+        Deque<Block> freeBlocks = new ArrayDeque<>(getBlocks(executor == null ? 1 :
+                threads * BLOCKS_IN_FLIGHT_PER_THREAD));
+        blocks = List.of();
+        Deque<Future<Block>> encodedBlocks = new ArrayDeque<>();
+        BlockIndex index = new BlockIndex();
+        try {
+            dos.writeInt(FORMAT_MAGIC);
+            dos.writeByte(TAGGED_BLOCK_FORMAT_VERSION);
+            dos.writeInt(blockSize);
+            long position = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES;
+            ByteBuffer region = null;
+            while (true) {
+                if (freeBlocks.isEmpty()) {
+                    /* Wait for the oldest block to write it and reuse it */
+                    Block block = getEncodedBlock(encodedBlocks.poll());
+                    position = writeBlock(block, dos, index, position);
+                    freeBlocks.add(block);
+                }
+                Block block = freeBlocks.poll();
+                if (regions.isMapped()) {
+                    /* A mapped block is a part of the region, its data is not copied */
+                    if (region == null || !region.hasRemaining()) {
+                        region = regions.nextRegion();
+                    }
+                    if (region == null) {
+                        freeBlocks.add(block);
+                        break;
+                    }
+                    block.setData(region);
+                } else if (!block.read(regions)) {
+                    freeBlocks.add(block);
+                    break;
                 }
+                encodedBlocks.add(executor != null ? executor.submit(block::encode) :
+                        CompletableFuture.completedFuture(block.encode()));
+            }
+            while (!encodedBlocks.isEmpty()) {
+                Block block = getEncodedBlock(encodedBlocks.poll());
+                position = writeBlock(block, dos, index, position);
+                freeBlocks.add(block);
+            }
+            /* Zero raw size marks the end of blocks */
+            dos.writeInt(0);
+            index.write(dos, position + Integer.BYTES);
+            outputSize = position + Integer.BYTES + index.getSize();
+            /* All the blocks are written, so no thread uses them any more */
+            blocks = List.copyOf(freeBlocks);
+            return index.getOriginalFileSize();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
-        byte[] processedData = new byte[(builder.length() / BYTE_SIZE)];
-        int start = 0;
-        int word = BYTE_SIZE;
-        int counter = 0;
-        /* Fill the output buffer with new data values until binary stack has full words */
-        while ((start + word) < builder.length() + 1) {
-            int newByte = Integer.parseInt(builder.substring(start, start + word), 2);
-            processedData[counter++] = ((byte) newByte);
-            start += word;
-        }
-        builder.delete(0, start);
-        return processedData;
     }
 
     /**
-     * Converts long type to bytes array
+     * Gets blocks for encoding: blocks of the previous file if they fit the settings, or new ones
      *
-     * @param num Long number to convert
-     * @return    Array of specified bytes amount
+     * @param amount Amount of blocks
      */
-    private byte[] intToBytesArray(long num) {
-        ByteBuffer buffer = ByteBuffer.allocate(BYTES_IN_LONG);
-        buffer.putLong(num);
-        return buffer.array();
+    private List<Block> getBlocks(int amount) {
+        List<Block> reused = new ArrayList<>();
+        for (Block block : blocks) {
+            if (reused.size() < amount && block.blockSize == blockSize && block.metrics == metrics) {
+                block.encoder.setStreams(streams);
+                block.encoder.setCodeLengthLimit(codeLengthLimit);
+                reused.add(block);
+            }
+        }
+        while (reused.size() < amount) {
+            reused.add(new Block(blockSize, streams, codeLengthLimit, metrics));
+        }
+        return reused;
+    }
+
+    /** Waits for the block to be encoded */
+    private static Block getEncodedBlock(Future<Block> encodedBlock) throws IOException {
+        try {
+            return encodedBlock.get();
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Archiving was interrupted");
+        }
     }
 
     /**
-     * Converts integer type to two bytes array
+     * Writes the encoded block: raw size, encoded size, checksum and the encoded body
      *
-     * @param num Integer number to convert
-     * @return    Array of bytes
+     * @return The position in the archive after the block
      */
-    private static byte[] intToBytesArray(int num) {
-        return new byte[] {
-                (byte)((num >> 8) & 0xff),
-                (byte)((num) & 0xff),
-        };
+    private long writeBlock(Block block, DataOutputStream dos, BlockIndex index, long position)
+            throws IOException {
+        int encodedSize = block.encoder.getEncodedSize();
+        block.encoder.writeBlock(dos);
+        index.add(position, encodedSize, block.rawSize, block.encoder.getChecksum());
+        extraBits += block.encoder.getExtraBits();
+        /* A mapped region is not kept alive by a block waiting for the next file */
+        block.data = null;
+        return position + index.getBlockHeaderSize() + encodedSize;
+    }
+
+    /** Block of the file with its own encoder */
+    private static class Block {
+        /** Size of blocks */
+        private final int blockSize;
+
+        /** Data of the block from its position to its limit */
+        private ByteBuffer data;
+
+        /** Own array for the data of a block which is read rather than mapped */
+        private byte[] readData;
+
+        /** Amount of bytes in the block */
+        private int rawSize;
+
+        /** Encoder of the block */
+        private final BlockEncoder encoder;
+
+        /** Metrics where reading of the block is measured */
+        private final ProcessMetrics metrics;
+
+        private Block(int blockSize, int streams, int codeLengthLimit, ProcessMetrics metrics) {
+            this.blockSize = blockSize;
+            this.metrics = metrics;
+            this.encoder = new BlockEncoder(metrics);
+            this.encoder.setStreams(streams);
+            this.encoder.setCodeLengthLimit(codeLengthLimit);
+        }
+
+        /** Takes the next block from the mapped region without copying */
+        private void setData(ByteBuffer region) {
+            rawSize = Math.min(blockSize, region.remaining());
+            data = region.slice(region.position(), rawSize);
+            region.position(region.position() + rawSize);
+        }
+
+        /**
+         * Reads the next block of the file which is not mapped
+         *
+         * @return false if the file has no more data
+         */
+        private boolean read(FileRegions regions) throws IOException {
+            if (readData == null) {
+                readData = new byte[blockSize];
+            }
+            ProcessMetrics.Span span = metrics.begin(Phase.READ);
+            rawSize = regions.read(ByteBuffer.wrap(readData));
+            span.end(rawSize);
+            data = ByteBuffer.wrap(readData, 0, rawSize);
+            return rawSize > 0;
+        }
+
+        /** Encodes the block */
+        private Block encode() throws IOException {
+            encoder.encode(data);
+            return this;
+        }
+    }
+
+    /**
+     * Writes codes of the input bytes to the bit writer
+     *
+     * @param bytesToProcess Buffer with bytes to process from its position to its limit
+     * @param bitWriter      Writer of the processed data
+     */
+    private void writeProcessedData(ByteBuffer bytesToProcess, BitWriter bitWriter) throws IOException {
+        for (int i = bytesToProcess.position(); i < bytesToProcess.limit(); i++) {
+            int symbol = bytesToProcess.get(i) & 0xff;
+            bitWriter.writeBits(codes[symbol], codeLengths[symbol]);
+        }
     }
 
     /** Gets the efficiency result of the process.*/
-    private double getCompressingEfficiency(
-            String fileIn, String fileOut
-    ) throws IOException {
+    private double getCompressingEfficiency(String fileOut) throws IOException {
+        if (inputSize == 0) {
+            return 0;
+        }
         return (double) (100-(Files.size(Paths.get(fileOut)) *
-                100 / (Files.size(Paths.get(fileIn)))));
+                100 / inputSize));
     }
 
     /** Prints results of the process to the console*/
     public void printProcessResults() throws IOException {
-        double efficiency = getCompressingEfficiency(fileIn, fileOut);
+        double efficiency = getCompressingEfficiency(fileOut);
         System.out.println("Original file name....: " + fileIn);
         System.out.println("Compression efficiency: " +
                 String.format("%1$,.2f%%", efficiency));
         System.out.println("Input file size.......: " +
-                (String.format("%,dB", Tools.getFileSize(fileIn))));
+                (String.format("%,dB", inputSize)));
         System.out.println("Output file size......: " +
                 (String.format("%,dB", Tools.getFileSize(fileOut))));
         System.out.println("Compressed file name..: " + fileOut);
+        if (extraBits > 0) {
+            long outputSize = Tools.getFileSize(fileOut);
+            long extraBytes = (extraBits + Byte.SIZE - 1) / Byte.SIZE;
+            System.out.println("Code length limit loss: " + String.format("%,dB (%.4f%% of the output, %d bits limit)",
+                    extraBytes, outputSize == 0 ? 0 : 100.0 * extraBytes / outputSize, codeLengthLimit));
+        }
+    }
+
+    /** Gets the amount of coded bits more than Huffman codes would give because of the limit of code lengths */
+    public long getExtraBits() {
+        return extraBits;
     }
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Archives or unArchives many files in one process, so the start of the JVM and its warm-up are paid once.
+ * Sources are files, directories with all their files, glob patterns like "logs/*.txt" or "-" for a list
+ * of files, one per line, on the standard input. Every file is archived to the file with the ".par" extension
+ * next to it, every ".par" file is unArchived to the file without the extension.
+ * Files are processed concurrently by a pool of threads, every file by one thread.
+ * At most FILES_IN_FLIGHT_PER_THREAD files per thread are in work or queued at once, and their total size
+ * is at most the bytes budget, except for one file larger than the budget which is in work alone.
+ * A failed file doesn't stop the batch, failures are collected and printed with the summary.
+ */
+public class BatchProcessor {
+    /** True to archive the files, false to unArchive them */
+    private final boolean archiving;
+
+    /** Amount of files processed at the same time */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Maximal total size of the files in work */
+    private long maxBytesInFlight = DEFAULT_BATCH_BYTES_IN_FLIGHT;
+
+    /** Size of blocks in the block mode of archiving, 0 to code every file by one table */
+    private int blockSize;
+
+    /** Amount of streams of codes of a block */
+    private int streams = 1;
+
+    /** Limit of code lengths of archiving */
+    private int codeLengthLimit = DEFAULT_CODE_LENGTH_LIMIT;
+
+    /** Order of the context model of archiving */
+    private int contextOrder;
+
+    /** Dictionary which the files are archived by, null to archive every file by its own table */
+    private Dictionary dictionary;
+
+    /** Metrics where phases of all the files are measured */
+    private ProcessMetrics metrics = ProcessMetrics.DISABLED;
+
+    /** Amount of processed files */
+    private final AtomicLong filesCounter = new AtomicLong();
+
+    /** Total size of the processed sources */
+    private final AtomicLong inputSize = new AtomicLong();
+
+    /** Total size of the written targets */
+    private final AtomicLong outputSize = new AtomicLong();
+
+    /** Archiver of every thread with the settings of the batch, its tables and buffers stay warm from file to file */
+    private final ThreadLocal<Archiver> archivers = ThreadLocal.withInitial(this::createArchiver);
+
+    /** Failed files with their messages */
+    private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+    /** Time of the whole batch in milliseconds */
+    private long timeMs;
+
+    /**
+     * Batch of files
+     *
+     * @param archiving True to archive the files, false to unArchive them
+     */
+    public BatchProcessor(boolean archiving) {
+        this.archiving = archiving;
+    }
+
+    /** Sets the amount of files processed at the same time */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads amount must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /** Sets the maximal total size of the files in work. A larger file is processed alone */
+    public void setMaxBytesInFlight(long maxBytesInFlight) {
+        if (maxBytesInFlight < 1) {
+            throw new IllegalArgumentException("Bytes in flight must be positive");
+        }
+        this.maxBytesInFlight = maxBytesInFlight;
+    }
+
+    /** Sets the block mode of archiving, see {@link Archiver#setBlockSize(int)} */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /** Sets the amount of streams of codes of a block, see {@link Archiver#setStreams(int)} */
+    public void setStreams(int streams) {
+        this.streams = streams;
+    }
+
+    /** Sets the limit of code lengths of archiving, see {@link Archiver#setCodeLengthLimit(int)} */
+    public void setCodeLengthLimit(int codeLengthLimit) {
+        this.codeLengthLimit = codeLengthLimit;
+    }
+
+    /** Sets the order of the context model of archiving, see {@link Archiver#setContextOrder(int)} */
+    public void setContextOrder(int contextOrder) {
+        this.contextOrder = contextOrder;
+    }
+
+    /** Sets the dictionary of archiving, see {@link Archiver#setDictionary(Dictionary)} */
+    public void setDictionary(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /** Sets metrics where phases of all the files are measured and their sizes are summed */
+    public void setMetrics(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Processes all the files of the sources
+     *
+     * @param base    Directory which relative sources and listed files are resolved against
+     * @param sources Files, directories, glob patterns or "-" for a list of files on the standard input
+     * @return        Amount of failed files
+     */
+    public int process(Path base, List<String> sources) throws IOException {
+        /* Wrong settings are reported once rather than by every file */
+        createArchiver();
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        /* Budget of bytes in flight in kilobytes and a limit of queued files, so tiny files don't pile up */
+        int budget = (int) Math.min(Integer.MAX_VALUE, (maxBytesInFlight + 1023) / 1024);
+        Semaphore bytesInFlight = new Semaphore(budget);
+        Semaphore filesInFlight = new Semaphore(threads * FILES_IN_FLIGHT_PER_THREAD);
+        try {
+            for (String source : sources) {
+                try (Stream<Path> files = listFiles(base, source, this::isProcessed)) {
+                    Iterator<Path> iterator = files.iterator();
+                    while (iterator.hasNext()) {
+                        Path file = iterator.next();
+                        long size;
+                        try {
+                            size = Files.size(file);
+                        } catch (NoSuchFileException exception) {
+                            failures.add(file + ": no such file");
+                            continue;
+                        } catch (IOException exception) {
+                            failures.add(file + ": " + exception.getMessage());
+                            continue;
+                        }
+                        int permits = (int) Math.min(budget, (size + 1023) / 1024);
+                        filesInFlight.acquire();
+                        bytesInFlight.acquire(permits);
+                        executor.execute(() -> {
+                            try {
+                                processFile(file, size);
+                            } finally {
+                                bytesInFlight.release(permits);
+                                filesInFlight.release();
+                            }
+                        });
+                    }
+                } catch (IOException | UncheckedIOException exception) {
+                    failures.add(source + ": " + exception.getMessage());
+                }
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IOException("The batch was not finished");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The batch was interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        timeMs = System.currentTimeMillis() - startTime;
+        return failures.size();
+    }
+
+    /**
+     * Gets the files of the source: the file itself, regular files of the directory and its subdirectories,
+     * files which match the glob pattern, or files listed on the standard input for "-".
+     * Files of directories and patterns are filtered
+     *
+     * @param base   Directory which the relative source and listed files are resolved against
+     * @param source File, directory, glob pattern or "-" for a list of files on the standard input
+     * @param filter Filter of files of directories and patterns
+     */
+    public static Stream<Path> listFiles(Path base, String source, Predicate<Path> filter) throws IOException {
+        if (source.equals(STANDARD_STREAM_NAME)) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            return reader.lines().filter(line -> !line.isBlank()).map(line -> base.resolve(line.strip()));
+        }
+        int globStart = indexOfGlob(source);
+        if (globStart == -1) {
+            Path path = base.resolve(source);
+            if (!Files.isDirectory(path)) {
+                return Stream.of(path);
+            }
+            return Files.walk(path).filter(Files::isRegularFile).filter(filter);
+        }
+        /* The pattern is matched against paths under the directory before its first glob character */
+        int directoryEnd = source.lastIndexOf('/', globStart) + 1;
+        Path directory = base.resolve(source.substring(0, directoryEnd));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + source.substring(directoryEnd));
+        return Files.walk(directory).filter(file -> matcher.matches(directory.relativize(file)))
+                .filter(Files::isRegularFile).filter(filter);
+    }
+
+    /** Gets the position of the first glob character of the source, -1 if it is not a pattern */
+    private static int indexOfGlob(String source) {
+        for (int i = 0; i < source.length(); i++) {
+            if ("*?[{".indexOf(source.charAt(i)) != -1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if the file of a directory or a pattern is processed by the ".par" extension:
+     * archives are skipped by archiving and only archives are taken by unArchiving
+     */
+    private boolean isProcessed(Path file) {
+        return file.toString().endsWith(ARCHIVED_FILE_EXT) != archiving;
+    }
+
+    /**
+     * Archives or unArchives one file, a failure is collected rather than thrown.
+     * Errors like the lack of memory fail only the file, so it is reported and its partial target is deleted
+     */
+    private void processFile(Path file, long size) {
+        String source = file.toString();
+        String target = null;
+        try {
+            if (archiving) {
+                target = source + ARCHIVED_FILE_EXT;
+                archivers.get().archive(source, target);
+            } else {
+                if (!source.endsWith(ARCHIVED_FILE_EXT)) {
+                    throw new IOException("The archive must have the " + ARCHIVED_FILE_EXT + " extension");
+                }
+                target = source.substring(0, source.length() - ARCHIVED_FILE_EXT.length());
+                UnArchiver unArchiver = new UnArchiver();
+                unArchiver.setThreads(1);
+                unArchiver.setMetrics(metrics);
+                unArchiver.unArchive(source, target);
+            }
+            inputSize.addAndGet(size);
+            outputSize.addAndGet(Files.size(Paths.get(target)));
+            filesCounter.incrementAndGet();
+        } catch (Throwable exception) {
+            failures.add(source + ": " + getFailureMessage(exception, archiving));
+            deletePartialTarget(target);
+        }
+    }
+
+    /**
+     * Gets the readable message of the failure of a file. The end of the data and exceptions without
+     * a message come from a truncated or broken archive when it is read
+     *
+     * @param exception The failure
+     * @param archiving True if the file was archived, false if it was unArchived
+     */
+    static String getFailureMessage(Throwable exception, boolean archiving) {
+        if (exception instanceof EOFException) {
+            return archiving ? "Unexpected end of the file" : "Unexpected end of the archived data";
+        }
+        if (exception.getMessage() == null) {
+            return archiving ? "Archiving failed: " + exception : "Corrupted archive";
+        }
+        return exception.getMessage();
+    }
+
+    /** Deletes the target of a failed file, so no broken files are left */
+    static void deletePartialTarget(String target) {
+        if (target != null) {
+            try {
+                Files.deleteIfExists(Paths.get(target));
+            } catch (IOException ignored) {
+                /* The failure of the file is already reported */
+            }
+        }
+    }
+
+    /** Creates the archiver of one file with the settings of the batch */
+    private Archiver createArchiver() {
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(blockSize);
+        archiver.setThreads(1);
+        archiver.setStreams(streams);
+        archiver.setCodeLengthLimit(codeLengthLimit);
+        archiver.setContextOrder(contextOrder);
+        archiver.setDictionary(dictionary);
+        archiver.setMetrics(metrics);
+        return archiver;
+    }
+
+    /** Gets the time of the whole batch in milliseconds */
+    public long getTimeMs() {
+        return timeMs;
+    }
+
+    /** Gets the failed files with their messages */
+    public List<String> getFailures() {
+        return List.copyOf(failures);
+    }
+
+    /** Prints the summary of the batch and its failures */
+    public void printProcessResults(PrintStream out) {
+        double seconds = Math.max(timeMs, 1) / 1000.0;
+        long dataSize = archiving ? inputSize.get() : outputSize.get();
+        out.println("Processed files.......: " + String.format("%,d", filesCounter.get()));
+        out.println("Failed files..........: " + String.format("%,d", failures.size()));
+        out.println("Input size............: " + String.format("%,dB", inputSize.get()));
+        out.println("Output size...........: " + String.format("%,dB", outputSize.get()));
+        out.println("Time..................: " + String.format("%,dms", timeMs));
+        out.println("Throughput............: " + String.format("%.1fMB/s, %.1f files/s",
+                dataSize / seconds / (1024 * 1024), filesCounter.get() / seconds));
+        for (String failure : failures) {
+            out.println("FAIL!: " + failure);
+        }
+    }
+}
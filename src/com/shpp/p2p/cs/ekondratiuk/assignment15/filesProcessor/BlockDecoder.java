@@ -0,0 +1,168 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitReader;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanDecoder;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics.Phase;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes one block body of the block format written by {@link BlockEncoder}.
+ * Bodies of the tagged block format start with the coding mode of the block,
+ * stored blocks are copied and blocks of one repeated byte are filled without decoding.
+ * Tables are reused from block to block, so one decoder must be used by one thread at a time.
+ */
+public class BlockDecoder {
+    /** Binary codes of unique bytes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
+
+    /** Lengths(in bits) of the codes indexed by the unsigned byte value */
+    private final int[] codeLengths = new int[ALPHABET_SIZE];
+
+    /** Decoder of the current block. Its tables are rebuilt for every block */
+    private final HuffmanDecoder decoder = new HuffmanDecoder(DECODING_TABLE_BITS);
+
+    /** Metrics where phases of decoding are measured */
+    private final ProcessMetrics metrics;
+
+    /** True if block bodies start with their coding mode */
+    private boolean tagged = true;
+
+    /** Readers of the streams of a block in the interleaved mode */
+    private final BitReader[] streamReaders = new BitReader[INTERLEAVED_STREAMS];
+
+    public BlockDecoder() {
+        this(ProcessMetrics.DISABLED);
+    }
+
+    /** Decoder which measures its phases in the metrics */
+    public BlockDecoder(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Sets whether block bodies start with their coding mode, as in the tagged block format */
+    public void setTagged(boolean tagged) {
+        this.tagged = tagged;
+    }
+
+    /** Turns the multi-symbol mode of decoding on or off, it is on by default */
+    public void setMultiSymbol(boolean multiSymbol) {
+        decoder.setMultiSymbol(multiSymbol);
+    }
+
+    /**
+     * Checks sizes from a block header before the block is read
+     *
+     * @param rawSize     Amount of bytes in the decoded block
+     * @param encodedSize Amount of bytes in the encoded block body
+     * @param blockSize   Size of blocks of the archive
+     */
+    public static void checkBlockSizes(int rawSize, int encodedSize, int blockSize) throws IOException {
+        long maxEncodedSize = BLOCK_MODE_IN_BYTES + MAX_LENGTHS_TABLE_SIZE + INTERLEAVED_STREAMS * Integer.BYTES +
+                (long) rawSize * MAX_CODE_LENGTH / Byte.SIZE + 1;
+        if (rawSize < 0 || rawSize > blockSize || encodedSize <= 0 || encodedSize > maxEncodedSize) {
+            throw new IOException("Corrupted block header");
+        }
+    }
+
+    /**
+     * Decodes the block body
+     *
+     * @param body       Array with the encoded block body
+     * @param bodyOffset Start position of the body in the array
+     * @param bodyLength Amount of bytes in the body
+     * @param out        Array for the decoded bytes
+     * @param outOffset  Start position in the output array
+     * @param rawSize    Amount of bytes in the decoded block
+     */
+    public void decode(
+            byte[] body, int bodyOffset, int bodyLength, byte[] out, int outOffset, int rawSize
+    ) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.CODES);
+        int mode = tagged ? body[bodyOffset] & 0xff : HUFFMAN_BLOCK_MODE;
+        if (mode == STORED_BLOCK_MODE || mode == CONSTANT_BLOCK_MODE) {
+            span.end(0);
+            decodeUncoded(mode, body, bodyOffset + BLOCK_MODE_IN_BYTES, bodyLength - BLOCK_MODE_IN_BYTES,
+                    out, outOffset, rawSize);
+            return;
+        }
+        if (mode != HUFFMAN_BLOCK_MODE && mode != INTERLEAVED_BLOCK_MODE) {
+            throw new IOException("Unknown coding mode of a block " + mode);
+        }
+        BitReader bitReader = tagged ? new BitReader(body, bodyOffset + BLOCK_MODE_IN_BYTES,
+                bodyLength - BLOCK_MODE_IN_BYTES) : new BitReader(body, bodyOffset, bodyLength);
+        CanonicalCodes.readLengths(bitReader, codeLengths);
+        CanonicalCodes.assignCodes(codeLengths, codes);
+        bitReader.alignToByte();
+        decoder.setCodes(codes, codeLengths);
+        if (mode == INTERLEAVED_BLOCK_MODE) {
+            openStreams(bitReader, body, bodyOffset + bodyLength);
+        }
+        span.end(0);
+        span = metrics.begin(Phase.DECODE);
+        if (mode == HUFFMAN_BLOCK_MODE) {
+            decoder.decode(bitReader, out, outOffset, rawSize);
+        } else {
+            decoder.decodeInterleaved(streamReaders, out, outOffset, rawSize);
+        }
+        span.end(rawSize);
+    }
+
+    /**
+     * Restores a stored block or a block of one repeated byte
+     *
+     * @param mode       Coding mode of the block
+     * @param data       Array with the block body after its mode
+     * @param dataOffset Start position of the data in the array
+     * @param dataLength Amount of bytes of the data
+     * @param out        Array for the restored bytes
+     * @param outOffset  Start position in the output array
+     * @param rawSize    Amount of bytes in the restored block
+     */
+    private void decodeUncoded(
+            int mode, byte[] data, int dataOffset, int dataLength, byte[] out, int outOffset, int rawSize
+    ) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.DECODE);
+        if (mode == STORED_BLOCK_MODE) {
+            if (dataLength != rawSize) {
+                throw new IOException("Corrupted stored block");
+            }
+            System.arraycopy(data, dataOffset, out, outOffset, rawSize);
+        } else {
+            if (dataLength != 1) {
+                throw new IOException("Corrupted block of one byte");
+            }
+            Arrays.fill(out, outOffset, outOffset + rawSize, data[dataOffset]);
+        }
+        span.end(rawSize);
+    }
+
+    /**
+     * Reads sizes of the streams of the interleaved mode and opens readers of the streams
+     *
+     * @param bitReader Reader of the body positioned at the sizes of the streams
+     * @param body      Array with the encoded block body
+     * @param bodyEnd   End of the body in the array
+     */
+    private void openStreams(BitReader bitReader, byte[] body, int bodyEnd) throws IOException {
+        int[] sizes = new int[INTERLEAVED_STREAMS - 1];
+        for (int stream = 0; stream < sizes.length; stream++) {
+            sizes[stream] = (int) bitReader.readBits(Integer.SIZE);
+        }
+        bitReader.checkNotOverrun();
+        int position = bitReader.getBufferPosition();
+        for (int stream = 0; stream < INTERLEAVED_STREAMS; stream++) {
+            int size = stream < sizes.length ? sizes[stream] : bodyEnd - position;
+            if (size < 0 || size > bodyEnd - position) {
+                throw new IOException("Corrupted sizes of streams of a block");
+            }
+            streamReaders[stream] = new BitReader(body, position, size);
+            position += size;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitWriter;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Checksums;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Histogram;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics.Phase;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes one block of the tagged block format: the block gets its own frequencies,
+ * Huffman tree and canonical codes. The encoded block body is the coding mode, the code lengths table
+ * and the coded data. A block of one repeated byte keeps only the byte, and a block which Huffman coding
+ * would not compress by the entropy estimate of its frequencies is stored as it is.
+ * In the interleaved mode the data is split into four consecutive parts coded to their own streams
+ * by the same codes, and sizes of the first three streams go before them,
+ * so the decoder can decode the four streams together.
+ * Tables and the output buffer are reused from block to block,
+ * so one encoder must be used by one thread at a time.
+ */
+public class BlockEncoder {
+    /** Frequencies of bytes of the current block indexed by the unsigned byte value */
+    private final long[] frequencies = new long[ALPHABET_SIZE];
+
+    /** Binary codes of unique bytes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
+
+    /** Lengths(in bits) of the codes indexed by the unsigned byte value */
+    private final int[] codeLengths = new int[ALPHABET_SIZE];
+
+    /** Amount of bytes in the last block before encoding */
+    private int rawSize;
+
+    /** Checksum of the last block data */
+    private int checksum;
+
+    /** Frequencies of bytes of every part of the block in the interleaved mode */
+    private final long[][] partFrequencies = new long[INTERLEAVED_STREAMS][ALPHABET_SIZE];
+
+    /** Buffer to copy the stored block from a buffer without an array */
+    private byte[] copyBuffer;
+
+    /** Amount of streams of codes of a block: 1 or INTERLEAVED_STREAMS */
+    private int streams = 1;
+
+    /** Limit of code lengths */
+    private int codeLengthLimit = DEFAULT_CODE_LENGTH_LIMIT;
+
+    /** Amount of coded bits of the last block more than Huffman codes would give because of the limit */
+    private long extraBits;
+
+    /** Encoded body of the current block */
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    /** Bits writer of the block body */
+    private final BitWriter bitWriter = new BitWriter(body, BIT_WRITER_BUFFER_SIZE);
+
+    /** Metrics where phases of encoding are measured */
+    private final ProcessMetrics metrics;
+
+    public BlockEncoder() {
+        this(ProcessMetrics.DISABLED);
+    }
+
+    /** Encoder which measures its phases in the metrics */
+    public BlockEncoder(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the amount of streams of codes of a block. Several streams are decoded faster,
+     * every stream but the last one costs 4 bytes of its size
+     *
+     * @param streams 1 or INTERLEAVED_STREAMS
+     */
+    public void setStreams(int streams) {
+        if (streams != 1 && streams != INTERLEAVED_STREAMS) {
+            throw new IllegalArgumentException("Streams amount must be 1 or " + INTERLEAVED_STREAMS);
+        }
+        this.streams = streams;
+    }
+
+    /** Sets the limit of code lengths, from MIN_CODE_LENGTH_LIMIT to MAX_CODE_LENGTH */
+    public void setCodeLengthLimit(int codeLengthLimit) {
+        this.codeLengthLimit = codeLengthLimit;
+    }
+
+    /**
+     * Encodes the block
+     *
+     * @param data Buffer with the block data from its position to its limit.
+     *             It may be a part of a mapped file, the data is not copied
+     */
+    public void encode(ByteBuffer data) throws IOException {
+        int start = data.position();
+        int end = data.limit();
+        rawSize = end - start;
+        ProcessMetrics.Span span = metrics.begin(Phase.CHECKSUM);
+        checksum = Checksums.checksum(data);
+        span.end(rawSize);
+        span = metrics.begin(Phase.FREQUENCIES);
+        Arrays.fill(frequencies, 0);
+        if (streams == 1) {
+            Histogram.count(data, frequencies);
+        } else {
+            /* Parts are counted separately to get sizes of their streams before they are written */
+            for (int part = 0; part < streams; part++) {
+                Arrays.fill(partFrequencies[part], 0);
+                int partStart = getPartStart(start, rawSize, part);
+                Histogram.count(data.slice(partStart, getPartStart(start, rawSize, part + 1) - partStart),
+                        partFrequencies[part]);
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    frequencies[symbol] += partFrequencies[part][symbol];
+                }
+            }
+        }
+        span.end(rawSize);
+        extraBits = 0;
+        body.reset();
+        int symbolsAmount = Histogram.countSymbols(frequencies);
+        if (symbolsAmount == 1) {
+            writeConstantBlock(data.get(start));
+            return;
+        }
+        if (symbolsAmount == 0 || isStored(frequencies, rawSize)) {
+            writeStoredBlock(data, start, end);
+            return;
+        }
+        extraBits = CanonicalCodes.buildCodes(frequencies, codes, codeLengths, codeLengthLimit, metrics);
+
+        span = metrics.begin(Phase.ENCODE);
+        bitWriter.writeBits(streams == 1 ? HUFFMAN_BLOCK_MODE : INTERLEAVED_BLOCK_MODE,
+                BLOCK_MODE_IN_BYTES * Byte.SIZE);
+        CanonicalCodes.writeLengths(codeLengths, bitWriter);
+        bitWriter.alignToByte();
+        if (streams == 1) {
+            writeCodes(data, start, end);
+        } else {
+            /* Every stream is padded to a whole byte */
+            for (int part = 0; part < streams - 1; part++) {
+                long bits = 0;
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    bits += partFrequencies[part][symbol] * codeLengths[symbol];
+                }
+                bitWriter.writeBits((bits + Byte.SIZE - 1) / Byte.SIZE, Integer.SIZE);
+            }
+            for (int part = 0; part < streams; part++) {
+                writeCodes(data, getPartStart(start, rawSize, part), getPartStart(start, rawSize, part + 1));
+                bitWriter.alignToByte();
+            }
+        }
+        bitWriter.finish();
+        span.end(rawSize);
+    }
+
+    /** Writes the body of a block of one repeated byte: the mode and the byte */
+    private void writeConstantBlock(byte value) {
+        body.write(CONSTANT_BLOCK_MODE);
+        body.write(value);
+    }
+
+    /** Writes the body of a stored block: the mode and the data from the start to the end */
+    private void writeStoredBlock(ByteBuffer data, int start, int end) {
+        ProcessMetrics.Span span = metrics.begin(Phase.ENCODE);
+        body.write(STORED_BLOCK_MODE);
+        if (data.hasArray()) {
+            body.write(data.array(), data.arrayOffset() + start, end - start);
+        } else {
+            if (copyBuffer == null) {
+                copyBuffer = new byte[BIT_WRITER_BUFFER_SIZE];
+            }
+            for (int position = start; position < end; position += copyBuffer.length) {
+                int length = Math.min(copyBuffer.length, end - position);
+                data.get(position, copyBuffer, 0, length);
+                body.write(copyBuffer, 0, length);
+            }
+        }
+        span.end(end - start);
+    }
+
+    /**
+     * Checks if Huffman coding would not compress data of the frequencies by the entropy estimate
+     * at least by the minimal saving, so the data is stored as it is
+     *
+     * @param frequencies Frequencies of bytes of the data indexed by the unsigned byte value
+     * @param size        Amount of bytes of the data
+     */
+    public static boolean isStored(long[] frequencies, long size) {
+        return Histogram.estimateCodedBits(frequencies) / Byte.SIZE >= size * (1 - MIN_CODED_BLOCK_SAVING);
+    }
+
+    /**
+     * Gets the start of the part of the block in the interleaved mode.
+     * Parts have the same size rounded up, so the last parts may be shorter
+     *
+     * @param start   Start of the block
+     * @param rawSize Amount of bytes in the block
+     * @param part    Number of the part, the number of streams gives the end of the block
+     */
+    private static int getPartStart(int start, int rawSize, int part) {
+        int partSize = (rawSize + INTERLEAVED_STREAMS - 1) / INTERLEAVED_STREAMS;
+        return start + (int) Math.min(rawSize, (long) part * partSize);
+    }
+
+    /** Writes codes of the bytes of the data from the start to the end */
+    private void writeCodes(ByteBuffer data, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            int symbol = data.get(i) & 0xff;
+            bitWriter.writeBits(codes[symbol], codeLengths[symbol]);
+        }
+    }
+
+    /** Gets the size of the encoded body of the last block */
+    public int getEncodedSize() {
+        return body.size();
+    }
+
+    /** Gets the amount of bytes in the last block before encoding */
+    public int getRawSize() {
+        return rawSize;
+    }
+
+    /** Gets the checksum of the last block data */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /** Gets the amount of coded bits of the last block more than Huffman codes would give because of the limit */
+    public long getExtraBits() {
+        return extraBits;
+    }
+
+    /** Writes the last block with its header: raw size, encoded size, checksum and the encoded body */
+    public void writeBlock(DataOutputStream dos) throws IOException {
+        dos.writeInt(rawSize);
+        dos.writeInt(body.size());
+        dos.writeInt(checksum);
+        body.writeTo(dos);
+    }
+}
@@ -0,0 +1,249 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Checksums;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+/**
+ * Index of blocks of the block format. It is written after the last block,
+ * and the fixed-size trailer at the end of the archive points to it,
+ * so any block can be found without reading the blocks before it.
+ * The index of the checked block format also has checksums of blocks and of the whole file.
+ */
+public class BlockIndex {
+    /** True if blocks have checksums */
+    private final boolean checksummed;
+
+    /** True if block bodies start with their coding mode */
+    private final boolean tagged;
+
+    /** Offsets of blocks (their headers) from the beginning of the archive */
+    private long[] offsets = new long[INITIAL_INDEX_CAPACITY];
+
+    /** Sizes of encoded block bodies */
+    private int[] compressedSizes = new int[INITIAL_INDEX_CAPACITY];
+
+    /** Sizes of blocks before encoding */
+    private int[] rawSizes = new int[INITIAL_INDEX_CAPACITY];
+
+    /** Offsets of blocks in the original file */
+    private long[] rawOffsets = new long[INITIAL_INDEX_CAPACITY];
+
+    /** Checksums of the block data before encoding */
+    private int[] checksums = new int[INITIAL_INDEX_CAPACITY];
+
+    /** Amount of blocks in the index */
+    private int blocksAmount;
+
+    /** Size of the original file as the sum of raw block sizes */
+    private long originalFileSize;
+
+    /** Checksum of the original file combined from checksums of blocks */
+    private int fileChecksum;
+
+    /** Index of the block format which is written now */
+    public BlockIndex() {
+        this(TAGGED_BLOCK_FORMAT_VERSION);
+    }
+
+    /**
+     * Index of the block format
+     *
+     * @param version Format version: the block, the checked block or the tagged block format
+     */
+    public BlockIndex(int version) {
+        if (!isBlockFormat(version)) {
+            throw new IllegalArgumentException("Not a block format version " + version);
+        }
+        this.tagged = version == TAGGED_BLOCK_FORMAT_VERSION;
+        this.checksummed = version != BLOCK_FORMAT_VERSION;
+    }
+
+    /** Tells whether the format version is one of the block formats */
+    public static boolean isBlockFormat(int version) {
+        return version == BLOCK_FORMAT_VERSION || version == CHECKED_BLOCK_FORMAT_VERSION ||
+                version == TAGGED_BLOCK_FORMAT_VERSION;
+    }
+
+    /**
+     * Adds the next block to the index
+     *
+     * @param offset         Offset of the block header from the beginning of the archive
+     * @param compressedSize Size of the encoded block body
+     * @param rawSize        Size of the block before encoding
+     * @param checksum       Checksum of the block data, it is ignored by an index without checksums
+     */
+    public void add(long offset, int compressedSize, int rawSize, int checksum) throws IOException {
+        if (blocksAmount == offsets.length) {
+            if (blocksAmount == MAX_INDEX_CAPACITY) {
+                throw new IOException("An archive can't have more than " + MAX_INDEX_CAPACITY + " blocks");
+            }
+            /* The capacity is doubled up to the limit, so it never overflows */
+            int capacity = (int) Math.min(2L * blocksAmount, MAX_INDEX_CAPACITY);
+            offsets = Arrays.copyOf(offsets, capacity);
+            compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+            rawSizes = Arrays.copyOf(rawSizes, capacity);
+            rawOffsets = Arrays.copyOf(rawOffsets, capacity);
+            checksums = Arrays.copyOf(checksums, capacity);
+        }
+        offsets[blocksAmount] = offset;
+        compressedSizes[blocksAmount] = compressedSize;
+        rawSizes[blocksAmount] = rawSize;
+        rawOffsets[blocksAmount] = originalFileSize;
+        checksums[blocksAmount] = checksum;
+        if (checksummed) {
+            fileChecksum = Checksums.combine(fileChecksum, checksum, rawSize);
+        }
+        blocksAmount++;
+        originalFileSize += rawSize;
+    }
+
+    public int getBlocksAmount() {
+        return blocksAmount;
+    }
+
+    public long getOffset(int block) {
+        return offsets[block];
+    }
+
+    public int getCompressedSize(int block) {
+        return compressedSizes[block];
+    }
+
+    public int getRawSize(int block) {
+        return rawSizes[block];
+    }
+
+    public long getRawOffset(int block) {
+        return rawOffsets[block];
+    }
+
+    public int getChecksum(int block) {
+        return checksums[block];
+    }
+
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    /** Tells whether block bodies start with their coding mode */
+    public boolean isTagged() {
+        return tagged;
+    }
+
+    /** Gets the checksum of the whole original file */
+    public int getFileChecksum() {
+        return fileChecksum;
+    }
+
+    /** Gets the size of a block header */
+    public int getBlockHeaderSize() {
+        return checksummed ? BLOCK_HEADER_SIZE + CHECKSUM_IN_BYTES : BLOCK_HEADER_SIZE;
+    }
+
+    /** Gets the size of the written index: the blocks amount, entries and the trailer */
+    public long getSize() {
+        return Integer.BYTES + (long) blocksAmount * getEntrySize() + getTrailerSize();
+    }
+
+    /** Gets the size of an index entry */
+    private int getEntrySize() {
+        return checksummed ? BLOCK_INDEX_ENTRY_SIZE + CHECKSUM_IN_BYTES : BLOCK_INDEX_ENTRY_SIZE;
+    }
+
+    /** Gets the size of the trailer */
+    private int getTrailerSize() {
+        return checksummed ? BLOCK_TRAILER_SIZE + CHECKSUM_IN_BYTES : BLOCK_TRAILER_SIZE;
+    }
+
+    /**
+     * Finds the block which holds the byte of the original file
+     *
+     * @param rawOffset Offset of the byte in the original file
+     * @return          The block number or the blocks amount if the offset is after the end of the file
+     */
+    public int findBlock(long rawOffset) {
+        if (rawOffset >= originalFileSize) {
+            return blocksAmount;
+        }
+        /* The last block which starts not after the offset */
+        int block = Arrays.binarySearch(rawOffsets, 0, blocksAmount, rawOffset);
+        return block >= 0 ? block : -block - 2;
+    }
+
+    public long getOriginalFileSize() {
+        return originalFileSize;
+    }
+
+    /**
+     * Writes the index and the trailer
+     *
+     * @param dos         Output stream of the archive
+     * @param indexOffset Offset of the index from the beginning of the archive
+     */
+    public void write(DataOutputStream dos, long indexOffset) throws IOException {
+        dos.writeInt(blocksAmount);
+        for (int i = 0; i < blocksAmount; i++) {
+            dos.writeLong(offsets[i]);
+            dos.writeInt(compressedSizes[i]);
+            dos.writeInt(rawSizes[i]);
+            if (checksummed) {
+                dos.writeInt(checksums[i]);
+            }
+        }
+        /* The trailer */
+        dos.writeLong(indexOffset);
+        dos.writeLong(originalFileSize);
+        if (checksummed) {
+            dos.writeInt(fileChecksum);
+        }
+        dos.writeInt(FORMAT_MAGIC);
+    }
+
+    /**
+     * Reads the index using the trailer at the end of the archive
+     *
+     * @param file    The archive
+     * @param version Format version of the archive
+     * @return        The blocks index
+     */
+    public static BlockIndex read(RandomAccessFile file, int version) throws IOException {
+        BlockIndex index = new BlockIndex(version);
+        boolean checksummed = index.checksummed;
+        int trailerSize = index.getTrailerSize();
+        long fileSize = file.length();
+        if (fileSize < trailerSize) {
+            throw new IOException("The archive has no blocks index");
+        }
+        file.seek(fileSize - trailerSize);
+        long indexOffset = file.readLong();
+        long originalFileSize = file.readLong();
+        int fileChecksum = checksummed ? file.readInt() : 0;
+        if (file.readInt() != FORMAT_MAGIC || indexOffset < 0 ||
+                indexOffset > fileSize - trailerSize - Integer.BYTES) {
+            throw new IOException("Corrupted blocks index");
+        }
+        file.seek(indexOffset);
+        int blocksAmount = file.readInt();
+        if (blocksAmount < 0 ||
+                (long) blocksAmount * index.getEntrySize() != fileSize - trailerSize - Integer.BYTES - indexOffset) {
+            throw new IOException("Corrupted blocks index");
+        }
+        /* The index is read by a stream, so its size is not limited by the size of an array */
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(file.getChannel().position(indexOffset + Integer.BYTES)),
+                BIT_READER_BUFFER_SIZE));
+        for (int i = 0; i < blocksAmount; i++) {
+            index.add(dis.readLong(), dis.readInt(), dis.readInt(), checksummed ? dis.readInt() : 0);
+        }
+        /* Checksums of blocks must make up the checksum of the whole file */
+        if (index.originalFileSize != originalFileSize || index.fileChecksum != fileChecksum) {
+            throw new IOException("Corrupted blocks index");
+        }
+        return index;
+    }
+}
@@ -0,0 +1,594 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ChannelOutputStream;
+import jdk.net.ExtendedSocketOptions;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/**
+ * Long-running process which archives and unArchives on requests of clients, so the start of the JVM
+ * and the warm-up of the coding loops are paid once rather than by every small file.
+ * It listens on a port of the local host or on a Unix domain socket. A client sends requests one after another
+ * without waiting for the results: files named by their paths or data sent in the request itself.
+ * Requests of all the clients are processed by one pool of threads, every thread keeps its codec,
+ * archiver and unArchiver between requests with their tables, the codec and the archiver with their buffers too.
+ * Results come back in the order of their completion with the request id, the sizes and the time
+ * of the request in the daemon.
+ * They are written by the writer thread of the connection, so a client which reads slowly
+ * never holds the threads of the pool. The data of requests and results of all the clients is limited
+ * by DAEMON_BYTES_IN_FLIGHT: the data of a request is read when the budget has room for it,
+ * and results take their room without waiting, so no more data is read until they are written.
+ * A failed request doesn't stop the others, its message is returned instead of the result.
+ * Files are read and written with the rights of the daemon, so file requests are served only
+ * to clients of the same user on the Unix domain socket, which only its owner may connect to.
+ * Other clients, like any client of the port, get only data requests served.
+ *
+ * Requests: the type, the id (4 bytes), then the source and the target paths as UTF strings for files
+ * or the data size (4 bytes) and the data. Results: the id (4 bytes), the failure flag, then the message
+ * as a UTF string or the input size (8 bytes), the output size (8 bytes), the time in nanoseconds (8 bytes),
+ * the size of the returned data (4 bytes) and the data.
+ */
+public class CompressionDaemon {
+    /** Amount of requests processed at the same time */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Size of blocks in the block mode of archiving, 0 to code every file by one table */
+    private int blockSize;
+
+    /** Amount of streams of codes of a block */
+    private int streams = 1;
+
+    /** Limit of code lengths of archiving */
+    private int codeLengthLimit = DEFAULT_CODE_LENGTH_LIMIT;
+
+    /** Order of the context model of archiving */
+    private int contextOrder;
+
+    /** Dictionary which files are archived by, null to archive every file by its own table */
+    private Dictionary dictionary;
+
+    /** Result which tells the writer thread of a connection that there are no more results */
+    private static final Result END_OF_RESULTS = new Result();
+
+    /** Codec of every thread, its tables and buffers stay warm from request to request */
+    private static final ThreadLocal<HuffmanCodec> CODECS = ThreadLocal.withInitial(HuffmanCodec::new);
+
+    /**
+     * Archiver of every thread with the settings of the daemon. Its tables, bits writer and blocks stay warm
+     * from file to file, blocks are encoded by the thread itself
+     */
+    private final ThreadLocal<Archiver> archivers = ThreadLocal.withInitial(this::createArchiver);
+
+    /** UnArchiver of every thread, its tree and code tables stay warm from file to file */
+    private final ThreadLocal<UnArchiver> unArchivers = ThreadLocal.withInitial(CompressionDaemon::createUnArchiver);
+
+    /**
+     * Buffer of every thread for the compressed data. It grows to the largest result,
+     * a buffer larger than MAX_RETAINED_DAEMON_BUFFER_SIZE is dropped after its request
+     */
+    private static final ThreadLocal<byte[]> RESULTS = ThreadLocal.withInitial(() -> new byte[0]);
+
+    /** Sets the amount of requests processed at the same time */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads amount must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /** Sets the block mode of archiving, see {@link Archiver#setBlockSize(int)} */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /** Sets the amount of streams of codes of a block, see {@link Archiver#setStreams(int)} */
+    public void setStreams(int streams) {
+        this.streams = streams;
+    }
+
+    /** Sets the limit of code lengths of archiving, see {@link Archiver#setCodeLengthLimit(int)} */
+    public void setCodeLengthLimit(int codeLengthLimit) {
+        this.codeLengthLimit = codeLengthLimit;
+    }
+
+    /** Sets the order of the context model of archiving, see {@link Archiver#setContextOrder(int)} */
+    public void setContextOrder(int contextOrder) {
+        this.contextOrder = contextOrder;
+    }
+
+    /** Sets the dictionary of archiving, see {@link Archiver#setDictionary(Dictionary)} */
+    public void setDictionary(Dictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Serves clients until the process is stopped. Every client is read by its own thread,
+     * its requests are processed by the pool
+     *
+     * @param address Port of the local host or path of the Unix domain socket
+     * @param log     Stream for messages of the daemon
+     */
+    public void serve(SocketAddress address, PrintStream log) throws IOException {
+        /* Wrong settings are reported once rather than by every request */
+        createArchiver();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ByteBudget bytesInFlight = new ByteBudget(DAEMON_BYTES_IN_FLIGHT);
+        try (ServerSocketChannel server = openServer(address)) {
+            /* The socket is created by the daemon, so its owner is the user of the daemon */
+            UserPrincipal owner = address instanceof UnixDomainSocketAddress ?
+                    Files.getOwner(((UnixDomainSocketAddress) address).getPath()) : null;
+            log.println("The daemon listens on " + address + ", threads: " + threads);
+            while (true) {
+                SocketChannel client = server.accept();
+                boolean filesAllowed = isOwnerClient(client, owner);
+                Thread reader = new Thread(() -> serveClient(client, filesAllowed, workers, bytesInFlight, log),
+                        "daemon-client");
+                reader.setDaemon(true);
+                reader.start();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens the server channel. A Unix domain socket left by a stopped daemon is replaced,
+     * only its owner may connect to it and it is deleted when the process ends
+     */
+    private static ServerSocketChannel openServer(SocketAddress address) throws IOException {
+        if (!(address instanceof UnixDomainSocketAddress)) {
+            ServerSocketChannel server = ServerSocketChannel.open();
+            server.bind(address);
+            return server;
+        }
+        Path socket = ((UnixDomainSocketAddress) address).getPath().toAbsolutePath();
+        /* A socket file is neither a regular file nor a directory, so no other file is deleted */
+        if (Files.exists(socket) && !Files.isRegularFile(socket) && !Files.isDirectory(socket)) {
+            Files.delete(socket);
+        }
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bindPrivately(server, socket);
+        } catch (IOException | RuntimeException exception) {
+            server.close();
+            throw exception;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException ignored) {
+                /* The process ends anyway */
+            }
+        }));
+        return server;
+    }
+
+    /**
+     * Binds the server to the Unix domain socket which only its owner may connect to. The socket is created
+     * in a new directory which only the owner may enter, gets its permissions there and only then is linked
+     * to its path, so other users never see it open. A file system without POSIX permissions
+     * gets the socket right at its path
+     *
+     * @param socket Absolute path of the socket
+     */
+    private static void bindPrivately(ServerSocketChannel server, Path socket) throws IOException {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory(socket.getParent(), ".daemon",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException exception) {
+            /* Clients are checked by their user anyway */
+            server.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        Path privateSocket = directory.resolve("s");
+        try {
+            server.bind(UnixDomainSocketAddress.of(privateSocket));
+            Files.setPosixFilePermissions(privateSocket, PosixFilePermissions.fromString("rw-------"));
+            /* Unlike a move, a link never replaces a file which took the path meanwhile */
+            Files.createLink(socket, privateSocket);
+        } finally {
+            Files.deleteIfExists(privateSocket);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Checks if the client may send file requests: it is connected to the Unix domain socket,
+     * and the system tells that it runs as the owner of the daemon.
+     * The file system may not support the permissions of the socket, so they are not relied on alone
+     *
+     * @param owner The user of the daemon, null if the daemon listens on a port
+     */
+    private static boolean isOwnerClient(SocketChannel client, UserPrincipal owner) {
+        if (owner == null || !client.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) {
+            return false;
+        }
+        try {
+            return client.getOption(ExtendedSocketOptions.SO_PEERCRED).user().getName().equals(owner.getName());
+        } catch (IOException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads requests of the client and hands them to the pool until the end request.
+     * Results are handed to the writer thread of the connection through a queue, which holds
+     * all the requests in work, so a thread of the pool never waits for the client.
+     * The amount of requests in work is limited, so a client which doesn't read its results
+     * is stopped rather than filling the memory
+     *
+     * @param filesAllowed  True if the client may send file requests, others get a failure
+     * @param bytesInFlight Budget of the data of requests and results of all the clients
+     */
+    private void serveClient(SocketChannel client, boolean filesAllowed, ExecutorService workers,
+                             ByteBudget bytesInFlight, PrintStream log) {
+        Semaphore requestsInFlight = new Semaphore(DAEMON_REQUESTS_IN_FLIGHT);
+        /* One more place for the end of results */
+        BlockingQueue<Result> results = new ArrayBlockingQueue<>(DAEMON_REQUESTS_IN_FLIGHT + 1);
+        DataOutputStream out = new DataOutputStream(new ChannelOutputStream(client));
+        Thread writer = new Thread(() -> writeResults(results, out, requestsInFlight, bytesInFlight),
+                "daemon-writer");
+        writer.setDaemon(true);
+        writer.start();
+        try (client) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(client), BIT_READER_BUFFER_SIZE));
+            try {
+                if (in.readInt() != DAEMON_MAGIC) {
+                    throw new IOException("The client doesn't speak the protocol of the daemon");
+                }
+                int type;
+                while ((type = in.readUnsignedByte()) != END_REQUEST) {
+                    /* The turn of the request is taken before its data is read */
+                    requestsInFlight.acquire();
+                    Request request;
+                    try {
+                        request = readRequest(type, in, bytesInFlight);
+                    } catch (Throwable exception) {
+                        /* No result comes for the request, so its turn is given back here */
+                        requestsInFlight.release();
+                        throw exception;
+                    }
+                    if (request.source != null && !filesAllowed) {
+                        /* The paths are not touched, so a refused target is not deleted as a partial one */
+                        results.add(refuse(request));
+                    } else {
+                        workers.execute(() -> results.add(process(request, bytesInFlight)));
+                    }
+                }
+            } finally {
+                /* Results of the requests in work are written before the connection is closed */
+                requestsInFlight.acquireUninterruptibly(DAEMON_REQUESTS_IN_FLIGHT);
+                results.add(END_OF_RESULTS);
+                writer.join();
+            }
+        } catch (EOFException exception) {
+            log.println("FAIL!: The client closed the connection without the end request");
+        } catch (IOException exception) {
+            log.println("FAIL!: " + exception.getMessage());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes results of the connection in the order of their completion until the end of results.
+     * Results are collected while more of them wait in the queue and sent together.
+     * Results of a client which is gone are dropped, so its requests in work are finished anyway
+     */
+    private static void writeResults(BlockingQueue<Result> results, DataOutputStream out,
+                                     Semaphore requestsInFlight, ByteBudget bytesInFlight) {
+        boolean connected = true;
+        try {
+            Result result;
+            while ((result = results.take()) != END_OF_RESULTS) {
+                if (connected) {
+                    try {
+                        writeResult(result, out);
+                        if (results.isEmpty()) {
+                            out.flush();
+                        }
+                    } catch (IOException exception) {
+                        /* The client is gone, its reader finds it out */
+                        connected = false;
+                    }
+                }
+                bytesInFlight.release(result.permits);
+                requestsInFlight.release();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the request of the type after its type.
+     * The data of a data request is read when the budget has room for it
+     *
+     * @param bytesInFlight Budget of the data of requests and results of all the clients
+     */
+    private static Request readRequest(int type, DataInputStream in, ByteBudget bytesInFlight)
+            throws IOException, InterruptedException {
+        Request request = new Request();
+        request.type = type;
+        request.id = in.readInt();
+        if (type == ARCHIVE_REQUEST || type == UNARCHIVE_REQUEST) {
+            request.source = in.readUTF();
+            request.target = in.readUTF();
+        } else if (type == COMPRESS_REQUEST || type == DECOMPRESS_REQUEST) {
+            int size = in.readInt();
+            if (size < 0 || size > MAX_DAEMON_PAYLOAD_SIZE) {
+                throw new IOException("Wrong size of the data of the request " + request.id);
+            }
+            request.permits = bytesInFlight.acquireBytes(size);
+            try {
+                request.data = new byte[size];
+                in.readFully(request.data);
+            } catch (Throwable exception) {
+                bytesInFlight.release(request.permits);
+                throw exception;
+            }
+        } else {
+            throw new IOException("Unknown type of the request " + request.id + ": " + type);
+        }
+        return request;
+    }
+
+    /**
+     * Processes the request, a failure is returned as the result rather than thrown.
+     * Errors like the lack of memory fail only the request, so its client gets the result anyway.
+     * The room of the data of the request in the budget is given to the returned data
+     *
+     * @param bytesInFlight Budget of the data of requests and results of all the clients
+     */
+    private Result process(Request request, ByteBudget bytesInFlight) {
+        Result result = new Result();
+        result.id = request.id;
+        long startTime = System.nanoTime();
+        try {
+            if (request.type == ARCHIVE_REQUEST && Files.isDirectory(Paths.get(request.source))) {
+                archivers.get().archiveDirectory(request.source, request.target);
+            } else if (request.type == ARCHIVE_REQUEST) {
+                archivers.get().archive(request.source, request.target);
+            } else if (request.type == UNARCHIVE_REQUEST) {
+                unArchivers.get().unArchive(request.source, request.target);
+            } else if (request.type == COMPRESS_REQUEST) {
+                compress(request.data, result);
+            } else {
+                decompress(request.data, result);
+            }
+            if (request.source != null) {
+                result.inputSize = getSize(request.source);
+                result.outputSize = getSize(request.target);
+            } else {
+                result.inputSize = request.data.length;
+                result.outputSize = result.dataSize;
+            }
+        } catch (Throwable exception) {
+            result.failure = BatchProcessor.getFailureMessage(exception,
+                    request.type == ARCHIVE_REQUEST || request.type == COMPRESS_REQUEST);
+            if (request.source != null) {
+                BatchProcessor.deletePartialTarget(request.target);
+            }
+        }
+        result.timeNanos = System.nanoTime() - startTime;
+        trimResultBuffer();
+        result.permits = bytesInFlight.chargeBytes(result.dataSize);
+        bytesInFlight.release(request.permits);
+        request.data = null;
+        return result;
+    }
+
+    /** Makes the failure result of the file request of a client which may not send file requests */
+    private static Result refuse(Request request) {
+        Result result = new Result();
+        result.id = request.id;
+        result.failure = "File requests are served only to the owner of the daemon on its Unix domain socket";
+        return result;
+    }
+
+    /** Gets the size of the file or the total size of the files of the directory */
+    private static long getSize(String file) throws IOException {
+        Path path = Paths.get(file);
+        if (!Files.isDirectory(path)) {
+            return Files.size(path);
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(regularFile -> regularFile.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * Compresses the data by the codec of the thread to the buffer of the thread.
+     * The result gets its own copy, because the buffer is reused by the next request of the thread
+     */
+    private static void compress(byte[] data, Result result) throws IOException {
+        long maxSize = HuffmanCodec.getMaxCompressedSize(data.length);
+        if (maxSize > MAX_DAEMON_PAYLOAD_SIZE) {
+            throw new IOException("The data is too large to be returned, archive it as a file");
+        }
+        byte[] buffer = getResultBuffer((int) maxSize);
+        result.dataSize = CODECS.get().compress(ByteBuffer.wrap(data), ByteBuffer.wrap(buffer));
+        result.data = Arrays.copyOf(buffer, result.dataSize);
+    }
+
+    /**
+     * Decompresses the data. Data of the codec is decoded by the codec of the thread,
+     * archives of other formats are unArchived as streams
+     */
+    private static void decompress(byte[] data, Result result) throws IOException {
+        ByteBuffer source = ByteBuffer.wrap(data);
+        if (HuffmanCodec.isCompressed(source)) {
+            int size = HuffmanCodec.getDecompressedSize(source);
+            if (size > MAX_DAEMON_PAYLOAD_SIZE) {
+                throw new IOException("The data is too large to be returned, unArchive it to a file");
+            }
+            result.data = new byte[size];
+            result.dataSize = CODECS.get().decompress(source, ByteBuffer.wrap(result.data));
+            return;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (count + (long) len > MAX_DAEMON_PAYLOAD_SIZE) {
+                    throw new UncheckedIOException(new IOException(
+                            "The data is too large to be returned, unArchive it to a file"));
+                }
+                super.write(b, off, len);
+            }
+        };
+        try {
+            new UnArchiver().unArchive(new ByteArrayInputStream(data), out);
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        }
+        result.data = out.toByteArray();
+        result.dataSize = result.data.length;
+    }
+
+    /** Gets the result buffer of the thread with at least the size */
+    private static byte[] getResultBuffer(int size) {
+        byte[] buffer = RESULTS.get();
+        if (buffer.length < size) {
+            buffer = new byte[size];
+            RESULTS.set(buffer);
+        }
+        return buffer;
+    }
+
+    /** Drops the buffer of the thread if a large request made it grow over the retained size */
+    private static void trimResultBuffer() {
+        if (RESULTS.get().length > MAX_RETAINED_DAEMON_BUFFER_SIZE) {
+            RESULTS.remove();
+        }
+    }
+
+    /** Writes the result of the request without flushing it */
+    private static void writeResult(Result result, DataOutputStream out) throws IOException {
+        out.writeInt(result.id);
+        out.writeBoolean(result.failure != null);
+        if (result.failure != null) {
+            out.writeUTF(result.failure);
+        } else {
+            out.writeLong(result.inputSize);
+            out.writeLong(result.outputSize);
+            out.writeLong(result.timeNanos);
+            out.writeInt(result.dataSize);
+            out.write(result.data, 0, result.dataSize);
+        }
+    }
+
+    /** Creates the archiver of a thread with the settings of the daemon, files are archived one after another */
+    private Archiver createArchiver() {
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(blockSize);
+        archiver.setThreads(1);
+        archiver.setStreams(streams);
+        archiver.setCodeLengthLimit(codeLengthLimit);
+        archiver.setContextOrder(contextOrder);
+        archiver.setDictionary(dictionary);
+        return archiver;
+    }
+
+    /** Creates the unArchiver of a thread, blocks are decoded by the thread of the request */
+    private static UnArchiver createUnArchiver() {
+        UnArchiver unArchiver = new UnArchiver();
+        unArchiver.setThreads(1);
+        return unArchiver;
+    }
+
+    /** Request of a client */
+    private static class Request {
+        /** Type of the request */
+        int type;
+
+        /** Id of the request which its result is sent with */
+        int id;
+
+        /** Source and target paths of a file request, null for a data request */
+        String source;
+        String target;
+
+        /** Data of a data request */
+        byte[] data;
+
+        /** Room of the data in the budget in kilobytes, 0 for a file request */
+        int permits;
+    }
+
+    /** Result of a request */
+    private static class Result {
+        /** Id of the request */
+        int id;
+
+        /** Message of the failure, null if the request succeeded */
+        String failure;
+
+        /** Sizes of the source and of the result */
+        long inputSize;
+        long outputSize;
+
+        /** Time of the request in the daemon in nanoseconds */
+        long timeNanos;
+
+        /** Returned data of a data request, it may be longer than its size */
+        byte[] data = new byte[0];
+        int dataSize;
+
+        /** Room of the returned data in the budget in kilobytes */
+        int permits;
+    }
+
+    /**
+     * Budget of bytes in kilobytes. Readers of requests wait for room in it,
+     * while results are charged without waiting and may take it below zero for a while
+     */
+    private static class ByteBudget extends Semaphore {
+        private static final long serialVersionUID = 1L;
+
+        ByteBudget(long bytes) {
+            super((int) (bytes / 1024));
+        }
+
+        /** Waits for the room of the bytes and takes it, returns the taken permits */
+        int acquireBytes(int bytes) throws InterruptedException {
+            int permits = toPermits(bytes);
+            acquire(permits);
+            return permits;
+        }
+
+        /** Takes the room of the bytes without waiting, returns the taken permits */
+        int chargeBytes(int bytes) {
+            int permits = toPermits(bytes);
+            reducePermits(permits);
+            return permits;
+        }
+
+        /** Gets the permits of the bytes rounded up to whole kilobytes */
+        private static int toPermits(int bytes) {
+            return (int) ((bytes + 1023L) / 1024);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ChannelOutputStream;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Client of the {@link CompressionDaemon}. Requests are sent one after another without waiting
+ * for their results, and results are received in the order of their completion by the daemon.
+ * At most DAEMON_REQUESTS_IN_FLIGHT requests are in work at once, a further request waits for a result.
+ * Results are read by the reader thread of the client as soon as they come and kept until they are received,
+ * so the daemon never waits for the client to read, even while the client sends a large request.
+ * Requests are collected and sent together when the client waits for a result or is closed.
+ */
+public class DaemonClient implements Closeable {
+    /** Connection to the daemon */
+    private final SocketChannel channel;
+
+    /** Stream of results */
+    private final DataInputStream in;
+
+    /** Stream of requests */
+    private final DataOutputStream out;
+
+    /** Id of the next request */
+    private int nextId;
+
+    /** Times when the requests in work were sent, by their ids */
+    private final Map<Integer, Long> sendTimes = new ConcurrentHashMap<>();
+
+    /** Places of requests in work */
+    private final Semaphore requestsInFlight = new Semaphore(DAEMON_REQUESTS_IN_FLIGHT);
+
+    /** Results which are read and not received yet, the failure of reading goes after them */
+    private final BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+
+    /** Amount of sent requests whose results are not received yet */
+    private int pendingResults;
+
+    /** True when the client is closed, so the reader thread stops quietly */
+    private volatile boolean closed;
+
+    /**
+     * Connects to the daemon
+     *
+     * @param address Port of the local host or path of the Unix domain socket
+     */
+    public DaemonClient(SocketAddress address) throws IOException {
+        try {
+            channel = SocketChannel.open(address);
+        } catch (IOException exception) {
+            throw new IOException("The daemon doesn't listen on " + address);
+        }
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BIT_READER_BUFFER_SIZE));
+        out = new DataOutputStream(new ChannelOutputStream(channel));
+        out.writeInt(DAEMON_MAGIC);
+        Thread reader = new Thread(this::readResults, "daemon-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Sends the request to archive the file or the directory.
+     * File requests are served only on the Unix domain socket to the user of the daemon
+     *
+     * @param source The source path, which the daemon resolves against its own working directory
+     * @param target The target path
+     * @return       Id of the request
+     */
+    public int archive(String source, String target) throws IOException {
+        return sendFileRequest(ARCHIVE_REQUEST, source, target);
+    }
+
+    /**
+     * Sends the request to unArchive the file.
+     * File requests are served only on the Unix domain socket to the user of the daemon
+     *
+     * @param source The source path, which the daemon resolves against its own working directory
+     * @param target The target path
+     * @return       Id of the request
+     */
+    public int unArchive(String source, String target) throws IOException {
+        return sendFileRequest(UNARCHIVE_REQUEST, source, target);
+    }
+
+    /**
+     * Sends the request to compress the data, the result has the compressed data
+     *
+     * @return Id of the request
+     */
+    public int compress(byte[] data) throws IOException {
+        return sendDataRequest(COMPRESS_REQUEST, data);
+    }
+
+    /**
+     * Sends the request to decompress the data of any archive format except the multi-file one,
+     * the result has the decompressed data
+     *
+     * @return Id of the request
+     */
+    public int decompress(byte[] data) throws IOException {
+        return sendDataRequest(DECOMPRESS_REQUEST, data);
+    }
+
+    /** Sends the request of the type with the source and the target paths */
+    private int sendFileRequest(int type, String source, String target) throws IOException {
+        int id = beginRequest(type);
+        out.writeUTF(source);
+        out.writeUTF(target);
+        return id;
+    }
+
+    /** Sends the request of the type with the data */
+    private int sendDataRequest(int type, byte[] data) throws IOException {
+        if (data.length > MAX_DAEMON_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("The data is too large to be sent to the daemon");
+        }
+        int id = beginRequest(type);
+        out.writeInt(data.length);
+        out.write(data);
+        return id;
+    }
+
+    /** Waits for the turn of the request and sends its type and id */
+    private int beginRequest(int type) throws IOException {
+        if (!requestsInFlight.tryAcquire()) {
+            /* The collected requests are sent, so their results come */
+            out.flush();
+            try {
+                requestsInFlight.acquire();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Waiting for the daemon was interrupted");
+            }
+        }
+        int id = nextId++;
+        sendTimes.put(id, System.nanoTime());
+        pendingResults++;
+        out.writeByte(type);
+        out.writeInt(id);
+        return id;
+    }
+
+    /**
+     * Receives the next result, waiting for it if needed
+     *
+     * @return The result or null if all the results are received
+     */
+    public Result receive() throws IOException {
+        if (pendingResults == 0) {
+            return null;
+        }
+        out.flush();
+        Result result;
+        try {
+            result = results.take();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for the daemon was interrupted");
+        }
+        if (result.readFailure != null) {
+            /* The failure stays for the next calls */
+            results.add(result);
+            throw new IOException(result.readFailure);
+        }
+        pendingResults--;
+        return result;
+    }
+
+    /** Reads results until the connection is closed, the failure of reading is queued after them */
+    private void readResults() {
+        try {
+            while (true) {
+                results.add(readResult());
+                requestsInFlight.release();
+            }
+        } catch (IOException exception) {
+            Result failure = new Result();
+            failure.readFailure = closed ? "The client is closed" : exception.getMessage();
+            results.add(failure);
+            /* A request which waits for its turn fails on sending */
+            requestsInFlight.release(DAEMON_REQUESTS_IN_FLIGHT);
+        }
+    }
+
+    /** Reads the next result */
+    private Result readResult() throws IOException {
+        try {
+            Result result = new Result();
+            result.id = in.readInt();
+            Long sendTime = sendTimes.remove(result.id);
+            if (sendTime == null) {
+                throw new IOException("The daemon sent the result of an unknown request " + result.id);
+            }
+            if (in.readBoolean()) {
+                result.failure = in.readUTF();
+            } else {
+                result.inputSize = in.readLong();
+                result.outputSize = in.readLong();
+                result.timeNanos = in.readLong();
+                int size = in.readInt();
+                if (size < 0 || size > MAX_DAEMON_PAYLOAD_SIZE) {
+                    throw new IOException("Wrong size of the data of the result " + result.id);
+                }
+                result.data = new byte[size];
+                in.readFully(result.data);
+            }
+            result.roundTripNanos = System.nanoTime() - sendTime;
+            return result;
+        } catch (EOFException exception) {
+            throw new IOException("The daemon closed the connection");
+        }
+    }
+
+    /** Sends the end request and closes the connection, results which are not received are lost */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try (channel) {
+            out.writeByte(END_REQUEST);
+            out.flush();
+        }
+    }
+
+    /** Result of a request */
+    public static class Result {
+        /** Id of the request */
+        public int id;
+
+        /** Message of the failure, null if the request succeeded */
+        public String failure;
+
+        /** Sizes of the source and of the result */
+        public long inputSize;
+        public long outputSize;
+
+        /** Time of the request in the daemon in nanoseconds */
+        public long timeNanos;
+
+        /** Time from sending the request to receiving its result in nanoseconds */
+        public long roundTripNanos;
+
+        /** Compressed or decompressed data of a data request, empty for a file request */
+        public byte[] data = new byte[0];
+
+        /** Message of the failure of reading results, which is queued instead of a result */
+        private String readFailure;
+    }
+}
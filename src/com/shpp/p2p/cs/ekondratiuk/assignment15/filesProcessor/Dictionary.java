@@ -0,0 +1,210 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.*;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Static code table trained on a sample corpus, for workloads of many small similar files.
+ * A file archived by the dictionary is coded in one pass without counting its frequencies,
+ * and its archive has only the dictionary id instead of the code lengths table.
+ * Every byte has a code in the dictionary, so any file can be archived by it.
+ * Loaded dictionaries are cached with their decoders, which are only read by decoding,
+ * so the decoding table is built once and shared by all the archives and threads.
+ */
+public class Dictionary {
+    /** Dictionaries by their normalized files */
+    private static final Map<Path, Dictionary> dictionariesByFiles = new ConcurrentHashMap<>();
+
+    /** Loaded and trained dictionaries by their ids */
+    private static final Map<Integer, Dictionary> dictionariesByIds = new ConcurrentHashMap<>();
+
+    /** Id of the dictionary: the checksum of its code lengths */
+    private final int id;
+
+    /** Canonical codes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
+
+    /** Code lengths indexed by the unsigned byte value */
+    private final int[] codeLengths;
+
+    /** Decoder of the codes, shared by all the archives of the dictionary */
+    private final HuffmanDecoder decoder;
+
+    /**
+     * Dictionary of the code lengths
+     *
+     * @param codeLengths Code lengths of all the bytes
+     */
+    private Dictionary(int[] codeLengths) {
+        this.codeLengths = codeLengths;
+        CanonicalCodes.assignCodes(codeLengths, codes);
+        byte[] lengths = new byte[ALPHABET_SIZE];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            lengths[symbol] = (byte) codeLengths[symbol];
+        }
+        this.id = Checksums.checksum(lengths, 0, lengths.length);
+        this.decoder = new HuffmanDecoder(codes, codeLengths, DECODING_TABLE_BITS);
+    }
+
+    /**
+     * Counts frequencies of bytes of all the sample files
+     *
+     * @param samples Files of the sample corpus
+     * @return        Frequencies indexed by the unsigned byte value
+     */
+    public static long[] countFrequencies(List<Path> samples) throws IOException {
+        long[] frequencies = new long[ALPHABET_SIZE];
+        for (Path sample : samples) {
+            try (FileRegions regions = new FileRegions(sample.toString(), MAX_MAPPED_REGION_SIZE)) {
+                ByteBuffer region;
+                while ((region = regions.nextRegion()) != null) {
+                    Histogram.count(region, frequencies);
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Trains the dictionary on frequencies of the sample corpus.
+     * Every byte gets one more occurrence, so bytes which are absent in the samples get codes too
+     *
+     * @param frequencies     Frequencies of bytes of the samples
+     * @param codeLengthLimit Limit of code lengths, from MIN_CODE_LENGTH_LIMIT to MAX_CODE_LENGTH
+     */
+    public static Dictionary train(long[] frequencies, int codeLengthLimit) throws IOException {
+        if (codeLengthLimit < MIN_CODE_LENGTH_LIMIT || codeLengthLimit > MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length limit must be from " + MIN_CODE_LENGTH_LIMIT +
+                    " to " + MAX_CODE_LENGTH + " bits");
+        }
+        long[] smoothed = new long[ALPHABET_SIZE];
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            smoothed[symbol] = frequencies[symbol] + 1;
+        }
+        int[] codeLengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.buildCodes(smoothed, new long[ALPHABET_SIZE], codeLengths, codeLengthLimit,
+                ProcessMetrics.DISABLED);
+        return cache(new Dictionary(codeLengths));
+    }
+
+    /**
+     * Gets the dictionary of the file. It is read once, then it is taken from the cache
+     *
+     * @param file The dictionary file
+     */
+    public static Dictionary load(Path file) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        Dictionary dictionary = dictionariesByFiles.get(key);
+        if (dictionary == null) {
+            dictionary = cache(read(key));
+            Dictionary previous = dictionariesByFiles.putIfAbsent(key, dictionary);
+            if (previous != null) {
+                dictionary = previous;
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Gets the loaded or trained dictionary by its id
+     *
+     * @return The dictionary or null if it is not loaded
+     */
+    public static Dictionary get(int id) {
+        return dictionariesByIds.get(id);
+    }
+
+    /** Puts the dictionary to the cache by its id, the cached one is returned if it has the same id */
+    private static Dictionary cache(Dictionary dictionary) {
+        Dictionary previous = dictionariesByIds.putIfAbsent(dictionary.id, dictionary);
+        return previous != null ? previous : dictionary;
+    }
+
+    /** Reads the dictionary file: the magic, the version, the id and the code lengths table */
+    private static Dictionary read(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        int headerSize = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + DICTIONARY_ID_IN_BYTES;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (data.length < headerSize || buffer.getInt() != DICTIONARY_MAGIC) {
+            throw new IOException(file + " is not a dictionary");
+        }
+        int version = buffer.get() & 0xff;
+        if (version != DICTIONARY_FILE_VERSION) {
+            throw new IOException("Unsupported dictionary version " + version);
+        }
+        int id = buffer.getInt();
+        int[] codeLengths = new int[ALPHABET_SIZE];
+        BitReader bitReader = new BitReader(buffer);
+        try {
+            CanonicalCodes.readLengths(bitReader, codeLengths);
+            bitReader.checkNotOverrun();
+        } catch (IOException exception) {
+            throw new IOException("Corrupted dictionary " + file);
+        }
+        for (int length : codeLengths) {
+            if (length == 0) {
+                throw new IOException("Corrupted dictionary " + file);
+            }
+        }
+        Dictionary dictionary = new Dictionary(codeLengths);
+        if (dictionary.id != id) {
+            throw new IOException("Corrupted dictionary " + file);
+        }
+        return dictionary;
+    }
+
+    /**
+     * Writes the dictionary file
+     *
+     * @param file The dictionary file
+     */
+    public void write(Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            DataOutputStream dos = new DataOutputStream(out);
+            dos.writeInt(DICTIONARY_MAGIC);
+            dos.writeByte(DICTIONARY_FILE_VERSION);
+            dos.writeInt(id);
+            BitWriter bitWriter = new BitWriter(dos, BIT_WRITER_BUFFER_SIZE);
+            CanonicalCodes.writeLengths(codeLengths, bitWriter);
+            bitWriter.finish();
+        }
+    }
+
+    /** Gets the id of the dictionary, which its archives refer to */
+    public int getId() {
+        return id;
+    }
+
+    /** Gets the codes indexed by the unsigned byte value. The array must not be changed */
+    public long[] getCodes() {
+        return codes;
+    }
+
+    /** Gets the code lengths indexed by the unsigned byte value. The array must not be changed */
+    public int[] getCodeLengths() {
+        return codeLengths;
+    }
+
+    /** Gets the shared decoder of the codes */
+    public HuffmanDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Gets the amount of bits of the data coded by the dictionary
+     *
+     * @param frequencies Frequencies of bytes of the data
+     */
+    public long getCodedBits(long[] frequencies) {
+        return CanonicalCodes.getCodedBits(frequencies, codeLengths);
+    }
+}
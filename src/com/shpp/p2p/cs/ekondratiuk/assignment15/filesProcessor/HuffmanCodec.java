@@ -0,0 +1,163 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitReader;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitWriter;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ByteBufferOutputStream;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Histogram;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanDecoder;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compresses and decompresses data which is in memory from buffer to buffer.
+ * The compressed data has the format of archived files where the whole data is coded by one table,
+ * so it can be unArchived like an archived file too.
+ * Tables and buffers are reused from call to call, so one codec must be used by one thread at a time.
+ */
+public class HuffmanCodec {
+    /** Size of the header: format magic and version, data size */
+    private static final int HEADER_SIZE = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + FILE_SIZE_IN_BYTES;
+
+    /** Frequencies of bytes indexed by the unsigned byte value */
+    private final long[] frequencies = new long[ALPHABET_SIZE];
+
+    /** Binary codes of unique bytes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
+
+    /** Lengths(in bits) of the codes indexed by the unsigned byte value */
+    private final int[] codeLengths = new int[ALPHABET_SIZE];
+
+    /** Stream over the current output buffer */
+    private final ByteBufferOutputStream output = new ByteBufferOutputStream();
+
+    /** Bits writer of the compressed data */
+    private final BitWriter bitWriter = new BitWriter(output, BIT_WRITER_BUFFER_SIZE);
+
+    /** Decoder which tables are rebuilt for every compressed data */
+    private final HuffmanDecoder decoder = new HuffmanDecoder(DECODING_TABLE_BITS);
+
+    /** Buffer of decoded bytes for output buffers without an accessible array */
+    private byte[] processedData;
+
+    /**
+     * Gets the maximal size of the compressed data.
+     * Huffman codes are not longer in total than the 8-bit codes of the source bytes,
+     * so the compressed data is the source with the header and the code lengths table at most
+     *
+     * @param size Size of the data to compress
+     */
+    public static long getMaxCompressedSize(int size) {
+        return HEADER_SIZE + MAX_LENGTHS_TABLE_SIZE + (long) size;
+    }
+
+    /**
+     * Compresses the remaining bytes of the source buffer to the output buffer.
+     * Positions of both buffers are moved after the processed bytes
+     *
+     * @param src Data to compress
+     * @param dst Buffer for the compressed data. It must have {@link #getMaxCompressedSize(int)} bytes remaining
+     * @return    Size of the compressed data
+     * @throws BufferOverflowException If the output buffer is too small
+     */
+    public int compress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        if (dst.remaining() < getMaxCompressedSize(src.remaining())) {
+            throw new BufferOverflowException();
+        }
+        Arrays.fill(frequencies, 0);
+        Histogram.count(src, frequencies);
+        CanonicalCodes.buildCodes(frequencies, codes, codeLengths);
+        int start = dst.position();
+        output.setBuffer(dst);
+        bitWriter.writeBits(FORMAT_MAGIC, Integer.SIZE);
+        bitWriter.writeBits(CANONICAL_FORMAT_VERSION, Byte.SIZE);
+        bitWriter.writeBits(src.remaining(), Long.SIZE);
+        CanonicalCodes.writeLengths(codeLengths, bitWriter);
+        bitWriter.alignToByte();
+        for (int i = src.position(); i < src.limit(); i++) {
+            int symbol = src.get(i) & 0xff;
+            bitWriter.writeBits(codes[symbol], codeLengths[symbol]);
+        }
+        bitWriter.finish();
+        output.setBuffer(null);
+        src.position(src.limit());
+        return dst.position() - start;
+    }
+
+    /**
+     * Gets the size of the data after decompression from the header of the compressed data.
+     * The buffer position is not changed
+     *
+     * @param src Compressed data
+     */
+    public static int getDecompressedSize(ByteBuffer src) throws IOException {
+        if (src.remaining() < HEADER_SIZE) {
+            throw new IOException("Unexpected end of the archived data");
+        }
+        /* The duplicate has the big-endian order whatever the order of the buffer is */
+        ByteBuffer header = src.duplicate();
+        if (header.getInt() != FORMAT_MAGIC || header.get() != CANONICAL_FORMAT_VERSION) {
+            throw new IOException("The data is not compressed by the codec");
+        }
+        long size = header.getLong();
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Corrupted archive header");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Checks if the data starts with the header of the codec. The buffer position is not changed
+     *
+     * @param src Data to check
+     */
+    public static boolean isCompressed(ByteBuffer src) {
+        if (src.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = src.duplicate();
+        return header.getInt() == FORMAT_MAGIC && header.get() == CANONICAL_FORMAT_VERSION;
+    }
+
+    /**
+     * Decompresses the data from the source buffer to the output buffer.
+     * Positions of both buffers are moved after the processed bytes
+     *
+     * @param src Compressed data
+     * @param dst Buffer for the decompressed data. It must have {@link #getDecompressedSize(ByteBuffer)} bytes remaining
+     * @return    Size of the decompressed data
+     * @throws BufferOverflowException If the output buffer is too small
+     */
+    public int decompress(ByteBuffer src, ByteBuffer dst) throws IOException {
+        int size = getDecompressedSize(src);
+        if (dst.remaining() < size) {
+            throw new BufferOverflowException();
+        }
+        BitReader bitReader = new BitReader(src.duplicate().position(src.position() + HEADER_SIZE));
+        CanonicalCodes.readLengths(bitReader, codeLengths);
+        CanonicalCodes.assignCodes(codeLengths, codes);
+        bitReader.alignToByte();
+        decoder.setCodes(codes, codeLengths);
+        if (dst.hasArray()) {
+            decoder.decode(bitReader, dst.array(), dst.arrayOffset() + dst.position(), size);
+            dst.position(dst.position() + size);
+        } else {
+            if (processedData == null) {
+                processedData = new byte[DECODING_BUFFER_SIZE];
+            }
+            for (int bytesLeft = size; bytesLeft > 0; ) {
+                int bytesInBuffer = Math.min(bytesLeft, processedData.length);
+                decoder.decode(bitReader, processedData, 0, bytesInBuffer);
+                dst.put(processedData, 0, bytesInBuffer);
+                bytesLeft -= bytesInBuffer;
+            }
+        }
+        src.position(bitReader.getBufferPosition());
+        return size;
+    }
+}
@@ -0,0 +1,226 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Checksums;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics.Phase;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.util.Objects;
+
+/**
+ * Input stream which decompresses an archive of the block format, like the one written by
+ * {@link HuffmanOutputStream}. Blocks are read and decoded one by one in their order,
+ * the blocks index and the trailer are checked against the read blocks.
+ * Every block of the checked block format is checked by its checksum when it is decoded,
+ * the checksum of the whole file is checked at the end of the archive.
+ */
+public class HuffmanInputStream extends FilterInputStream {
+    /** Underlying stream of the archive */
+    private final DataInputStream dis;
+
+    /** Format version of the archive, 0 until it is read from the underlying stream */
+    private int version;
+
+    /** Size of blocks of the archive, 0 until the archive header is read */
+    private int blockSize;
+
+    /** Encoded body of the current block */
+    private byte[] encodedData;
+
+    /** Decoded data of the current block */
+    private byte[] processedData;
+
+    /** Position of the next byte to give in the decoded data */
+    private int processedPosition;
+
+    /** Amount of bytes in the decoded data */
+    private int processedLimit;
+
+    /** Decoder of blocks */
+    private final BlockDecoder decoder;
+
+    /** Metrics where phases of decoding are measured */
+    private final ProcessMetrics metrics;
+
+    /** Position in the archive after the read blocks */
+    private long position = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES;
+
+    /** Index of the read blocks, it is created when the archive header is read */
+    private BlockIndex index;
+
+    /** True if the end marker and the trailer are read */
+    private boolean endOfArchive;
+
+    /** Stream which decompresses the archive from its beginning */
+    public HuffmanInputStream(InputStream in) {
+        this(new DataInputStream(in), 0, ProcessMetrics.DISABLED);
+    }
+
+    /**
+     * Stream which decompresses the archive
+     *
+     * @param dis     Underlying stream of the archive
+     * @param version Format version if the format magic and version are already read from the stream, otherwise 0
+     * @param metrics Metrics where phases of decoding are measured
+     */
+    HuffmanInputStream(DataInputStream dis, int version, ProcessMetrics metrics) {
+        super(dis);
+        this.dis = dis;
+        this.version = version;
+        this.metrics = metrics;
+        this.decoder = new BlockDecoder(metrics);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (processedPosition == processedLimit && !readBlock()) {
+            return -1;
+        }
+        return processedData[processedPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) {
+            return 0;
+        }
+        if (processedPosition == processedLimit && !readBlock()) {
+            return -1;
+        }
+        int bytesToCopy = Math.min(len, processedLimit - processedPosition);
+        System.arraycopy(processedData, processedPosition, b, off, bytesToCopy);
+        processedPosition += bytesToCopy;
+        return bytesToCopy;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && (processedPosition < processedLimit || readBlock())) {
+            int bytesToSkip = (int) Math.min(n - skipped, processedLimit - processedPosition);
+            processedPosition += bytesToSkip;
+            skipped += bytesToSkip;
+        }
+        return skipped;
+    }
+
+    /** Amount of decoded bytes which can be read without decoding the next block */
+    @Override
+    public int available() {
+        return processedLimit - processedPosition;
+    }
+
+    /** Writes the decoded blocks to the stream right from the decoding buffer */
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = 0;
+        while (processedPosition < processedLimit || readBlock()) {
+            out.write(processedData, processedPosition, processedLimit - processedPosition);
+            transferred += processedLimit - processedPosition;
+            processedPosition = processedLimit;
+        }
+        return transferred;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Reads and decodes the next block
+     *
+     * @return false after the last block
+     */
+    private boolean readBlock() throws IOException {
+        if (endOfArchive) {
+            return false;
+        }
+        try {
+            if (blockSize == 0) {
+                readHeader();
+            }
+            int rawSize = dis.readInt();
+            if (rawSize == 0) {
+                readTrailer();
+                endOfArchive = true;
+                return false;
+            }
+            int encodedSize = dis.readInt();
+            int checksum = index.isChecksummed() ? dis.readInt() : 0;
+            BlockDecoder.checkBlockSizes(rawSize, encodedSize, blockSize);
+            if (encodedData == null || encodedSize > encodedData.length) {
+                encodedData = new byte[encodedSize];
+            }
+            if (processedData == null || rawSize > processedData.length) {
+                processedData = new byte[rawSize];
+            }
+            dis.readFully(encodedData, 0, encodedSize);
+            decoder.decode(encodedData, 0, encodedSize, processedData, 0, rawSize);
+            if (index.isChecksummed()) {
+                ProcessMetrics.Span span = metrics.begin(Phase.CHECKSUM);
+                boolean mismatch = Checksums.checksum(processedData, 0, rawSize) != checksum;
+                span.end(rawSize);
+                if (mismatch) {
+                    throw new IOException("Checksum mismatch in block " + index.getBlocksAmount());
+                }
+            }
+            processedPosition = 0;
+            processedLimit = rawSize;
+            index.add(position, encodedSize, rawSize, checksum);
+            position += index.getBlockHeaderSize() + encodedSize;
+            return true;
+        } catch (EOFException exception) {
+            throw new IOException("Unexpected end of the archived data");
+        }
+    }
+
+    /** Reads the archive header: the format magic and version if they are not read yet, the block size */
+    private void readHeader() throws IOException {
+        if (version == 0) {
+            if (dis.readInt() != FORMAT_MAGIC) {
+                throw new IOException("The data is not an archive of the block format");
+            }
+            version = dis.readUnsignedByte();
+        }
+        if (!BlockIndex.isBlockFormat(version)) {
+            throw new IOException("The data is not an archive of the block format");
+        }
+        int size = dis.readInt();
+        if (size < MIN_BLOCK_SIZE || size > MAX_BLOCK_SIZE) {
+            throw new IOException("Corrupted archive header");
+        }
+        blockSize = size;
+        index = new BlockIndex(version);
+        decoder.setTagged(index.isTagged());
+    }
+
+    /** Checks the blocks index and the trailer against the read blocks */
+    private void readTrailer() throws IOException {
+        boolean checksummed = index.isChecksummed();
+        boolean corrupted = dis.readInt() != index.getBlocksAmount();
+        for (int block = 0; block < index.getBlocksAmount() && !corrupted; block++) {
+            corrupted = dis.readLong() != index.getOffset(block) |
+                    dis.readInt() != index.getCompressedSize(block) |
+                    dis.readInt() != index.getRawSize(block) |
+                    (checksummed && dis.readInt() != index.getChecksum(block));
+        }
+        if (corrupted || dis.readLong() != position + Integer.BYTES ||
+                dis.readLong() != index.getOriginalFileSize() ||
+                (checksummed && dis.readInt() != index.getFileChecksum()) || dis.readInt() != FORMAT_MAGIC) {
+            throw new IOException("Corrupted blocks index");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Output stream which compresses the written data to the tagged block format.
+ * The data is collected to a block, every full block gets its own coding mode and table, its checksum,
+ * and is written to the underlying stream, so the size of the data is not needed beforehand.
+ * The archive is completed by {@link #finish()} or {@link #close()},
+ * it can be read by {@link HuffmanInputStream} or unArchived like an archived file.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+    /** Initial size of the block buffer, it grows up to the block size for larger data */
+    private static final int INITIAL_BLOCK_BUFFER_SIZE = 64 * 1024;
+
+    /** Underlying stream for the archive */
+    private final DataOutputStream dos;
+
+    /** Size of blocks */
+    private final int blockSize;
+
+    /** Data of the current block */
+    private byte[] block;
+
+    /** Amount of bytes in the current block */
+    private int blockPosition;
+
+    /** Encoder of blocks */
+    private final BlockEncoder encoder = new BlockEncoder();
+
+    /** Index of the written blocks */
+    private final BlockIndex index = new BlockIndex();
+
+    /** Amount of bytes written to the underlying stream, 0 until the archive header is written */
+    private long position;
+
+    /** True if the archive is completed */
+    private boolean finished;
+
+    /** Stream which compresses the data by blocks of the default size */
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Stream which compresses the data by blocks of the specified size
+     *
+     * @param out       Underlying stream for the archive
+     * @param blockSize Size of blocks in bytes
+     */
+    public HuffmanOutputStream(OutputStream out, int blockSize) {
+        super(out);
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be from " + MIN_BLOCK_SIZE +
+                    " to " + MAX_BLOCK_SIZE + " bytes");
+        }
+        this.dos = new DataOutputStream(out);
+        this.blockSize = blockSize;
+        this.block = new byte[Math.min(blockSize, INITIAL_BLOCK_BUFFER_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        prepareBlock();
+        block[blockPosition++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        while (len > 0) {
+            prepareBlock();
+            int bytesToCopy = Math.min(len, block.length - blockPosition);
+            System.arraycopy(b, off, block, blockPosition, bytesToCopy);
+            blockPosition += bytesToCopy;
+            off += bytesToCopy;
+            len -= bytesToCopy;
+        }
+    }
+
+    /** Makes room for the next written bytes: writes the full block or grows the block buffer */
+    private void prepareBlock() throws IOException {
+        if (finished) {
+            throw new IOException("The archive is already finished");
+        }
+        if (blockPosition == blockSize) {
+            writeBlock();
+        }
+        if (blockPosition == block.length) {
+            block = Arrays.copyOf(block, Math.min(blockSize, block.length * 2));
+        }
+    }
+
+    /**
+     * Writes the collected data as the last block, then the end marker, the blocks index and the trailer.
+     * The underlying stream is flushed, but not closed
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (blockPosition > 0) {
+            writeBlock();
+        }
+        writeHeader();
+        /* Zero raw size marks the end of blocks */
+        dos.writeInt(0);
+        index.write(dos, position + Integer.BYTES);
+        dos.flush();
+        finished = true;
+    }
+
+    /** Completes the archive and closes the underlying stream */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Writes the archive header before the first block */
+    private void writeHeader() throws IOException {
+        if (position == 0) {
+            dos.writeInt(FORMAT_MAGIC);
+            dos.writeByte(TAGGED_BLOCK_FORMAT_VERSION);
+            dos.writeInt(blockSize);
+            position = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES;
+        }
+    }
+
+    /** Encodes and writes the collected data as a block */
+    private void writeBlock() throws IOException {
+        writeHeader();
+        encoder.encode(ByteBuffer.wrap(block, 0, blockPosition));
+        encoder.writeBlock(dos);
+        index.add(position, encoder.getEncodedSize(), blockPosition, encoder.getChecksum());
+        position += index.getBlockHeaderSize() + encoder.getEncodedSize();
+        blockPosition = 0;
+    }
+}
@@ -1,12 +1,34 @@
 package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
 
-import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanTreeNode;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitReader;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ChannelOutputStream;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Checksums;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ContextModel;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.FileRegions;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanDecoder;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.HuffmanTree;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.PipelinedInputStream;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.ProcessMetrics.Phase;
 import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Tools;
 
 import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class UnArchiver {
     /** Size of the file that was packed to current(fileIn) archive file */
@@ -18,26 +40,42 @@ public class UnArchiver {
     /** Output file for the result of unArchiving */
     private String fileOut;
 
-    /** Temporary bytes counter from one buffer for writing to the fileOut */
-    private int bufferBytesCounter;
+    /** Huffman tree of the legacy archive header */
+    private final HuffmanTree huffmanTree = new HuffmanTree();
 
-    /** Global bytes counter from all buffers for writing to the fileOut */
-    private int globalBytesCounter;
+    /** Binary codes of unique bytes indexed by the unsigned byte value */
+    private final long[] codes = new long[ALPHABET_SIZE];
 
-    /** Technical data offset(bytes) from the begin of the file to the data itself */
-    private int offset;
+    /** Lengths(in bits) of the codes indexed by the unsigned byte value */
+    private final int[] codeLengths = new int[ALPHABET_SIZE];
 
-    /** Huffman tree from the packed file to process the packed data */
-    private HuffmanTreeNode huffmanTree;
+    /** Dictionary of the current archive of the dictionary format, null for other formats */
+    private Dictionary dictionary;
 
-    /** Tree shape as the boolean queue */
-    private final Deque<Boolean> treeShape = new LinkedList<>();
+    /** Context model of the current archive of the context format, null for other formats */
+    private ContextModel contextModel;
 
-    /** Leaves of the tree as the Byte queue */
-    private final Queue<Byte> treeLeaves = new LinkedList<>();
+    /** True if the last unArchived or tested archive was checked by checksums */
+    private boolean checksummed;
 
-    /** String constructor used as a dynamic binary stack */
-    private final StringBuilder binaryStack = new StringBuilder();
+    /** Amount of threads which decode blocks of the block format */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /** Metrics where phases of unArchiving are measured */
+    private ProcessMetrics metrics = ProcessMetrics.DISABLED;
+
+    /** Sets metrics where phases of unArchiving are measured */
+    public void setMetrics(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Sets the amount of threads which decode blocks of the block format */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads amount must be positive");
+        }
+        this.threads = threads;
+    }
 
     /**
      * Makes the UnArchived file(target) from the source one
@@ -45,166 +83,704 @@ public class UnArchiver {
      * @return 0 if operation is successful
      */
     public int unArchive(String fileIn, String fileOut) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
         this.fileIn = fileIn;
         this.fileOut = fileOut;
-        restoreFileHeaderData();
-        huffmanTree = unpackHuffmanTree();
-        processFile();
+        DataInputStream dis;
+        dis = new DataInputStream(new BufferedInputStream(new FileInputStream(fileIn), BIT_READER_BUFFER_SIZE));
+        try {
+            int version = readFormatVersion(dis);
+            if (BlockIndex.isBlockFormat(version)) {
+                dis.close();
+                processFileByBlocks();
+            } else if (version == MULTI_FILE_FORMAT_VERSION) {
+                dis.close();
+                extractAll();
+            } else {
+                int headerSize = restoreFileHeaderData(dis, version);
+                dis.close();
+                ByteBuffer mappedArchive = mapArchive();
+                try (
+                        InputStream data = mappedArchive == null ? openArchiveData(headerSize) : null;
+                        OutputStream fos = Tools.openFileOutput(fileOut, originalFileSize, metrics)
+                ) {
+                    BitReader bitReader = mappedArchive != null ? new BitReader(mappedArchive.position(headerSize)) :
+                            new BitReader(data, BIT_READER_BUFFER_SIZE);
+                    restoreTables(bitReader, version);
+                    processFile(bitReader, fos);
+                }
+            }
+        } catch (EOFException exception) {
+            throw new IOException("Unexpected end of the archived data");
+        } finally {
+            dis.close();
+        }
+        span.end(originalFileSize);
+        metrics.addSizes("unArchive", originalFileSize, Tools.getFileSize(fileIn), false);
         return 0;
     }
 
-    /** Restores data for a current file from its header */
-    private void restoreFileHeaderData() throws IOException {
-        DataInputStream dis;
-        dis = new DataInputStream(new FileInputStream(fileIn));
+    /**
+     * UnArchives the stream to the stream in one pass, so the archive may come from a pipe.
+     * Archives of every format are accepted, blocks of the block format are decoded one by one
+     * in their order without the index. Streams are not closed
+     *
+     * @param in  Stream of the archive
+     * @param out Stream for the unArchived data
+     */
+    public void unArchive(InputStream in, OutputStream out) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        CountingInputStream counter = new CountingInputStream(in);
+        decodeStream(counter, out);
+        span.end(originalFileSize);
+        metrics.addSizes("unArchive stream", originalFileSize, counter.count, false);
+    }
+
+    /**
+     * UnArchives the stream to the stream in one pass. Streams are not closed
+     *
+     * @param in  Stream of the archive
+     * @param out Stream for the unArchived data
+     */
+    private void decodeStream(InputStream in, OutputStream out) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in, BIT_READER_BUFFER_SIZE));
+        try {
+            int version = readFormatVersion(dis);
+            if (BlockIndex.isBlockFormat(version)) {
+                originalFileSize = new HuffmanInputStream(dis, version, metrics).transferTo(out);
+            } else if (version == MULTI_FILE_FORMAT_VERSION) {
+                throw new IOException("A multi-file archive can be unArchived only from a file");
+            } else {
+                restoreFileHeaderData(dis, version);
+                BitReader bitReader = new BitReader(dis, BIT_READER_BUFFER_SIZE);
+                restoreTables(bitReader, version);
+                processFile(bitReader, out);
+            }
+        } catch (EOFException exception) {
+            throw new IOException("Unexpected end of the archived data");
+        }
+        out.flush();
+    }
+
+    /**
+     * UnArchives the range of the original file from the archive of the block format.
+     * Blocks are the sync points: only the blocks which hold the range are found by the index,
+     * read and decoded, so the work depends on the range length rather than on its position.
+     * The range is cut at the end of the original file
+     *
+     * @param fileIn The archive
+     * @param offset Offset of the range in the original file
+     * @param length Length of the range
+     * @param out    Stream for the range data, it is not closed
+     * @return       Amount of written bytes
+     */
+    public long unArchiveRange(String fileIn, long offset, long length, OutputStream out) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Range offset and length must not be negative");
+        }
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        this.fileIn = fileIn;
+        try (RandomAccessFile archive = new RandomAccessFile(fileIn, "r")) {
+            BlockIndex index = openBlockArchive(archive);
+            if (index == null) {
+                throw new IOException("Only archives of the block format (made with -b or -j) can be unArchived by ranges");
+            }
+            int blockSize = readBlockSize(archive);
+            originalFileSize = index.getOriginalFileSize();
+            long end = offset + Math.min(length, Math.max(0, originalFileSize - offset));
+            DecodingSlot slot = new DecodingSlot(blockSize, metrics);
+            long written = 0;
+            long read = 0;
+            for (int block = index.findBlock(offset); block < index.getBlocksAmount() &&
+                    index.getRawOffset(block) < end; block++) {
+                int rawSize = index.getRawSize(block);
+                BlockDecoder.checkBlockSizes(rawSize, index.getCompressedSize(block), blockSize);
+                slot.decode(archive.getChannel(), index, block);
+                /* The first and the last blocks may be cut by the range */
+                long blockStart = index.getRawOffset(block);
+                int from = (int) Math.max(0, offset - blockStart);
+                int to = (int) Math.min(rawSize, end - blockStart);
+                out.write(slot.processedData, from, to - from);
+                written += to - from;
+                read += index.getBlockHeaderSize() + index.getCompressedSize(block);
+            }
+            out.flush();
+            span.end(written);
+            metrics.addSizes("unArchive range", written, read, false);
+            return written;
+        }
+    }
+
+    /**
+     * Tests the archive: decodes it in memory without writing the result.
+     * Blocks of the block format are decoded in parallel, blocks of the checked block format
+     * are checked by their checksums and by the checksum of the whole file.
+     * Archives of other formats are only decoded, so their structure is checked
+     *
+     * @param fileIn The archive
+     * @return       Amount of decoded bytes
+     */
+    public long test(String fileIn) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        this.fileIn = fileIn;
+        this.fileOut = null;
+        try (RandomAccessFile archive = new RandomAccessFile(fileIn, "r")) {
+            BlockIndex index = openBlockArchive(archive);
+            if (index != null) {
+                decodeBlocks(archive, index, null);
+            } else {
+                archive.seek(0);
+                if (archive.length() >= FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES &&
+                        archive.readInt() == FORMAT_MAGIC &&
+                        archive.readUnsignedByte() == MULTI_FILE_FORMAT_VERSION) {
+                    testEntries();
+                } else {
+                    try (InputStream in = new FileInputStream(fileIn)) {
+                        decodeStream(in, OutputStream.nullOutputStream());
+                    }
+                }
+            }
+        }
+        span.end(originalFileSize);
+        metrics.addSizes("test", originalFileSize, Tools.getFileSize(fileIn), false);
+        return originalFileSize;
+    }
+
+    /**
+     * Tells whether the last unArchived or tested archive was checked by checksums.
+     * A multi-file archive is checked if all its entries are checked
+     */
+    public boolean isChecksummed() {
+        return checksummed;
+    }
+
+    /** Decodes every entry of the multi-file archive in memory */
+    private void testEntries() throws IOException {
+        boolean allChecksummed = true;
+        try (RandomAccessFile archive = openMultiFileArchive(fileIn)) {
+            ArchiveDirectory archiveDirectory = ArchiveDirectory.read(archive);
+            for (ArchiveDirectory.Entry entry : archiveDirectory.getEntries()) {
+                extractEntry(archive, entry, OutputStream.nullOutputStream());
+                allChecksummed &= checksummed;
+            }
+            originalFileSize = archiveDirectory.getOriginalSize();
+        }
+        checksummed = allChecksummed;
+    }
+
+    /**
+     * Gets entries of the multi-file archive. Only the central directory is read
+     *
+     * @param fileIn The archive
+     */
+    public List<ArchiveDirectory.Entry> list(String fileIn) throws IOException {
+        try (RandomAccessFile archive = openMultiFileArchive(fileIn)) {
+            return ArchiveDirectory.read(archive).getEntries();
+        }
+    }
+
+    /**
+     * Extracts one entry of the multi-file archive. The entry is found by the central directory,
+     * so only the directory and the entry itself are read.
+     * The output file is created only if nothing exists by its name, even a dangling link,
+     * so neither another file nor the archive itself is overwritten
+     *
+     * @param fileIn  The archive
+     * @param name    Name of the entry
+     * @param fileOut Output file for the entry
+     * @return        0 if operation is successful
+     */
+    public int extractEntry(String fileIn, String name, String fileOut) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.TOTAL);
+        this.fileIn = fileIn;
+        this.fileOut = fileOut;
+        Path target = Paths.get(fileOut);
+        try (RandomAccessFile archive = openMultiFileArchive(fileIn)) {
+            ArchiveDirectory.Entry entry = ArchiveDirectory.read(archive).getEntry(name);
+            if (entry == null) {
+                throw new IOException("The archive has no entry " + name);
+            }
+            try {
+                extractEntry(archive, entry, target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                throw new IOException(Files.exists(target) && Files.isSameFile(Paths.get(fileIn), target) ?
+                        "The entry can't be extracted over the archive " + fileIn :
+                        "The file " + fileOut + " already exists");
+            }
+            span.end(entry.originalSize);
+            metrics.addSizes("extract", entry.originalSize, entry.compressedSize, false);
+        }
+        return 0;
+    }
+
+    /** Extracts all the entries of the multi-file archive to the output directory */
+    private void extractAll() throws IOException {
+        Path directory = Paths.get(fileOut).toAbsolutePath().normalize();
+        try (RandomAccessFile archive = openMultiFileArchive(fileIn)) {
+            ArchiveDirectory archiveDirectory = ArchiveDirectory.read(archive);
+            for (ArchiveDirectory.Entry entry : archiveDirectory.getEntries()) {
+                Path file = directory.resolve(entry.name).normalize();
+                /* Entry names must not lead out of the output directory, not even through links in it */
+                if (!file.startsWith(directory) || file.equals(directory)) {
+                    throw new IOException("Wrong entry name " + entry.name);
+                }
+                Files.createDirectories(file.getParent());
+                if (!file.getParent().toRealPath().startsWith(directory.toRealPath())) {
+                    throw new IOException("Wrong entry name " + entry.name);
+                }
+                extractEntry(archive, entry, file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING, LinkOption.NOFOLLOW_LINKS);
+            }
+            originalFileSize = archiveDirectory.getOriginalSize();
+        }
+    }
+
+    /**
+     * Decodes the entry, which is a whole archive inside the multi-file one, to the file
+     *
+     * @param archive The multi-file archive
+     * @param entry   The entry to decode
+     * @param file    Output file for the entry
+     * @param options Options of opening the file for writing
+     */
+    private void extractEntry(RandomAccessFile archive, ArchiveDirectory.Entry entry, Path file,
+                              OpenOption... options) throws IOException {
+        try (ChannelOutputStream out = new ChannelOutputStream(FileChannel.open(file, options))) {
+            out.setMetrics(metrics);
+            extractEntry(archive, entry, out);
+        }
+    }
+
+    /**
+     * Decodes the entry, which is a whole archive inside the multi-file one, to the stream
+     *
+     * @param archive The multi-file archive
+     * @param entry   The entry to decode
+     * @param out     Stream for the entry, it is not closed
+     */
+    private void extractEntry(RandomAccessFile archive, ArchiveDirectory.Entry entry, OutputStream out)
+            throws IOException {
+        decodeStream(Channels.newInputStream(archive.getChannel().position(entry.offset)), out);
+        if (originalFileSize != entry.originalSize) {
+            throw new IOException("Corrupted archive directory");
+        }
+    }
+
+    /** Opens the archive and checks that it is a multi-file one */
+    private RandomAccessFile openMultiFileArchive(String fileIn) throws IOException {
+        RandomAccessFile archive = new RandomAccessFile(fileIn, "r");
+        if (archive.length() < FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES ||
+                archive.readInt() != FORMAT_MAGIC || archive.readUnsignedByte() != MULTI_FILE_FORMAT_VERSION) {
+            archive.close();
+            throw new IOException("The archive is not a multi-file one");
+        }
+        return archive;
+    }
+
+    /**
+     * Reads the format magic and version from the beginning of the archive.
+     * Legacy archives don't have the magic, so the stream is reset to its beginning for them.
+     *
+     * @return The format version of the archive
+     */
+    private int readFormatVersion(DataInputStream dis) throws IOException {
+        checksummed = false;
+        dis.mark(FORMAT_MAGIC_IN_BYTES);
+        if (dis.readInt() != FORMAT_MAGIC) {
+            dis.reset();
+            return LEGACY_FORMAT_VERSION;
+        }
+        int version = dis.readUnsignedByte();
+        if (version != CANONICAL_FORMAT_VERSION && version != MULTI_FILE_FORMAT_VERSION &&
+                version != DICTIONARY_FORMAT_VERSION && version != CONTEXT_FORMAT_VERSION &&
+                !BlockIndex.isBlockFormat(version)) {
+            throw new IOException("Unsupported archive version " + version);
+        }
+        checksummed = BlockIndex.isBlockFormat(version) && version != BLOCK_FORMAT_VERSION;
+        return version;
+    }
+
+    /**
+     * Maps the archive if it fits one mapped region
+     *
+     * @return The mapped archive or null if it is not mapped
+     */
+    private ByteBuffer mapArchive() throws IOException {
+        if (Tools.getFileSize(fileIn) <= MAX_MAPPED_REGION_SIZE) {
+            try (FileRegions regions = new FileRegions(fileIn, MAX_MAPPED_REGION_SIZE)) {
+                if (regions.isMapped()) {
+                    return regions.nextRegion();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Opens the archive which is not mapped after its header.
+     * A large archive is read by the reader thread while it is decoded
+     *
+     * @param headerSize Size of the header
+     */
+    private InputStream openArchiveData(int headerSize) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(fileIn), StandardOpenOption.READ);
+        channel.position(headerSize);
+        if (Tools.isPipelined(channel.size() - headerSize)) {
+            return new PipelinedInputStream(channel, PIPELINE_BUFFER_SIZE, PIPELINE_BUFFERS, metrics);
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    /**
+     * Restores data for a current file from its header after the format magic and version.
+     * The legacy header has the Huffman tree, which is unpacked here.
+     * The dictionary header has the id of the dictionary, which is taken from the loaded ones
+     *
+     * @return The header size
+     */
+    private int restoreFileHeaderData(DataInputStream dis, int version) throws IOException {
+        dictionary = null;
+        contextModel = null;
         /* Read eight bytes as a long number from the file header */
         originalFileSize = dis.readLong();
+        if (originalFileSize < 0) {
+            throw new IOException("Corrupted archive header");
+        }
+        if (version == CANONICAL_FORMAT_VERSION || version == CONTEXT_FORMAT_VERSION) {
+            return FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + FILE_SIZE_IN_BYTES;
+        }
+        if (version == DICTIONARY_FORMAT_VERSION) {
+            int id = dis.readInt();
+            dictionary = Dictionary.get(id);
+            if (dictionary == null) {
+                throw new IOException("The archive needs the dictionary with id " + String.format("%08x", id) +
+                        ", which is not loaded");
+            }
+            return FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + FILE_SIZE_IN_BYTES + DICTIONARY_ID_IN_BYTES;
+        }
         /* The length of the original tree shape in bites (2 bytes) */
-        int treeSizeInBites = dis.readShort();
+        int treeSizeInBites = dis.readUnsignedShort();
         /* The length of the packed tree shape in bytes (2 bytes) */
-        int treeSizeInBytes = dis.readShort();
+        int treeSizeInBytes = dis.readUnsignedShort();
         /* The packed tree leaves amount (2 bytes) */
-        int treeLeavesAmount = dis.readShort();
+        int treeLeavesAmount = dis.readUnsignedShort();
+        /* The tree shape has a bit for every node and leaf, a full binary tree has one node less than leaves */
+        if (treeLeavesAmount < ALLOWED_DIFFERENT_BYTES_IN_FILE || treeLeavesAmount > ALPHABET_SIZE ||
+                treeSizeInBites != 2 * treeLeavesAmount - 1 ||
+                treeSizeInBytes != (treeSizeInBites + Byte.SIZE - 1) / Byte.SIZE) {
+            throw new IOException("Corrupted archive header");
+        }
 
         byte[] buffer = new byte[treeSizeInBytes + treeLeavesAmount];
-        int bytesInBuffer;
-        if ((bytesInBuffer = dis.read(buffer)) != -1) {
-            /* Get the tree shape */
-            getTreeShapeAsBooleanDequeue(Arrays.copyOfRange(
-                    buffer, 0, treeSizeInBytes), treeSizeInBites
-            );
-            /* Get the tree leaves */
-            byte[] leaves = Arrays.copyOfRange(buffer, treeSizeInBytes, bytesInBuffer);
-            for (Byte leaf: leaves) {
-                treeLeaves.add(leaf);
-            }
-        }
-        int fileHeaderSize = FILE_SIZE_IN_BYTES +
+        dis.readFully(buffer);
+        /* The tree shape is followed by the tree leaves */
+        byte[] leaves = Arrays.copyOfRange(buffer, treeSizeInBytes, buffer.length);
+        ProcessMetrics.Span span = metrics.begin(Phase.TREE);
+        huffmanTree.unpack(buffer, treeSizeInBites, leaves);
+        span.end(0);
+        span = metrics.begin(Phase.CODES);
+        huffmanTree.getCodes(codes, codeLengths);
+        span.end(0);
+        return FILE_SIZE_IN_BYTES +
                 TREE_SHAPE_IN_BITES +
                 TREE_SIZE_IN_BYTES +
-                TREE_LEAVES_NUMBER_IN_BYTES;
-        /* Define the current file pointer after its technical data to read */
-        offset = fileHeaderSize + treeSizeInBytes + treeLeavesAmount;
-    }
-
-    /** Gets unpacked Huffman tree from the packed file */
-    private HuffmanTreeNode unpackHuffmanTree() {
-        HuffmanTreeNode root = null;
-        boolean next = false;
-        /* Check each element if it is a node of the tree */
-        if (treeShape.peek() != null) {
-            next = treeShape.poll();
-        }
-        if (next) {
-            /* if the current element is a node */
-            root = new HuffmanTreeNode();
-            root.leftChild = unpackHuffmanTree();
-            root.rightChild = unpackHuffmanTree();
-        } else if (treeLeaves.peek() != null) {
-            /* if the current element is a Leaf */
-            root = new HuffmanTreeNode(treeLeaves.poll());
-        }
-        /* set the current node as a root for the next pass */
-        return root;
-    }
-
-    /** Reads, archives and writes a file buffer by buffer using a stream */
-    private void processFile() throws IOException {
-        BufferedInputStream fis;
-        BufferedOutputStream fos;
-        fis = new BufferedInputStream(new FileInputStream(fileIn));
-        fos = new BufferedOutputStream(new FileOutputStream(fileOut));
-        byte[] buffer = new byte[BUFFER_SIZE];
-        int bytesInBuffer;
-        if (fis.skip(offset) != offset) {
-            throw new IOException("Header handling error");
-        }
-        /* Read the data to process by specified buffers */
-        while ((bytesInBuffer = fis.read(buffer)) != -1) {
-            byte[] bytesToProcess = Arrays.copyOfRange(buffer, 0, bytesInBuffer);
-            byte[] processedData = getProcessedData(bytesToProcess);
-            /* Write the processed data by specified buffers */
-            fos.write(processedData, 0, bufferBytesCounter);
-        }
-        if (binaryStack.length() != 0) {
-            //System.out.println("test append" + binaryStack);
-            byte[] appendData = getProcessedData(null);
-            fos.write(appendData, 0, bufferBytesCounter);
-        }
-        fos.flush();
-        fis.close();
-    }
-
-    /** Implements the unArchiving process */
-    private byte[] getProcessedData(byte[] bytesToProcess) {
-        bufferBytesCounter = 0;
-        /* Counts every bit in a pass from the root to a leaf */
-        int bitsCounter = 0;
-        char temp;
-
-        /* Build binary string with input bytes if the input array exists */
-        if (bytesToProcess != null) {
-            for (byte aByte : bytesToProcess) {
-                binaryStack.append(getFullBinaryFormOfByte(aByte));
-            }
-        }
-        /* Form the processed data in the output array */
-        byte[] processedData = new byte[binaryStack.length()];
-        HuffmanTreeNode currentNode = huffmanTree;
-        /* Going through the tree to find leaves */
-        while (
-                binaryStack.length() > 0 &&
-                bitsCounter < binaryStack.length() &&
-                globalBytesCounter < originalFileSize
-        ) {
-            temp = binaryStack.charAt(bitsCounter);
-            bitsCounter++;
-            /* Check each bit from the binary stack where to go
-            * '0' - to the left, '1' - to the right */
-            currentNode = temp == '0' ? currentNode.leftChild : currentNode.rightChild;
+                TREE_LEAVES_NUMBER_IN_BYTES +
+                buffer.length;
+    }
 
-            if (currentNode.isLeaf()) {
-                processedData[bufferBytesCounter++] = currentNode.byteValue;
-                globalBytesCounter++;
-                /* Delete processed bits from the binary stack*/
-                binaryStack.delete(0, bitsCounter);
-                bitsCounter = 0;
-                /* Set the root of the Huffman tree as the start for the next pass */
-                currentNode = huffmanTree;
+    /** Restores the tables which follow the header of the canonical and the context formats */
+    private void restoreTables(BitReader bitReader, int version) throws IOException {
+        if (version == CANONICAL_FORMAT_VERSION) {
+            restoreCodeLengths(bitReader);
+        } else if (version == CONTEXT_FORMAT_VERSION) {
+            ProcessMetrics.Span span = metrics.begin(Phase.CODES);
+            contextModel = ContextModel.read(bitReader);
+            bitReader.alignToByte();
+            span.end(0);
+        }
+    }
+
+    /** Restores canonical codes from the code lengths table, no tree is needed */
+    private void restoreCodeLengths(BitReader bitReader) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.CODES);
+        CanonicalCodes.readLengths(bitReader, codeLengths);
+        CanonicalCodes.assignCodes(codeLengths, codes);
+        bitReader.alignToByte();
+        span.end(0);
+    }
+
+    /**
+     * Reads, unArchives and writes a file buffer by buffer using a stream
+     *
+     * @param bitReader Reader of the archive positioned at the coded data
+     * @param out       Stream for the unArchived data
+     */
+    private void processFile(BitReader bitReader, OutputStream out) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(Phase.DECODE);
+        /* The decoder of the dictionary is built once and shared, the context model has its own decoders */
+        HuffmanDecoder decoder = dictionary != null ? dictionary.getDecoder() :
+                contextModel != null ? null : new HuffmanDecoder(codes, codeLengths, DECODING_TABLE_BITS);
+        byte[] processedData = new byte[DECODING_BUFFER_SIZE];
+        long bytesLeft = originalFileSize;
+        /* The context of the first byte is zero */
+        int previous = 0;
+        /* Decode the data to the output by specified buffers until the original size is reached */
+        while (bytesLeft > 0) {
+            int bytesInBuffer = (int) Math.min(bytesLeft, processedData.length);
+            if (contextModel != null) {
+                previous = contextModel.decode(bitReader, processedData, 0, bytesInBuffer, previous);
+            } else {
+                decoder.decode(bitReader, processedData, 0, bytesInBuffer);
             }
+            out.write(processedData, 0, bytesInBuffer);
+            bytesLeft -= bytesInBuffer;
         }
-        return processedData;
+        span.end(originalFileSize);
     }
 
-    /** Returns binary(in 8 bit) representation of the passed byte */
-    private String getFullBinaryFormOfByte(byte aByte) {
-        return Integer.toBinaryString((aByte & 0xff) + 0x100).substring(1);
+    /**
+     * Reads the blocks index if the archive has the block format.
+     * The archive is positioned at the block size in its header then
+     *
+     * @param archive The archive
+     * @return        The blocks index or null if the archive has another format
+     */
+    private BlockIndex openBlockArchive(RandomAccessFile archive) throws IOException {
+        if (archive.length() < FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES ||
+                archive.readInt() != FORMAT_MAGIC) {
+            return null;
+        }
+        int version = archive.readUnsignedByte();
+        if (!BlockIndex.isBlockFormat(version)) {
+            return null;
+        }
+        BlockIndex index = BlockIndex.read(archive, version);
+        checksummed = index.isChecksummed();
+        archive.seek(FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES);
+        return index;
+    }
+
+    /** Reads the size of blocks from the header of the block format */
+    private static int readBlockSize(DataInput input) throws IOException {
+        int blockSize = input.readInt();
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Corrupted archive header");
+        }
+        return blockSize;
+    }
+
+    /** Reads, unArchives and writes a file of the block format */
+    private void processFileByBlocks() throws IOException {
+        try (
+                RandomAccessFile archive = new RandomAccessFile(fileIn, "r");
+                RandomAccessFile output = new RandomAccessFile(fileOut, "rw")
+        ) {
+            BlockIndex index = openBlockArchive(archive);
+            output.setLength(index.getOriginalFileSize());
+            decodeBlocks(archive, index, output.getChannel());
+        }
     }
 
     /**
-     * Gets the Huffman tree shape from passed bytes as a boolean queue
+     * Decodes blocks of the archive of the block format.
+     * Blocks are found by the index and decoded in parallel, every block is written
+     * to its own place of the output file which is sized beforehand.
+     * Blocks of the checked block format are checked by their checksums, which make up the checksum
+     * of the whole file, so the whole file is checked without decoding it in order.
+     * At most BLOCKS_IN_FLIGHT_PER_THREAD blocks of the block size per thread are decoded at once.
      *
-     * @param compressedTreeShape Bytes array representation of the Huffman tree
-     * @param treeSizeInBites     Bits amount which must contain the unpacked Huffman tree
+     * @param archive The archive positioned at the block size in its header
+     * @param index   Index of blocks of the archive
+     * @param out     Channel of the output file or null to decode blocks in memory only
      */
-    private void getTreeShapeAsBooleanDequeue(byte[] compressedTreeShape, int treeSizeInBites) {
-        /* Build binary string representation of the Huffman tree with input bytes */
-        for (byte aByte : compressedTreeShape) {
-            String binaryWord = getFullBinaryFormOfByte(aByte);
-            for (int i = 0; i < binaryWord.length(); i++) {
-                char temp = binaryWord.charAt(i);
-                treeShape.add(temp == '1');
+    private void decodeBlocks(RandomAccessFile archive, BlockIndex index, FileChannel out) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        try {
+            int blockSize = readBlockSize(archive);
+            originalFileSize = index.getOriginalFileSize();
+            FileChannel in = archive.getChannel();
+
+            BlockingQueue<DecodingSlot> freeSlots = new ArrayBlockingQueue<>(threads * BLOCKS_IN_FLIGHT_PER_THREAD);
+            for (int i = 0; i < threads * BLOCKS_IN_FLIGHT_PER_THREAD; i++) {
+                freeSlots.add(new DecodingSlot(blockSize, metrics));
+            }
+            for (int block = 0; block < index.getBlocksAmount() && failure.get() == null; block++) {
+                BlockDecoder.checkBlockSizes(index.getRawSize(block), index.getCompressedSize(block), blockSize);
+                /* Wait for a free slot, so only a limited amount of blocks is in work */
+                DecodingSlot slot = freeSlots.take();
+                int blockNumber = block;
+                executor.execute(() -> {
+                    try {
+                        slot.decode(in, index, blockNumber);
+                        if (out != null) {
+                            ProcessMetrics.Span span = metrics.begin(Phase.WRITE);
+                            writeFully(out, ByteBuffer.wrap(slot.processedData, 0, index.getRawSize(blockNumber)),
+                                    index.getRawOffset(blockNumber));
+                            span.end(index.getRawSize(blockNumber));
+                        }
+                    } catch (IOException exception) {
+                        failure.compareAndSet(null, exception);
+                    } catch (Throwable exception) {
+                        /* Any failure of a block fails the whole file, so no block is silently left out */
+                        failure.compareAndSet(null, new IOException(exception));
+                    } finally {
+                        freeSlots.add(slot);
+                    }
+                });
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                throw new IOException("Decoding of blocks was not finished");
             }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("UnArchiving was interrupted");
+        } finally {
+            executor.shutdownNow();
         }
-        /* Check the length of the gotten tree according to the original one */
-        int res = treeShape.size() - treeSizeInBites;
-        if (treeShape.size() - treeSizeInBites > 0) {
-            for (int i = 0; i < res; i++) {
-                treeShape.pollLast();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /** Buffers and the decoder of one block in work */
+    private static class DecodingSlot {
+        /** Encoded block with its header */
+        private byte[] encodedData;
+
+        /** Decoded block */
+        private final byte[] processedData;
+
+        /** Decoder of the block */
+        private final BlockDecoder decoder;
+
+        /** Metrics where reading and checking of the block are measured */
+        private final ProcessMetrics metrics;
+
+        private DecodingSlot(int blockSize, ProcessMetrics metrics) {
+            encodedData = new byte[blockSize];
+            processedData = new byte[blockSize];
+            this.metrics = metrics;
+            this.decoder = new BlockDecoder(metrics);
+        }
+
+        /**
+         * Reads the block found by the index and decodes it.
+         * A block of the checked block format is checked by its checksum
+         *
+         * @param in    Channel of the archive
+         * @param index Index of blocks of the archive
+         * @param block Number of the block
+         */
+        private void decode(FileChannel in, BlockIndex index, int block) throws IOException {
+            int encodedSize = index.getCompressedSize(block);
+            int rawSize = index.getRawSize(block);
+            int headerSize = index.getBlockHeaderSize();
+            int size = headerSize + encodedSize;
+            if (size > encodedData.length) {
+                encodedData = new byte[size];
             }
+            ByteBuffer buffer = ByteBuffer.wrap(encodedData, 0, size);
+            ProcessMetrics.Span span = metrics.begin(Phase.READ);
+            readFully(in, buffer, index.getOffset(block));
+            span.end(size);
+            /* The block header must agree with the index */
+            buffer.flip();
+            if (buffer.getInt() != rawSize || buffer.getInt() != encodedSize ||
+                    (index.isChecksummed() && buffer.getInt() != index.getChecksum(block))) {
+                throw new IOException("Corrupted blocks index");
+            }
+            decoder.setTagged(index.isTagged());
+            decoder.decode(encodedData, headerSize, encodedSize, processedData, 0, rawSize);
+            if (index.isChecksummed()) {
+                span = metrics.begin(Phase.CHECKSUM);
+                int checksum = Checksums.checksum(processedData, 0, rawSize);
+                span.end(rawSize);
+                if (checksum != index.getChecksum(block)) {
+                    throw new IOException("Checksum mismatch in block " + block);
+                }
+            }
+        }
+    }
+
+    /** Stream which counts the bytes read from the underlying stream */
+    private static class CountingInputStream extends FilterInputStream {
+        /** Amount of read bytes */
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytesRead = in.read(b, off, len);
+            if (bytesRead > 0) {
+                count += bytesRead;
+            }
+            return bytesRead;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
         }
     }
 
+    /** Reads the buffer from the channel starting at the specified position */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int bytesRead = channel.read(buffer, position);
+            if (bytesRead == -1) {
+                throw new IOException("Unexpected end of the archived data");
+            }
+            position += bytesRead;
+        }
+    }
+
+    /** Writes the buffer to the channel starting at the specified position */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Prints results of the archive test to the console
+     *
+     * @param time Duration of the test in milliseconds
+     */
+    public void printTestResults(long time) throws IOException {
+        System.out.println("Compressed file name..: " + fileIn);
+        System.out.println(
+                "Compressed file size..: " + (String.format("%,dB",
+                        Tools.getFileSize(fileIn)))
+        );
+        System.out.println(
+                "UnCompressed file size: " + (String.format("%,dB",
+                        originalFileSize))
+        );
+        System.out.println("Checksums.............: " + (checksummed ?
+                "CRC32C of every block and of the whole file are correct" :
+                "the archive has no checksums, only its structure is checked"));
+        System.out.println(
+                "Throughput............: " + (String.format("%,.1fMB/s",
+                        originalFileSize / 1e3 / Math.max(time, 1)))
+        );
+    }
+
     /** Prints results of the process to the console */
     public void printProcessResults() throws IOException {
         System.out.println("Compressed file name..: " + fileIn);
@@ -214,7 +790,7 @@ public class UnArchiver {
         );
         System.out.println(
                 "UnCompressed file size: " + (String.format("%,dB",
-                        Tools.getFileSize(fileOut)))
+                        originalFileSize))
         );
         System.out.println("UnCompressed file name: " + fileOut);
     }
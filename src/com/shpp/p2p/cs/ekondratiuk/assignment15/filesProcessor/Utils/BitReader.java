@@ -0,0 +1,165 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads bits from a stream or from a buffer which is already in memory (an array or a mapped file),
+ * the most significant bit first.
+ * Keeps up to 64 bits in an accumulator which is refilled by whole words
+ * from a fixed-size input buffer, so the memory use doesn't depend on the stream size.
+ * After the end of the stream the accumulator is padded with zeros,
+ * reading beyond the real data is reported by {@link #checkNotOverrun()}.
+ */
+public class BitReader {
+    /** Maximal amount of bits which can be peeked by one operation */
+    public static final int MAX_PEEK_BITS = 56;
+
+    /** Stream to refill the input buffer from */
+    private final InputStream in;
+
+    /** Input buffer. Positions in it are absolute */
+    private final ByteBuffer buffer;
+
+    /** Current position in the input buffer */
+    private int position;
+
+    /** Amount of valid bytes in the input buffer */
+    private int limit;
+
+    /** Pending bits. The next bit to read is the highest one */
+    private long accumulator;
+
+    /** Amount of valid bits in the accumulator */
+    private int bitsInAccumulator;
+
+    /** True if the stream has no more data */
+    private boolean endOfStream;
+
+    /** Amount of zero bytes added to the accumulator after the end of the stream */
+    private int paddingBytes;
+
+    public BitReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = ByteBuffer.allocate(Math.max(bufferSize, Long.BYTES));
+    }
+
+    /** Reader of the data which is already in memory. The array is not copied */
+    public BitReader(byte[] data, int offset, int length) {
+        this(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /** Reader of the remaining data of the buffer. The data is not copied, the buffer position is not changed */
+    public BitReader(ByteBuffer data) {
+        this.in = null;
+        /* The duplicate has the big-endian order whatever the order of the buffer is */
+        this.buffer = data.duplicate();
+        this.position = data.position();
+        this.limit = data.limit();
+        this.endOfStream = true;
+    }
+
+    /**
+     * Returns the next bits without consuming them
+     *
+     * @param count Amount of bits to peek (1..56)
+     * @return      The bits as the lowest bits of the number
+     */
+    public long peekBits(int count) throws IOException {
+        if (bitsInAccumulator < count) {
+            refill();
+        }
+        return accumulator >>> (Long.SIZE - count);
+    }
+
+    /** Consumes the specified amount of already peeked bits */
+    public void skipBits(int count) {
+        accumulator <<= count;
+        bitsInAccumulator -= count;
+    }
+
+    /** Reads one bit */
+    public int readBit() throws IOException {
+        int bit = (int) peekBits(1);
+        skipBits(1);
+        return bit;
+    }
+
+    /**
+     * Reads the specified amount of bits
+     *
+     * @param count Amount of bits to read (1..56)
+     */
+    public long readBits(int count) throws IOException {
+        long bits = peekBits(count);
+        skipBits(count);
+        return bits;
+    }
+
+    /** Skips the rest bits of the current byte so the next read starts from a new byte */
+    public void alignToByte() {
+        skipBits(bitsInAccumulator % Byte.SIZE);
+    }
+
+    /**
+     * Gets the position in the buffer of the byte after the consumed bits.
+     * Is valid for data which is in memory
+     */
+    public int getBufferPosition() {
+        return position - (bitsInAccumulator / Byte.SIZE - paddingBytes);
+    }
+
+    /** Throws an exception if there were consumed more bits than the stream has */
+    public void checkNotOverrun() throws IOException {
+        if (paddingBytes * Byte.SIZE > bitsInAccumulator) {
+            throw new IOException("Unexpected end of the archived data");
+        }
+    }
+
+    /** Fills the accumulator with at least 57 bits */
+    private void refill() throws IOException {
+        if (limit - position >= Long.BYTES) {
+            /* Fast path: take as many whole bytes of the next word as fit the accumulator */
+            long word = buffer.getLong(position);
+            int bytes = (Long.SIZE - bitsInAccumulator) >>> 3;
+            int bits = bytes * Byte.SIZE;
+            long loaded = bits == Long.SIZE ? word : word >>> (Long.SIZE - bits);
+            accumulator |= loaded << (Long.SIZE - bitsInAccumulator - bits);
+            bitsInAccumulator += bits;
+            position += bytes;
+            return;
+        }
+        while (bitsInAccumulator <= MAX_PEEK_BITS) {
+            if (position == limit && !fillBuffer()) {
+                /* Pad the data with zeros after the end of the stream */
+                checkNotOverrun();
+                paddingBytes++;
+                bitsInAccumulator += Byte.SIZE;
+                continue;
+            }
+            long loaded = buffer.get(position++) & 0xff;
+            accumulator |= loaded << (Long.SIZE - Byte.SIZE - bitsInAccumulator);
+            bitsInAccumulator += Byte.SIZE;
+        }
+    }
+
+    /**
+     * Reads the next part of the stream to the input buffer
+     *
+     * @return false if the stream has no more data
+     */
+    private boolean fillBuffer() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        int bytesInBuffer = in.read(buffer.array(), 0, buffer.capacity());
+        if (bytesInBuffer == -1) {
+            endOfStream = true;
+            return false;
+        }
+        position = 0;
+        limit = bytesInBuffer;
+        return true;
+    }
+}
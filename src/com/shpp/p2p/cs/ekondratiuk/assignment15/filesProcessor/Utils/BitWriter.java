@@ -0,0 +1,119 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes variable-length bit codes to a stream, the most significant bit first.
+ * Bits are collected in a 64-bit accumulator and moved to the output buffer
+ * as whole bytes, the buffer is drained to the stream only when it is full,
+ * so writing a code doesn't allocate anything.
+ * The writer can be reset to another stream, so its buffer is reused from file to file.
+ */
+public class BitWriter {
+    /** Maximal code length which can be put to the accumulator by one operation */
+    private static final int MAX_BITS_PER_WRITE = 56;
+
+    /** Bits amount in the accumulator */
+    private static final int ACCUMULATOR_SIZE = 64;
+
+    /** Stream to drain the output buffer to */
+    private OutputStream out;
+
+    /** Output buffer with whole bytes */
+    private final byte[] buffer;
+
+    /** Current position in the output buffer */
+    private int position;
+
+    /** Pending bits. The last written bit is the lowest one */
+    private long accumulator;
+
+    /** Amount of pending bits in the accumulator */
+    private int bitsInAccumulator;
+
+    /** Total amount of bits written to this writer */
+    private long bitsWritten;
+
+    public BitWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, Long.BYTES)];
+    }
+
+    /** Drops pending bits and bytes, the next bits are written to the stream from its beginning */
+    public void reset(OutputStream out) {
+        this.out = out;
+        position = 0;
+        accumulator = 0;
+        bitsInAccumulator = 0;
+        bitsWritten = 0;
+    }
+
+    /**
+     * Writes the lowest bits of the code
+     *
+     * @param code   Code bits. Bits above the length must be zeros
+     * @param length Amount of bits to write (0..64)
+     */
+    public void writeBits(long code, int length) throws IOException {
+        if (length > MAX_BITS_PER_WRITE) {
+            /* Long codes are split into two parts to fit the accumulator */
+            writeBits(code >>> Integer.SIZE, length - Integer.SIZE);
+            writeBits(code & 0xffffffffL, Integer.SIZE);
+            return;
+        }
+        if (bitsInAccumulator + length > ACCUMULATOR_SIZE) {
+            drainAccumulator();
+        }
+        accumulator = (accumulator << length) | code;
+        bitsInAccumulator += length;
+        bitsWritten += length;
+    }
+
+    /** Writes one bit: true as "1", false as "0" */
+    public void writeBit(boolean bit) throws IOException {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /** Total amount of bits written to this writer */
+    public long getBitsWritten() {
+        return bitsWritten;
+    }
+
+    /** Pads the last byte with zeros so the next code starts from a new byte */
+    public void alignToByte() throws IOException {
+        int left = bitsInAccumulator % Byte.SIZE;
+        if (left != 0) {
+            writeBits(0, Byte.SIZE - left);
+        }
+    }
+
+    /**
+     * Pads the last byte with zeros and drains all the pending bytes to the stream.
+     * The stream itself is not flushed or closed.
+     */
+    public void finish() throws IOException {
+        alignToByte();
+        drainAccumulator();
+        drainBuffer();
+    }
+
+    /** Moves whole bytes from the accumulator to the output buffer */
+    private void drainAccumulator() throws IOException {
+        if (position + Long.BYTES > buffer.length) {
+            drainBuffer();
+        }
+        while (bitsInAccumulator >= Byte.SIZE) {
+            bitsInAccumulator -= Byte.SIZE;
+            buffer[position++] = (byte) (accumulator >>> bitsInAccumulator);
+        }
+    }
+
+    /** Writes the output buffer to the stream */
+    private void drainBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream which puts the written bytes to a buffer.
+ * The buffer can be changed, so one stream (and a writer over it) is reused for many buffers.
+ * Writing more than the buffer has room for throws {@link java.nio.BufferOverflowException}.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+    /** Buffer to put the written bytes to */
+    private ByteBuffer buffer;
+
+    /** Sets the buffer to put the next written bytes to */
+    public void setBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) {
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+    }
+}
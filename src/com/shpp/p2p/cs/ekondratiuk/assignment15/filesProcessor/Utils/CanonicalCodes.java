@@ -0,0 +1,307 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+/**
+ * Canonical Huffman codes.
+ * Codes are fully defined by their lengths: shorter codes go first,
+ * codes of the same length are consecutive numbers in the order of byte values.
+ * So the archive stores only the code length of every byte.
+ * Code lengths are limited: if the Huffman tree is deeper than the limit,
+ * lengths are built by the package-merge algorithm, which gives the best codes within the limit.
+ */
+public class CanonicalCodes {
+    /**
+     * Lengths table mode: (gap, length) pairs for the bytes which have codes,
+     * where the gap is the distance from the previous such byte written by the Elias gamma code
+     */
+    private static final int SPARSE_MODE = 0;
+
+    /** Lengths table mode: 256 bits mask of the bytes which have codes, then their lengths */
+    private static final int MASK_MODE = 1;
+
+    /** Bits amount to represent a bit width of lengths in the table */
+    private static final int LENGTH_WIDTH_IN_BITS = 3;
+
+    /** Huffman tree of every thread, it is reused by all the tables the thread builds */
+    private static final ThreadLocal<HuffmanTree> TREES = ThreadLocal.withInitial(HuffmanTree::new);
+
+    /**
+     * Assigns canonical codes to the code lengths
+     *
+     * @param lengths Code lengths indexed by the unsigned byte value, 0 if a byte has no code
+     * @param codes   Array to put the codes to
+     */
+    public static void assignCodes(int[] lengths, long[] codes) {
+        int[] lengthsCounter = new int[MAX_CODE_LENGTH + 1];
+        for (int length : lengths) {
+            lengthsCounter[length]++;
+        }
+        lengthsCounter[0] = 0;
+        /* The first code of every length */
+        long[] nextCode = new long[MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthsCounter[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            codes[symbol] = lengths[symbol] == 0 ? 0 : nextCode[lengths[symbol]]++;
+        }
+    }
+
+    /**
+     * Builds canonical codes for the frequencies with the default limit of code lengths.
+     * Only code lengths are taken from the Huffman tree, the codes themselves are canonical
+     *
+     * @param frequencies Frequencies of bytes indexed by the unsigned byte value
+     * @param codes       Array to put the codes to
+     * @param lengths     Array to put the code lengths to, 0 if a byte has no code
+     * @return            Amount of coded bits more than the Huffman codes would give because of the limit
+     */
+    public static long buildCodes(long[] frequencies, long[] codes, int[] lengths) throws IOException {
+        return buildCodes(frequencies, codes, lengths, DEFAULT_CODE_LENGTH_LIMIT, ProcessMetrics.DISABLED);
+    }
+
+    /**
+     * Builds canonical codes for the frequencies, building of the tree and of the codes are measured as phases
+     *
+     * @param frequencies Frequencies of bytes indexed by the unsigned byte value
+     * @param codes       Array to put the codes to
+     * @param lengths     Array to put the code lengths to, 0 if a byte has no code
+     * @param maxLength   Limit of code lengths, from MIN_CODE_LENGTH_LIMIT to MAX_CODE_LENGTH
+     * @param metrics     Metrics of the process
+     * @return            Amount of coded bits more than the Huffman codes would give because of the limit
+     */
+    public static long buildCodes(long[] frequencies, long[] codes, int[] lengths, int maxLength,
+                                  ProcessMetrics metrics) throws IOException {
+        ProcessMetrics.Span span = metrics.begin(ProcessMetrics.Phase.TREE);
+        HuffmanTree huffmanTree = TREES.get();
+        huffmanTree.build(frequencies);
+        span.end(0);
+        span = metrics.begin(ProcessMetrics.Phase.CODES);
+        huffmanTree.getCodeLengths(lengths);
+        long extraBits = 0;
+        if (getMaxLength(lengths) > maxLength) {
+            long huffmanBits = getCodedBits(frequencies, lengths);
+            limitLengths(frequencies, maxLength, lengths);
+            extraBits = getCodedBits(frequencies, lengths) - huffmanBits;
+        }
+        checkMaxLength(lengths);
+        assignCodes(lengths, codes);
+        span.end(0);
+        return extraBits;
+    }
+
+    /**
+     * Builds the best code lengths within the limit by the package-merge algorithm.
+     * Bytes are coins with their frequencies as values, every level of the limit gets all the coins
+     * merged with the pairs (packages) of the cheapest items of the previous level.
+     * The code length of a byte is the amount of its coins among the 2n - 2 cheapest items of the last level
+     *
+     * @param frequencies Frequencies of bytes indexed by the unsigned byte value, at least two bytes are present
+     * @param maxLength   Limit of code lengths, 2 ^ maxLength is not less than the amount of present bytes
+     * @param lengths     Array to put the code lengths to
+     */
+    public static void limitLengths(long[] frequencies, int maxLength, int[] lengths) {
+        /* Present bytes from the rarest one */
+        long[] keys = new long[frequencies.length];
+        int[] sorted = new int[HuffmanTree.sortSymbols(frequencies, keys)];
+        long[] leaves = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = (int) (keys[i] & 0xff);
+            leaves[i] = frequencies[sorted[i]];
+        }
+        /* Items of every level: true for a package, false for a coin. Level 0 has coins only */
+        boolean[][] isPackage = new boolean[maxLength][];
+        isPackage[0] = new boolean[leaves.length];
+        long[] items = leaves;
+        for (int level = 1; level < maxLength; level++) {
+            int packagesAmount = items.length / 2;
+            long[] merged = new long[leaves.length + packagesAmount];
+            isPackage[level] = new boolean[merged.length];
+            int leaf = 0;
+            int pack = 0;
+            for (int i = 0; i < merged.length; i++) {
+                long packageValue = pack < packagesAmount ? items[2 * pack] + items[2 * pack + 1] : Long.MAX_VALUE;
+                if (leaf < leaves.length && leaves[leaf] <= packageValue) {
+                    merged[i] = leaves[leaf++];
+                } else {
+                    merged[i] = packageValue;
+                    isPackage[level][i] = true;
+                    pack++;
+                }
+            }
+            items = merged;
+        }
+        Arrays.fill(lengths, 0);
+        /* Packages among the chosen items of a level choose the cheapest items of the previous level */
+        int chosen = 2 * sorted.length - 2;
+        for (int level = maxLength - 1; level >= 0; level--) {
+            int packagesAmount = 0;
+            for (int i = 0; i < chosen; i++) {
+                if (isPackage[level][i]) {
+                    packagesAmount++;
+                }
+            }
+            for (int i = 0; i < chosen - packagesAmount; i++) {
+                lengths[sorted[i]]++;
+            }
+            chosen = 2 * packagesAmount;
+        }
+    }
+
+    /** Gets the longest code length */
+    private static int getMaxLength(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) {
+            maxLength = Math.max(maxLength, length);
+        }
+        return maxLength;
+    }
+
+    /** Gets the amount of bits of the data coded by codes of the lengths */
+    public static long getCodedBits(long[] frequencies, int[] lengths) {
+        long bits = 0;
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            bits += frequencies[symbol] * lengths[symbol];
+        }
+        return bits;
+    }
+
+    /** Checks that every code fits the limit of the code lengths table */
+    public static void checkMaxLength(int[] lengths) throws IOException {
+        for (int length : lengths) {
+            if (length > MAX_CODE_LENGTH) {
+                throw new IOException("The Huffman tree is too deep to be stored");
+            }
+        }
+    }
+
+    /**
+     * Writes the code lengths table. Its size is the smaller one of two modes:
+     * the list of (gap, length) pairs or the mask of present bytes with their lengths
+     *
+     * @param lengths   Code lengths indexed by the unsigned byte value, 0 if a byte has no code
+     * @param bitWriter Writer to put the table to
+     */
+    public static void writeLengths(int[] lengths, BitWriter bitWriter) throws IOException {
+        int symbolsAmount = 0;
+        int maxLength = 0;
+        int gapsSize = 0;
+        int previousSymbol = -1;
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] != 0) {
+                symbolsAmount++;
+                maxLength = Math.max(maxLength, lengths[symbol]);
+                gapsSize += getGammaCodeLength(symbol - previousSymbol);
+                previousSymbol = symbol;
+            }
+        }
+        int width = Integer.SIZE - Integer.numberOfLeadingZeros(maxLength);
+        int sparseSize = Byte.SIZE + gapsSize + symbolsAmount * width;
+        int maskSize = ALPHABET_SIZE + symbolsAmount * width;
+        int mode = sparseSize <= maskSize ? SPARSE_MODE : MASK_MODE;
+        previousSymbol = -1;
+        bitWriter.writeBits(mode, 1);
+        bitWriter.writeBits(width - 1, LENGTH_WIDTH_IN_BITS);
+        if (mode == SPARSE_MODE) {
+            bitWriter.writeBits(symbolsAmount - 1, Byte.SIZE);
+            for (int symbol = 0; symbol < lengths.length; symbol++) {
+                if (lengths[symbol] != 0) {
+                    writeGammaCode(symbol - previousSymbol, bitWriter);
+                    bitWriter.writeBits(lengths[symbol], width);
+                    previousSymbol = symbol;
+                }
+            }
+        } else {
+            for (int length : lengths) {
+                bitWriter.writeBit(length != 0);
+            }
+            for (int length : lengths) {
+                if (length != 0) {
+                    bitWriter.writeBits(length, width);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the code lengths table and checks that it describes a complete prefix code
+     *
+     * @param bitReader Reader to get the table from
+     * @param lengths   Array to put the code lengths to, indexed by the unsigned byte value
+     */
+    public static void readLengths(BitReader bitReader, int[] lengths) throws IOException {
+        Arrays.fill(lengths, 0);
+        int mode = (int) bitReader.readBits(1);
+        int width = (int) bitReader.readBits(LENGTH_WIDTH_IN_BITS) + 1;
+        if (mode == SPARSE_MODE) {
+            int symbolsAmount = (int) bitReader.readBits(Byte.SIZE) + 1;
+            int symbol = -1;
+            for (int i = 0; i < symbolsAmount; i++) {
+                symbol += readGammaCode(bitReader);
+                if (symbol >= lengths.length) {
+                    throw new IOException("Corrupted code lengths table");
+                }
+                lengths[symbol] = (int) bitReader.readBits(width);
+            }
+        } else {
+            for (int symbol = 0; symbol < lengths.length; symbol++) {
+                lengths[symbol] = bitReader.readBit();
+            }
+            for (int symbol = 0; symbol < lengths.length; symbol++) {
+                if (lengths[symbol] != 0) {
+                    lengths[symbol] = (int) bitReader.readBits(width);
+                }
+            }
+        }
+        checkLengths(lengths);
+    }
+
+    /** Gets the length of the Elias gamma code of the positive number */
+    private static int getGammaCodeLength(int number) {
+        return 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(number)) - 1;
+    }
+
+    /** Writes the positive number as the Elias gamma code: N zeros, then N + 1 bits of the number */
+    private static void writeGammaCode(int number, BitWriter bitWriter) throws IOException {
+        int significantBits = Integer.SIZE - Integer.numberOfLeadingZeros(number);
+        bitWriter.writeBits(0, significantBits - 1);
+        bitWriter.writeBits(number, significantBits);
+    }
+
+    /** Reads the positive number written as the Elias gamma code */
+    private static int readGammaCode(BitReader bitReader) throws IOException {
+        int zeros = 0;
+        while (bitReader.readBit() == 0) {
+            if (++zeros >= Byte.SIZE + 1) {
+                throw new IOException("Corrupted code lengths table");
+            }
+        }
+        /* The highest "1" of the number is already read */
+        return zeros == 0 ? 1 : (int) (1L << zeros | bitReader.readBits(zeros));
+    }
+
+    /** Checks that code lengths describe a complete prefix code (Kraft equality) */
+    private static void checkLengths(int[] lengths) throws IOException {
+        long kraftSum = 0;
+        for (int length : lengths) {
+            if (length > MAX_CODE_LENGTH) {
+                throw new IOException("Corrupted code lengths table");
+            }
+            if (length != 0) {
+                kraftSum += 1L << (MAX_CODE_LENGTH - length);
+            }
+            if (kraftSum > 1L << MAX_CODE_LENGTH) {
+                throw new IOException("Corrupted code lengths table");
+            }
+        }
+        if (kraftSum != 1L << MAX_CODE_LENGTH) {
+            throw new IOException("Corrupted code lengths table");
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Output stream over a channel. Small writes (headers, tables) are collected in a buffer
+ * and go to the channel together with the next large write by one gathering write,
+ * large writes are not copied.
+ */
+public class ChannelOutputStream extends OutputStream {
+    /** Channel to write to */
+    private final GatheringByteChannel channel;
+
+    /** Collected small writes */
+    private final ByteBuffer pending = ByteBuffer.allocate(GATHERING_THRESHOLD);
+
+    /** Buffers of one gathering write: collected small writes and a large one */
+    private final ByteBuffer[] gathered = new ByteBuffer[2];
+
+    /** Amount of bytes written to the stream */
+    private long position;
+
+    /** Metrics where writes to the channel are measured */
+    private ProcessMetrics metrics = ProcessMetrics.DISABLED;
+
+    public ChannelOutputStream(GatheringByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /** Sets metrics where writes to the channel are measured as the write phase */
+    public void setMetrics(ProcessMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!pending.hasRemaining()) {
+            flush();
+        }
+        pending.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        position += len;
+        if (len <= pending.remaining() && len < GATHERING_THRESHOLD / 2) {
+            pending.put(b, off, len);
+            return;
+        }
+        pending.flip();
+        ProcessMetrics.Span span = metrics.begin(ProcessMetrics.Phase.WRITE);
+        long bytesToWrite = pending.remaining() + (long) len;
+        gathered[0] = pending;
+        gathered[1] = ByteBuffer.wrap(b, off, len);
+        while (gathered[1].hasRemaining()) {
+            channel.write(gathered);
+        }
+        span.end(bytesToWrite);
+        pending.clear();
+    }
+
+    /** Gets the amount of bytes written to the stream, including the collected ones */
+    public long getPosition() {
+        return position;
+    }
+
+    /** Writes the collected small writes to the channel */
+    @Override
+    public void flush() throws IOException {
+        pending.flip();
+        if (pending.hasRemaining()) {
+            ProcessMetrics.Span span = metrics.begin(ProcessMetrics.Phase.WRITE);
+            int bytesToWrite = pending.remaining();
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            span.end(bytesToWrite);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,90 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC32C checksums of blocks and of whole files.
+ * Checksums of blocks are calculated by {@link CRC32C}, which is accelerated by the processor,
+ * the checksum of the whole file is combined from checksums of its blocks in their order,
+ * so blocks are checked in parallel without one more pass over the whole data.
+ */
+public class Checksums {
+    /** The reversed CRC32C (Castagnoli) polynomial */
+    private static final int POLYNOMIAL = 0x82f63b78;
+
+    /** Bits amount in a checksum */
+    private static final int CHECKSUM_BITS = 32;
+
+    /** Gets the checksum of the remaining bytes of the buffer. The buffer position is not changed */
+    public static int checksum(ByteBuffer data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /** Gets the checksum of the part of the array */
+    public static int checksum(byte[] data, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Combines checksums of two consecutive parts of data to the checksum of the whole data
+     *
+     * @param checksum1 Checksum of the first part
+     * @param checksum2 Checksum of the second part
+     * @param length2   Length of the second part
+     * @return          Checksum of the first part followed by the second one
+     */
+    public static int combine(int checksum1, int checksum2, long length2) {
+        if (length2 <= 0) {
+            return checksum1;
+        }
+        /* Operators which append one, two, four... zero bits to the checksum, as GF(2) matrices */
+        int[] even = new int[CHECKSUM_BITS];
+        int[] odd = new int[CHECKSUM_BITS];
+        odd[0] = POLYNOMIAL;
+        for (int n = 1; n < CHECKSUM_BITS; n++) {
+            odd[n] = 1 << (n - 1);
+        }
+        /* Operators of two and four zero bits, then of one zero byte and more on every step */
+        square(even, odd);
+        square(odd, even);
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                checksum1 = times(even, checksum1);
+            }
+            length2 >>>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                checksum1 = times(odd, checksum1);
+            }
+            length2 >>>= 1;
+        } while (length2 != 0);
+        return checksum1 ^ checksum2;
+    }
+
+    /** Multiplies the matrix by the vector over GF(2) */
+    private static int times(int[] matrix, int vector) {
+        int result = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                result ^= matrix[i];
+            }
+        }
+        return result;
+    }
+
+    /** Puts the square of the matrix to the result */
+    private static void square(int[] result, int[] matrix) {
+        for (int n = 0; n < CHECKSUM_BITS; n++) {
+            result[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Order-1 context model: every byte is coded by the table of the context, which is the previous byte.
+ * A context gets its own table only if the table pays for its header: the bits it saves against
+ * the shared table must be more than the bits of its code lengths table.
+ * Sparse contexts are merged into the shared table, which is built from the bytes of all of them.
+ * Codes of all the tables are kept in flat arrays indexed by the table offset of the context plus the byte value,
+ * so encoding takes two array reads per byte. Decoding takes the decoder of the context from an array,
+ * the contexts of one table share its decoder. Neither of them allocates anything per byte.
+ */
+public class ContextModel {
+    /** Amount of contexts: one per value of the previous byte */
+    public static final int CONTEXTS = ALPHABET_SIZE;
+
+    /** Index of the shared table of sparse contexts */
+    private static final int SHARED_TABLE = 0;
+
+    /** Bits amount to represent the amount of tables minus one */
+    private static final int TABLES_AMOUNT_IN_BITS = 9;
+
+    /** Offset of the table of every context in the flat arrays of codes */
+    private final int[] tableOffsets = new int[CONTEXTS];
+
+    /** Table of every context */
+    private final int[] contextTables;
+
+    /** Amount of tables */
+    private final int tablesAmount;
+
+    /** Codes of all the tables, every table takes 256 entries */
+    private final long[] codes;
+
+    /** Code lengths of all the tables, every table takes 256 entries */
+    private final int[] codeLengths;
+
+    /** Shift of the code length in an entry of the decoding table */
+    private static final int LENGTH_SHIFT = 8;
+
+    /** Mask of the byte value in an entry of the decoding table */
+    private static final int SYMBOL_MASK = 0xff;
+
+    /**
+     * Decoding tables of all the tables one after another: every entry indexed by the next bits has
+     * the code length shifted by 8 and the byte, or -1 for a code longer than the table.
+     * It is made on the first decoding
+     */
+    private int[] decodingTable;
+
+    /** Offset of the decoding table of every context */
+    private final int[] decodingOffsets = new int[CONTEXTS];
+
+    /** Decoder of every context for codes longer than the decoding table, the contexts of one table share it */
+    private HuffmanDecoder[] contextDecoders;
+
+    private ContextModel(int[] contextTables, int tablesAmount) {
+        this.contextTables = contextTables;
+        this.tablesAmount = tablesAmount;
+        this.codes = new long[tablesAmount * ALPHABET_SIZE];
+        this.codeLengths = new int[tablesAmount * ALPHABET_SIZE];
+        for (int context = 0; context < CONTEXTS; context++) {
+            tableOffsets[context] = contextTables[context] * ALPHABET_SIZE;
+        }
+    }
+
+    /**
+     * Builds the model for frequencies of pairs of bytes.
+     * Every context is compared with the order-0 table of the whole data: it gets its own table
+     * if the own codes with the table header take less bits, otherwise it is merged into the shared table
+     *
+     * @param frequencies     Frequencies indexed by the previous byte multiplied by 256 plus the unsigned byte value
+     * @param codeLengthLimit Limit of code lengths
+     * @param metrics         Metrics of the process
+     */
+    public static ContextModel build(long[] frequencies, int codeLengthLimit, ProcessMetrics metrics)
+            throws IOException {
+        long[] contextFrequencies = new long[ALPHABET_SIZE];
+        long[] globalFrequencies = new long[ALPHABET_SIZE];
+        for (int i = 0; i < frequencies.length; i++) {
+            globalFrequencies[i & 0xff] += frequencies[i];
+        }
+        long[] codes = new long[ALPHABET_SIZE];
+        int[] globalLengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.buildCodes(globalFrequencies, codes, globalLengths, codeLengthLimit, metrics);
+
+        int[] contextTables = new int[CONTEXTS];
+        int[] lengths = new int[ALPHABET_SIZE];
+        int tablesAmount = 1;
+        for (int context = 0; context < CONTEXTS; context++) {
+            System.arraycopy(frequencies, context * ALPHABET_SIZE, contextFrequencies, 0, ALPHABET_SIZE);
+            if (Histogram.countSymbols(contextFrequencies) == 0) {
+                continue;
+            }
+            CanonicalCodes.buildCodes(contextFrequencies, codes, lengths, codeLengthLimit, metrics);
+            long ownBits = CanonicalCodes.getCodedBits(contextFrequencies, lengths) + getTableBits(lengths);
+            if (ownBits < CanonicalCodes.getCodedBits(contextFrequencies, globalLengths)) {
+                contextTables[context] = tablesAmount++;
+            }
+        }
+
+        ContextModel model = new ContextModel(contextTables, tablesAmount);
+        /* The shared table is built only from the merged contexts, so it fits them better than the global one */
+        long[] tableFrequencies = new long[ALPHABET_SIZE];
+        for (int context = 0; context < CONTEXTS; context++) {
+            if (contextTables[context] == SHARED_TABLE) {
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    tableFrequencies[symbol] += frequencies[context * ALPHABET_SIZE + symbol];
+                }
+            }
+        }
+        model.setTable(SHARED_TABLE, tableFrequencies, codeLengthLimit, metrics);
+        for (int context = 0; context < CONTEXTS; context++) {
+            if (contextTables[context] != SHARED_TABLE) {
+                System.arraycopy(frequencies, context * ALPHABET_SIZE, tableFrequencies, 0, ALPHABET_SIZE);
+                model.setTable(contextTables[context], tableFrequencies, codeLengthLimit, metrics);
+            }
+        }
+        return model;
+    }
+
+    /** Builds the codes of the table for the frequencies */
+    private void setTable(int table, long[] frequencies, int codeLengthLimit, ProcessMetrics metrics)
+            throws IOException {
+        long[] tableCodes = new long[ALPHABET_SIZE];
+        int[] tableLengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.buildCodes(frequencies, tableCodes, tableLengths, codeLengthLimit, metrics);
+        System.arraycopy(tableCodes, 0, codes, table * ALPHABET_SIZE, ALPHABET_SIZE);
+        System.arraycopy(tableLengths, 0, codeLengths, table * ALPHABET_SIZE, ALPHABET_SIZE);
+    }
+
+    /** Gets the bits amount of the code lengths table in the archive */
+    private static long getTableBits(int[] lengths) throws IOException {
+        BitWriter bitWriter = new BitWriter(OutputStream.nullOutputStream(), Long.BYTES);
+        CanonicalCodes.writeLengths(lengths, bitWriter);
+        return bitWriter.getBitsWritten();
+    }
+
+    /** Gets the bits amount to represent the table index of a context */
+    private static int getTableIndexBits(int tablesAmount) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(tablesAmount - 1);
+    }
+
+    /** Writes the amount of tables, the table of every context and the code lengths of every table */
+    public void write(BitWriter bitWriter) throws IOException {
+        bitWriter.writeBits(tablesAmount - 1, TABLES_AMOUNT_IN_BITS);
+        int indexBits = getTableIndexBits(tablesAmount);
+        if (indexBits > 0) {
+            for (int context = 0; context < CONTEXTS; context++) {
+                bitWriter.writeBits(contextTables[context], indexBits);
+            }
+        }
+        int[] lengths = new int[ALPHABET_SIZE];
+        for (int table = 0; table < tablesAmount; table++) {
+            System.arraycopy(codeLengths, table * ALPHABET_SIZE, lengths, 0, ALPHABET_SIZE);
+            CanonicalCodes.writeLengths(lengths, bitWriter);
+        }
+    }
+
+    /** Reads the model written by {@link #write(BitWriter)} */
+    public static ContextModel read(BitReader bitReader) throws IOException {
+        int tablesAmount = (int) bitReader.readBits(TABLES_AMOUNT_IN_BITS) + 1;
+        if (tablesAmount > CONTEXTS + 1) {
+            throw new IOException("Corrupted context model");
+        }
+        int[] contextTables = new int[CONTEXTS];
+        int indexBits = getTableIndexBits(tablesAmount);
+        if (indexBits > 0) {
+            for (int context = 0; context < CONTEXTS; context++) {
+                contextTables[context] = (int) bitReader.readBits(indexBits);
+                if (contextTables[context] >= tablesAmount) {
+                    throw new IOException("Corrupted context model");
+                }
+            }
+        }
+        ContextModel model = new ContextModel(contextTables, tablesAmount);
+        int[] lengths = new int[ALPHABET_SIZE];
+        long[] tableCodes = new long[ALPHABET_SIZE];
+        for (int table = 0; table < tablesAmount; table++) {
+            CanonicalCodes.readLengths(bitReader, lengths);
+            CanonicalCodes.assignCodes(lengths, tableCodes);
+            System.arraycopy(lengths, 0, model.codeLengths, table * ALPHABET_SIZE, ALPHABET_SIZE);
+            System.arraycopy(tableCodes, 0, model.codes, table * ALPHABET_SIZE, ALPHABET_SIZE);
+        }
+        return model;
+    }
+
+    /**
+     * Encodes bytes of the buffer, every one by the table of the previous byte
+     *
+     * @param data      Buffer with bytes from its position to its limit, the position is not changed
+     * @param previous  The byte before the buffer
+     * @param bitWriter Writer of the coded data
+     * @return          The last byte of the buffer, or the previous one if the buffer is empty
+     */
+    public int encode(ByteBuffer data, int previous, BitWriter bitWriter) throws IOException {
+        int end = data.limit();
+        for (int i = data.position(); i < end; i++) {
+            int symbol = data.get(i) & 0xff;
+            int index = tableOffsets[previous] + symbol;
+            bitWriter.writeBits(codes[index], codeLengths[index]);
+            previous = symbol;
+        }
+        return previous;
+    }
+
+    /**
+     * Decodes the specified amount of bytes, every one by the table of the previous byte
+     *
+     * @param reader   Reader of the coded data
+     * @param out      Array for the decoded bytes
+     * @param offset   Start position in the array
+     * @param length   Amount of bytes to decode
+     * @param previous The byte before the decoded ones
+     * @return         The last decoded byte, or the previous one if nothing is decoded
+     */
+    public int decode(BitReader reader, byte[] out, int offset, int length, int previous) throws IOException {
+        if (decodingTable == null) {
+            createDecoders();
+        }
+        int[] table = decodingTable;
+        int[] offsets = decodingOffsets;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int entry = table[offsets[previous] + (int) reader.peekBits(DECODING_TABLE_BITS)];
+            if (entry >= 0) {
+                reader.skipBits(entry >>> LENGTH_SHIFT);
+                previous = entry & SYMBOL_MASK;
+            } else {
+                previous = contextDecoders[previous].decodeSymbol(reader) & SYMBOL_MASK;
+            }
+            out[i] = (byte) previous;
+        }
+        reader.checkNotOverrun();
+        return previous;
+    }
+
+    /**
+     * Builds the flat decoding table of short codes of all the tables and the decoder of every table for long codes.
+     * The multi-symbol mode is off because the table changes by every byte
+     */
+    private void createDecoders() {
+        int tableSize = 1 << DECODING_TABLE_BITS;
+        int[] flatTable = new int[tablesAmount * tableSize];
+        Arrays.fill(flatTable, -1);
+        for (int index = 0; index < codeLengths.length; index++) {
+            int length = codeLengths[index];
+            if (length != 0 && length <= DECODING_TABLE_BITS) {
+                /* Fill every entry which starts with the code */
+                int first = index / ALPHABET_SIZE * tableSize + (int) (codes[index] << (DECODING_TABLE_BITS - length));
+                Arrays.fill(flatTable, first, first + (1 << (DECODING_TABLE_BITS - length)),
+                        length << LENGTH_SHIFT | index % ALPHABET_SIZE);
+            }
+        }
+        HuffmanDecoder[] decoders = new HuffmanDecoder[tablesAmount];
+        long[] tableCodes = new long[ALPHABET_SIZE];
+        int[] lengths = new int[ALPHABET_SIZE];
+        for (int table = 0; table < tablesAmount; table++) {
+            System.arraycopy(codes, table * ALPHABET_SIZE, tableCodes, 0, ALPHABET_SIZE);
+            System.arraycopy(codeLengths, table * ALPHABET_SIZE, lengths, 0, ALPHABET_SIZE);
+            decoders[table] = new HuffmanDecoder(DECODING_TABLE_BITS);
+            decoders[table].setMultiSymbol(false);
+            decoders[table].setCodes(tableCodes, lengths);
+        }
+        contextDecoders = new HuffmanDecoder[CONTEXTS];
+        for (int context = 0; context < CONTEXTS; context++) {
+            contextDecoders[context] = decoders[contextTables[context]];
+            decodingOffsets[context] = contextTables[context] * tableSize;
+        }
+        decodingTable = flatTable;
+    }
+
+    /** Gets the amount of tables, the shared one included */
+    public int getTablesAmount() {
+        return tablesAmount;
+    }
+}
@@ -0,0 +1,140 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Gives a file as a sequence of regions.
+ * Large regular files are memory-mapped region by region, so their data is processed
+ * right in the page cache without copying. Other inputs (small files, special files,
+ * files which cannot be mapped, streams) are read like a stream to a reused heap buffer by the channel.
+ */
+public class FileRegions implements Closeable {
+    /** Channel of the file or the stream */
+    private final ReadableByteChannel channel;
+
+    /** Size of the file at the moment of opening */
+    private final long fileSize;
+
+    /** Size of mapped regions */
+    private final int regionSize;
+
+    /** Position of the next region in the file */
+    private long position;
+
+    /** True if regions are memory-mapped */
+    private boolean mapped;
+
+    /** The first mapped region, which is mapped on opening to check that the file can be mapped */
+    private ByteBuffer firstRegion;
+
+    /** Reused buffer of regions which are read rather than mapped */
+    private ByteBuffer readBuffer;
+
+    /**
+     * Opens the file
+     *
+     * @param file       The file name
+     * @param regionSize Size of mapped regions
+     */
+    public FileRegions(String file, int regionSize) throws IOException {
+        Path path = Paths.get(file);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.channel = channel;
+        this.regionSize = regionSize;
+        boolean regularFile = Files.isRegularFile(path);
+        this.fileSize = regularFile ? channel.size() : 0;
+        if (regularFile && fileSize >= MIN_MAPPED_FILE_SIZE) {
+            /* The file is read rather than mapped if its first region cannot be mapped */
+            try {
+                firstRegion = mapRegion();
+                mapped = true;
+            } catch (IOException | UnsupportedOperationException exception) {
+                mapped = false;
+            }
+        }
+    }
+
+    /**
+     * Gives a stream which can be read only once as a sequence of read regions
+     *
+     * @param channel Channel of the stream
+     */
+    public FileRegions(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.regionSize = READ_REGION_SIZE;
+        this.fileSize = 0;
+    }
+
+    /** True if regions are memory-mapped rather than read */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Gets the next region of the file.
+     * A read (not mapped) region is valid only until the next call
+     *
+     * @return The region or null after the end of the file
+     */
+    public ByteBuffer nextRegion() throws IOException {
+        if (mapped) {
+            if (firstRegion != null) {
+                ByteBuffer region = firstRegion;
+                firstRegion = null;
+                return region;
+            }
+            return position < fileSize ? mapRegion() : null;
+        }
+        if (readBuffer == null) {
+            readBuffer = ByteBuffer.allocate(READ_REGION_SIZE);
+        }
+        readBuffer.clear();
+        if (read(readBuffer) == 0) {
+            return null;
+        }
+        readBuffer.flip();
+        return readBuffer;
+    }
+
+    /** Maps the region of the file at the current position */
+    private ByteBuffer mapRegion() throws IOException {
+        long size = Math.min(regionSize, fileSize - position);
+        ByteBuffer region = ((FileChannel) channel).map(FileChannel.MapMode.READ_ONLY, position, size);
+        position += size;
+        return region;
+    }
+
+    /**
+     * Reads the next bytes of the file to the buffer until it is full or the file ends.
+     * Can be used only while regions are not mapped
+     *
+     * @return Amount of read bytes, 0 after the end of the file
+     */
+    public int read(ByteBuffer buffer) throws IOException {
+        int bytesRead = 0;
+        while (buffer.hasRemaining()) {
+            int bytes = channel.read(buffer);
+            if (bytes == -1) {
+                break;
+            }
+            bytesRead += bytes;
+        }
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
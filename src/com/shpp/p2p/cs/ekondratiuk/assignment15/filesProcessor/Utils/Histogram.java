@@ -0,0 +1,143 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Counts frequencies of bytes.
+ * The data is read by 8-byte words and the bytes of a word go to several interleaved
+ * counter lanes, so neighbouring equal bytes don't wait for each other's counter update.
+ * Lanes are summed up into 64-bit counters, so the counts of any file size don't overflow.
+ */
+public class Histogram {
+    /** Amount of counter lanes, one per byte of a word */
+    private static final int LANES = Long.BYTES;
+
+    /**
+     * Counts bytes of the buffer and adds the counts to the frequencies.
+     * A buffer holds less than 2^31 bytes, so int lanes can't overflow
+     *
+     * @param data        Buffer with bytes from its position to its limit, the position is not changed
+     * @param frequencies Frequencies indexed by the unsigned byte value
+     */
+    public static void count(ByteBuffer data, long[] frequencies) {
+        int[] lanes = new int[LANES * ALPHABET_SIZE];
+        /* Bytes order of words doesn't matter for counting, so the native one is the fastest */
+        ByteBuffer words = data.duplicate().order(ByteOrder.nativeOrder());
+        int i = data.position();
+        int end = data.limit();
+        for (; i <= end - Long.BYTES; i += Long.BYTES) {
+            long word = words.getLong(i);
+            lanes[(int) word & 0xff]++;
+            lanes[ALPHABET_SIZE + ((int) (word >>> 8) & 0xff)]++;
+            lanes[2 * ALPHABET_SIZE + ((int) (word >>> 16) & 0xff)]++;
+            lanes[3 * ALPHABET_SIZE + ((int) (word >>> 24) & 0xff)]++;
+            lanes[4 * ALPHABET_SIZE + ((int) (word >>> 32) & 0xff)]++;
+            lanes[5 * ALPHABET_SIZE + ((int) (word >>> 40) & 0xff)]++;
+            lanes[6 * ALPHABET_SIZE + ((int) (word >>> 48) & 0xff)]++;
+            lanes[7 * ALPHABET_SIZE + (int) (word >>> 56)]++;
+        }
+        for (; i < end; i++) {
+            lanes[data.get(i) & 0xff]++;
+        }
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            long frequency = 0;
+            for (int lane = 0; lane < LANES; lane++) {
+                frequency += lanes[lane * ALPHABET_SIZE + symbol];
+            }
+            frequencies[symbol] += frequency;
+        }
+    }
+
+    /**
+     * Counts bytes of the buffer by several threads: every thread counts its own part
+     * to its own histogram, then the histograms are merged
+     *
+     * @param data        Buffer with bytes from its position to its limit, the position is not changed
+     * @param frequencies Frequencies indexed by the unsigned byte value
+     * @param executor    Executor to count the parts by
+     * @param parts       Amount of parts to split the buffer to
+     */
+    public static void count(ByteBuffer data, long[] frequencies, ExecutorService executor, int parts)
+            throws IOException {
+        int partSize = Math.max(data.remaining() / parts + 1, MIN_PARALLEL_HISTOGRAM_PART_SIZE);
+        List<Future<long[]>> partsFrequencies = new ArrayList<>();
+        for (int start = data.position(); start < data.limit(); start += partSize) {
+            ByteBuffer part = data.slice(start, Math.min(partSize, data.limit() - start));
+            partsFrequencies.add(executor.submit(() -> {
+                long[] partFrequencies = new long[ALPHABET_SIZE];
+                count(part, partFrequencies);
+                return partFrequencies;
+            }));
+        }
+        try {
+            for (Future<long[]> partFrequencies : partsFrequencies) {
+                long[] counted = partFrequencies.get();
+                for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+                    frequencies[symbol] += counted[symbol];
+                }
+            }
+        } catch (ExecutionException exception) {
+            throw new IOException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Counting was interrupted");
+        }
+    }
+
+    /**
+     * Counts pairs of neighbouring bytes of the buffer: every byte is counted in the context of the previous one
+     *
+     * @param data        Buffer with bytes from its position to its limit, the position is not changed
+     * @param previous    The byte before the buffer
+     * @param frequencies Frequencies indexed by the previous byte multiplied by 256 plus the unsigned byte value
+     * @return            The last byte of the buffer, or the previous one if the buffer is empty
+     */
+    public static int countPairs(ByteBuffer data, int previous, long[] frequencies) {
+        int end = data.limit();
+        for (int i = data.position(); i < end; i++) {
+            int symbol = data.get(i) & 0xff;
+            frequencies[previous << Byte.SIZE | symbol]++;
+            previous = symbol;
+        }
+        return previous;
+    }
+
+    /** Gets the amount of different bytes which have non-zero frequencies */
+    public static int countSymbols(long[] frequencies) {
+        int symbolsAmount = 0;
+        for (long frequency : frequencies) {
+            if (frequency != 0) {
+                symbolsAmount++;
+            }
+        }
+        return symbolsAmount;
+    }
+
+    /**
+     * Estimates the amount of bits of the data coded by the best codes of whole bits or less:
+     * the entropy of the frequencies multiplied by the amount of bytes
+     */
+    public static double estimateCodedBits(long[] frequencies) {
+        long total = 0;
+        for (long frequency : frequencies) {
+            total += frequency;
+        }
+        double bits = 0;
+        for (long frequency : frequencies) {
+            if (frequency != 0) {
+                bits += frequency * (Math.log((double) total / frequency) / Math.log(2));
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,385 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+/**
+ * Table-driven decoder of Huffman codes.
+ * The next tableBits bits of the data are used as an index of the lookup table,
+ * and one table entry gives both the decoded byte and its code length.
+ * Codes longer than the table are finished by a second lookup in a subtable of their prefix,
+ * so limited codes are always decoded by one or two lookups. Codes of old archives which are
+ * too long for a subtable are finished bit by bit over a flat binary tree.
+ * In the multi-symbol mode one more table gives up to three bytes whose short codes
+ * fit the peeked bits together, so frequent bytes are decoded several at a time.
+ * The table is used only if its entries hold enough bytes on average.
+ */
+public class HuffmanDecoder {
+    /** Bits amount to shift a code length in a table entry */
+    private static final int LENGTH_SHIFT = 8;
+
+    /** Mask of the byte value in a table entry */
+    private static final int SYMBOL_MASK = 0xff;
+
+    /** Table entry of bits which are not a prefix of any code */
+    private static final int INVALID_ENTRY = ~0;
+
+    /** Flag of a table entry which refers to a subtable */
+    private static final int SUBTABLE_FLAG = 1 << 30;
+
+    /** Bits amount to shift the index bits amount of a subtable in a table entry */
+    private static final int SUBTABLE_BITS_SHIFT = 24;
+
+    /** Mask of the index bits amount of a subtable in a table entry shifted by SUBTABLE_BITS_SHIFT */
+    private static final int SUBTABLE_BITS_MASK = 0x3f;
+
+    /** Mask of the offset of a subtable in a table entry */
+    private static final int SUBTABLE_OFFSET_MASK = (1 << SUBTABLE_BITS_SHIFT) - 1;
+
+    /** Maximal amount of bits resolved by a subtable, longer codes are finished over the tree */
+    private static final int SUBTABLE_MAX_BITS = 8;
+
+    /** Maximal amount of bytes in a multi-symbol table entry */
+    private static final int MAX_SYMBOLS_PER_ENTRY = 3;
+
+    /** Bits amount to shift the total code length in a multi-symbol table entry */
+    private static final int MULTI_LENGTH_SHIFT = 24;
+
+    /** Mask of the total code length in a multi-symbol table entry shifted by MULTI_LENGTH_SHIFT */
+    private static final int MULTI_LENGTH_MASK = 0xf;
+
+    /** Bits amount to shift the amount of bytes in a multi-symbol table entry */
+    private static final int MULTI_COUNT_SHIFT = 28;
+
+    /**
+     * Minimal average amount of bytes in multi-symbol table entries to use the table.
+     * Codes of nearly random data don't fit the table by two, and the single-symbol loop is faster for them
+     */
+    private static final double MIN_SYMBOLS_PER_MULTI_ENTRY = 1.5;
+
+    /** Amount of bits to resolve by one table lookup */
+    private final int tableBits;
+
+    /**
+     * Lookup table indexed by the next tableBits bits.
+     * An entry >= 0 is (code length << 8 | byte value) or
+     * (SUBTABLE_FLAG | index bits of the subtable << 24 | offset of the subtable),
+     * an entry < 0 is ~(index of a node of the long codes tree)
+     */
+    private final int[] table;
+
+    /**
+     * Subtables of all the prefixes one after another. An entry is
+     * (code length without the prefix << 8 | byte value), INVALID_ENTRY if no code starts with the bits
+     */
+    private int[] subtables = new int[0];
+
+    /** Longest code length of every prefix of long codes */
+    private final int[] prefixLengths;
+
+    /**
+     * Multi-symbol lookup table indexed by the next tableBits bits, null if the mode is off.
+     * An entry is (amount of bytes << 28 | total code length << 24 | third << 16 | second << 8 | first byte),
+     * 0 if the bits don't start with a code which is not longer than the table
+     */
+    private int[] multiTable;
+
+    /** True if the multi-symbol table is used for the current codes */
+    private boolean multiTableUsed;
+
+    /**
+     * Long codes tree. Children of the node n are at 2n (bit 0) and 2n + 1 (bit 1).
+     * A child > 0 is a node index, a child < 0 is ~(byte value), 0 means no code
+     */
+    private final int[] children;
+
+    /** Amount of used nodes of the long codes tree. Node 0 is never used */
+    private int nodesCounter = 1;
+
+    /**
+     * Builds decoder tables for the set of prefix codes
+     *
+     * @param codes     Codes indexed by the unsigned byte value
+     * @param lengths   Code lengths indexed by the unsigned byte value, 0 if a byte has no code
+     * @param tableBits Amount of bits to resolve by one table lookup
+     */
+    public HuffmanDecoder(long[] codes, int[] lengths, int tableBits) {
+        this(tableBits);
+        setCodes(codes, lengths);
+    }
+
+    /**
+     * Makes a decoder without codes, its tables are filled by {@link #setCodes(long[], int[])}
+     *
+     * @param tableBits Amount of bits to resolve by one table lookup
+     */
+    public HuffmanDecoder(int tableBits) {
+        this.tableBits = tableBits;
+        this.table = new int[1 << tableBits];
+        this.prefixLengths = new int[1 << tableBits];
+        /* A prefix code over 256 bytes has at most 255 internal nodes */
+        this.children = new int[2 * (ALPHABET_SIZE + 1)];
+        setMultiSymbol(true);
+    }
+
+    /**
+     * Turns the multi-symbol mode on or off. It is on by default if the table is not longer than 15 bits.
+     * The mode is applied to the codes set after the call
+     */
+    public void setMultiSymbol(boolean multiSymbol) {
+        multiTable = multiSymbol && tableBits <= MULTI_LENGTH_MASK ? new int[1 << tableBits] : null;
+    }
+
+    /** Checks if the multi-symbol table is used for the current codes */
+    boolean isMultiTableUsed() {
+        return multiTableUsed;
+    }
+
+    /**
+     * Rebuilds decoder tables for the new set of prefix codes, so the tables are reused
+     *
+     * @param codes   Codes indexed by the unsigned byte value
+     * @param lengths Code lengths indexed by the unsigned byte value, 0 if a byte has no code
+     */
+    public void setCodes(long[] codes, int[] lengths) {
+        Arrays.fill(table, INVALID_ENTRY);
+        Arrays.fill(children, 0);
+        nodesCounter = 1;
+        allocateSubtables(codes, lengths);
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0) {
+                continue;
+            }
+            if (length <= tableBits) {
+                /* Fill every entry which starts with the code */
+                int first = (int) (codes[symbol] << (tableBits - length));
+                int last = first + (1 << (tableBits - length));
+                Arrays.fill(table, first, last, length << LENGTH_SHIFT | symbol);
+            } else {
+                addLongCode(codes[symbol], length, symbol);
+            }
+        }
+        multiTableUsed = multiTable != null && fillMultiTable() >= MIN_SYMBOLS_PER_MULTI_ENTRY * table.length;
+    }
+
+    /**
+     * Fills the multi-symbol table: every entry takes bytes of the single-symbol table while their codes fit
+     *
+     * @return Amount of bytes in all the entries
+     */
+    private long fillMultiTable() {
+        int mask = table.length - 1;
+        long symbolsCounter = 0;
+        for (int bits = 0; bits < table.length; bits++) {
+            int symbols = 0;
+            int count = 0;
+            int totalLength = 0;
+            while (count < MAX_SYMBOLS_PER_ENTRY) {
+                /* The rest bits are followed by zeros, so only codes within the rest are taken */
+                int entry = table[(bits << totalLength) & mask];
+                if (entry < 0 || entry >= SUBTABLE_FLAG || totalLength + (entry >>> LENGTH_SHIFT) > tableBits) {
+                    break;
+                }
+                symbols |= (entry & SYMBOL_MASK) << (count * Byte.SIZE);
+                totalLength += entry >>> LENGTH_SHIFT;
+                count++;
+            }
+            multiTable[bits] = count == 0 ? 0 :
+                    count << MULTI_COUNT_SHIFT | totalLength << MULTI_LENGTH_SHIFT | symbols;
+            symbolsCounter += count;
+        }
+        return symbolsCounter;
+    }
+
+    /** Makes subtables of the prefixes whose long codes are short enough to be resolved by one more lookup */
+    private void allocateSubtables(long[] codes, int[] lengths) {
+        Arrays.fill(prefixLengths, 0);
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            int length = lengths[symbol];
+            if (length > tableBits) {
+                int prefix = (int) (codes[symbol] >>> (length - tableBits));
+                prefixLengths[prefix] = Math.max(prefixLengths[prefix], length);
+            }
+        }
+        int size = 0;
+        for (int prefix = 0; prefix < prefixLengths.length; prefix++) {
+            int subtableBits = prefixLengths[prefix] - tableBits;
+            if (subtableBits > 0 && subtableBits <= SUBTABLE_MAX_BITS) {
+                table[prefix] = SUBTABLE_FLAG | subtableBits << SUBTABLE_BITS_SHIFT | size;
+                size += 1 << subtableBits;
+            }
+        }
+        if (subtables.length < size) {
+            subtables = new int[size];
+        }
+        Arrays.fill(subtables, 0, size, INVALID_ENTRY);
+    }
+
+    /** Puts a code longer than the table to its subtable or to the long codes tree */
+    private void addLongCode(long code, int length, int symbol) {
+        int prefix = (int) (code >>> (length - tableBits));
+        if (table[prefix] >= SUBTABLE_FLAG) {
+            /* Fill every subtable entry which starts with the rest of the code */
+            int subtableBits = table[prefix] >>> SUBTABLE_BITS_SHIFT & SUBTABLE_BITS_MASK;
+            int restLength = length - tableBits;
+            long rest = code & ((1L << restLength) - 1);
+            int first = (table[prefix] & SUBTABLE_OFFSET_MASK) + (int) (rest << (subtableBits - restLength));
+            Arrays.fill(subtables, first, first + (1 << (subtableBits - restLength)),
+                    restLength << LENGTH_SHIFT | symbol);
+            return;
+        }
+        if (table[prefix] == INVALID_ENTRY) {
+            table[prefix] = ~nodesCounter++;
+        }
+        int node = ~table[prefix];
+        for (int i = length - tableBits - 1; i > 0; i--) {
+            int child = 2 * node + (int) ((code >>> i) & 1);
+            if (children[child] == 0) {
+                children[child] = nodesCounter++;
+            }
+            node = children[child];
+        }
+        children[2 * node + (int) (code & 1)] = ~symbol;
+    }
+
+    /**
+     * Decodes the specified amount of bytes from the reader to the array
+     *
+     * @param reader Reader of the coded data
+     * @param out    Array for the decoded bytes
+     * @param offset Start position in the array
+     * @param length Amount of bytes to decode
+     */
+    public void decode(BitReader reader, byte[] out, int offset, int length) throws IOException {
+        int end = offset + length;
+        int i = offset;
+        if (multiTableUsed) {
+            /* Every step writes three bytes, the extra ones are overwritten by the next steps */
+            int multiEnd = end - MAX_SYMBOLS_PER_ENTRY;
+            while (i <= multiEnd) {
+                i = decodeSymbols(reader, out, i);
+            }
+        }
+        for (; i < end; i++) {
+            int entry = table[(int) reader.peekBits(tableBits)];
+            if (entry >= 0 && entry < SUBTABLE_FLAG) {
+                reader.skipBits(entry >>> LENGTH_SHIFT);
+                out[i] = (byte) (entry & SYMBOL_MASK);
+            } else {
+                out[i] = decodeLongCode(reader, entry);
+            }
+        }
+        reader.checkNotOverrun();
+    }
+
+    /**
+     * Decodes consecutive parts of the specified amount of bytes from their own streams.
+     * The streams are decoded together, one byte of every stream by a step, so lookups of different streams
+     * don't wait for each other. Parts have the same size rounded up, so the last parts may be shorter
+     *
+     * @param readers Readers of the four streams
+     * @param out     Array for the decoded bytes
+     * @param offset  Start position in the array
+     * @param length  Amount of bytes to decode
+     */
+    public void decodeInterleaved(BitReader[] readers, byte[] out, int offset, int length) throws IOException {
+        BitReader reader0 = readers[0];
+        BitReader reader1 = readers[1];
+        BitReader reader2 = readers[2];
+        BitReader reader3 = readers[3];
+        int partSize = (length + readers.length - 1) / readers.length;
+        int start1 = offset + Math.min(length, partSize);
+        int start2 = offset + Math.min(length, 2 * partSize);
+        int start3 = offset + Math.min(length, 3 * partSize);
+        int end = offset + length;
+        int i0 = offset;
+        int i1 = start1;
+        int i2 = start2;
+        int i3 = start3;
+        if (multiTableUsed) {
+            /* Every step writes three bytes of every part, the extra ones are overwritten by the next steps */
+            while (i0 <= start1 - MAX_SYMBOLS_PER_ENTRY && i1 <= start2 - MAX_SYMBOLS_PER_ENTRY &&
+                    i2 <= start3 - MAX_SYMBOLS_PER_ENTRY && i3 <= end - MAX_SYMBOLS_PER_ENTRY) {
+                i0 = decodeSymbols(reader0, out, i0);
+                i1 = decodeSymbols(reader1, out, i1);
+                i2 = decodeSymbols(reader2, out, i2);
+                i3 = decodeSymbols(reader3, out, i3);
+            }
+        } else {
+            /* The last part is the shortest one */
+            int commonLength = end - start3;
+            for (int i = 0; i < commonLength; i++) {
+                out[i0++] = decodeSymbol(reader0);
+                out[i1++] = decodeSymbol(reader1);
+                out[i2++] = decodeSymbol(reader2);
+                out[i3++] = decodeSymbol(reader3);
+            }
+        }
+        decode(reader0, out, i0, start1 - i0);
+        decode(reader1, out, i1, start2 - i1);
+        decode(reader2, out, i2, start3 - i2);
+        decode(reader3, out, i3, end - i3);
+    }
+
+    /**
+     * Decodes one or more bytes by the multi-symbol table. Three bytes are always written
+     *
+     * @return The position in the array after the decoded bytes
+     */
+    private int decodeSymbols(BitReader reader, byte[] out, int i) throws IOException {
+        int entry = multiTable[(int) reader.peekBits(tableBits)];
+        if (entry == 0) {
+            out[i] = decodeLongCode(reader, table[(int) reader.peekBits(tableBits)]);
+            return i + 1;
+        }
+        reader.skipBits(entry >>> MULTI_LENGTH_SHIFT & MULTI_LENGTH_MASK);
+        out[i] = (byte) entry;
+        out[i + 1] = (byte) (entry >>> Byte.SIZE);
+        out[i + 2] = (byte) (entry >>> 2 * Byte.SIZE);
+        return i + (entry >>> MULTI_COUNT_SHIFT);
+    }
+
+    /**
+     * Decodes one byte by the single-symbol table, for callers which switch tables from byte to byte.
+     * The reader is not checked for overrun, see {@link BitReader#checkNotOverrun()}
+     */
+    public byte decodeSymbol(BitReader reader) throws IOException {
+        int entry = table[(int) reader.peekBits(tableBits)];
+        if (entry >= 0 && entry < SUBTABLE_FLAG) {
+            reader.skipBits(entry >>> LENGTH_SHIFT);
+            return (byte) (entry & SYMBOL_MASK);
+        }
+        return decodeLongCode(reader, entry);
+    }
+
+    /** Finishes decoding of a code longer than the table by its subtable or walking the long codes tree */
+    private byte decodeLongCode(BitReader reader, int entry) throws IOException {
+        if (entry == INVALID_ENTRY) {
+            throw new IOException("Corrupted archived data");
+        }
+        reader.skipBits(tableBits);
+        if (entry >= SUBTABLE_FLAG) {
+            int subtableBits = entry >>> SUBTABLE_BITS_SHIFT & SUBTABLE_BITS_MASK;
+            int subEntry = subtables[(entry & SUBTABLE_OFFSET_MASK) + (int) reader.peekBits(subtableBits)];
+            if (subEntry == INVALID_ENTRY) {
+                throw new IOException("Corrupted archived data");
+            }
+            reader.skipBits(subEntry >>> LENGTH_SHIFT);
+            return (byte) (subEntry & SYMBOL_MASK);
+        }
+        int node = ~entry;
+        while (true) {
+            int child = children[2 * node + reader.readBit()];
+            if (child < 0) {
+                return (byte) ~child;
+            }
+            if (child == 0) {
+                throw new IOException("Corrupted archived data");
+            }
+            node = child;
+        }
+    }
+}
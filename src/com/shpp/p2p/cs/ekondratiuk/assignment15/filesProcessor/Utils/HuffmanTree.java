@@ -0,0 +1,222 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+
+/**
+ * Huffman tree kept in flat arrays instead of node objects, so one tree is reused
+ * for any amount of tables without allocations.
+ * Nodes are numbered so that every node goes before its parent and the root is the last one:
+ * a built tree has the leaves in the order of their frequencies, then the nodes in the order of their merging.
+ * It is built by the two-queue method: the leaves are sorted once, and merged nodes come
+ * in the order of their frequencies by themselves, so the two cheapest items are always at the heads
+ * of the two queues and the tree is built in linear time after the sorting.
+ */
+public class HuffmanTree {
+    /** Maximal amount of nodes, a full binary tree has one node less than leaves */
+    private static final int MAX_NODES = 2 * ALPHABET_SIZE - 1;
+
+    /** Bits of a sort key which hold the byte value */
+    private static final int SYMBOL_BITS = Byte.SIZE;
+
+    /** Frequencies of the nodes */
+    private final long[] weights = new long[MAX_NODES];
+
+    /** Parents of the nodes, the root has none */
+    private final short[] parents = new short[MAX_NODES];
+
+    /** Children of the nodes: the left one at 2 * node + GO_LEFT_BIT and the right one at 2 * node + GO_RIGHT_BIT */
+    private final short[] children = new short[2 * MAX_NODES];
+
+    /** Unsigned byte values of the leaves, -1 for a node */
+    private final short[] symbols = new short[MAX_NODES];
+
+    /** Depths of the nodes, which are code lengths of the leaves */
+    private final int[] depths = new int[MAX_NODES];
+
+    /** Paths from the root to the nodes */
+    private final long[] paths = new long[MAX_NODES];
+
+    /** Sort keys of the leaves */
+    private final long[] sortKeys = new long[ALPHABET_SIZE];
+
+    /** Nodes of the unpacked shape which wait for their right child */
+    private final short[] openNodes = new short[ALPHABET_SIZE];
+
+    /** Amount of nodes and leaves, the root is the last one */
+    private int nodesAmount;
+
+    /**
+     * Builds the tree for the frequencies.
+     * If the data has the only unique byte, it gets a pair with zero frequency,
+     * so the byte is coded by one bit. Empty data gets a tree of two zero frequency bytes
+     *
+     * @param frequencies Frequencies of bytes indexed by the unsigned byte value
+     */
+    public void build(long[] frequencies) {
+        int leavesAmount = sortSymbols(frequencies, sortKeys);
+        if (leavesAmount == 0) {
+            sortKeys[leavesAmount++] = 0;
+        }
+        if (leavesAmount == 1) {
+            /* The added byte has zero frequency, so it goes first */
+            sortKeys[1] = sortKeys[0];
+            sortKeys[0] = (sortKeys[1] ^ 1) & 0xff;
+            leavesAmount = 2;
+        }
+        for (int leaf = 0; leaf < leavesAmount; leaf++) {
+            int symbol = (int) (sortKeys[leaf] & 0xff);
+            weights[leaf] = frequencies[symbol];
+            symbols[leaf] = (short) symbol;
+        }
+        nodesAmount = 2 * leavesAmount - 1;
+        /* Heads of the queue of leaves and of the queue of merged nodes */
+        int leaf = 0;
+        int merged = leavesAmount;
+        for (int node = leavesAmount; node < nodesAmount; node++) {
+            int first = leaf < leavesAmount && (merged == node || weights[leaf] <= weights[merged]) ?
+                    leaf++ : merged++;
+            int second = leaf < leavesAmount && (merged == node || weights[leaf] <= weights[merged]) ?
+                    leaf++ : merged++;
+            weights[node] = weights[first] + weights[second];
+            symbols[node] = -1;
+            link(node, first, second);
+        }
+    }
+
+    /**
+     * Unpacks the tree of the legacy archive header: the shape is the preorder walk of the tree,
+     * where bit 1 is a node and bit 0 is a leaf, and leaves get the byte values in the same order.
+     * A tree deeper than MAX_CODE_LENGTH is rejected, its codes would not fit the decoder
+     *
+     * @param shape      Bits of the shape from the highest bit of the first byte
+     * @param shapeBits  Amount of bits of the shape
+     * @param leaves     Byte values of the leaves
+     */
+    public void unpack(byte[] shape, int shapeBits, byte[] leaves) throws IOException {
+        if (shapeBits > MAX_NODES || shapeBits > shape.length * Byte.SIZE) {
+            throw new IOException("Corrupted archive header");
+        }
+        nodesAmount = shapeBits;
+        /* The preorder walk visits a parent before its children, so nodes are numbered from the end */
+        int openNodesAmount = 0;
+        int leaf = 0;
+        for (int i = 0; i < shapeBits; i++) {
+            int node = nodesAmount - 1 - i;
+            depths[node] = 0;
+            if (i > 0) {
+                if (openNodesAmount == 0) {
+                    throw new IOException("Corrupted archive header");
+                }
+                int parent = openNodes[openNodesAmount - 1];
+                int side = children[2 * parent + GO_LEFT_BIT] == -1 ? GO_LEFT_BIT : GO_RIGHT_BIT;
+                if (side == GO_RIGHT_BIT) {
+                    openNodesAmount--;
+                }
+                children[2 * parent + side] = (short) node;
+                parents[node] = (short) parent;
+                depths[node] = depths[parent] + 1;
+                if (depths[node] > MAX_CODE_LENGTH) {
+                    throw new IOException("Corrupted archive header");
+                }
+            }
+            if ((shape[i / Byte.SIZE] >> (Byte.SIZE - 1 - i % Byte.SIZE) & 1) == 1) {
+                if (openNodesAmount == openNodes.length) {
+                    throw new IOException("Corrupted archive header");
+                }
+                symbols[node] = -1;
+                children[2 * node + GO_LEFT_BIT] = -1;
+                openNodes[openNodesAmount++] = (short) node;
+            } else {
+                if (leaf == leaves.length) {
+                    throw new IOException("Corrupted archive header");
+                }
+                symbols[node] = (short) (leaves[leaf++] & 0xff);
+            }
+        }
+        if (openNodesAmount != 0 || leaf != leaves.length) {
+            throw new IOException("Corrupted archive header");
+        }
+    }
+
+    /**
+     * Gets the code lengths of the bytes, which are depths of their leaves
+     *
+     * @param lengths Array to put the code lengths to, 0 if a byte has no code
+     */
+    public void getCodeLengths(int[] lengths) {
+        Arrays.fill(lengths, 0);
+        walk();
+        for (int node = 0; node < nodesAmount; node++) {
+            if (symbols[node] >= 0) {
+                lengths[symbols[node]] = depths[node];
+            }
+        }
+    }
+
+    /**
+     * Gets the codes of the bytes, which are paths from the root to their leaves.
+     * Codes of a built tree longer than 64 bits keep their lowest bits only
+     *
+     * @param codes   Array to put the codes to
+     * @param lengths Array to put the code lengths to, 0 if a byte has no code
+     */
+    public void getCodes(long[] codes, int[] lengths) {
+        Arrays.fill(codes, 0);
+        getCodeLengths(lengths);
+        for (int node = 0; node < nodesAmount; node++) {
+            if (symbols[node] >= 0) {
+                codes[symbols[node]] = paths[node];
+            }
+        }
+    }
+
+    /** Gets the depths and the paths of all the nodes from the root down */
+    private void walk() {
+        int root = nodesAmount - 1;
+        depths[root] = 0;
+        paths[root] = 0;
+        /* Every parent goes after its children, so it is already walked */
+        for (int node = root - 1; node >= 0; node--) {
+            int parent = parents[node];
+            int side = children[2 * parent + GO_RIGHT_BIT] == node ? GO_RIGHT_BIT : GO_LEFT_BIT;
+            depths[node] = depths[parent] + 1;
+            paths[node] = paths[parent] << 1 | side;
+        }
+    }
+
+    /** Makes the nodes the left and the right children of the parent */
+    private void link(int parent, int left, int right) {
+        children[2 * parent + GO_LEFT_BIT] = (short) left;
+        children[2 * parent + GO_RIGHT_BIT] = (short) right;
+        parents[left] = (short) parent;
+        parents[right] = (short) parent;
+    }
+
+    /**
+     * Sorts the present bytes from the rarest one, bytes of the same frequency in the order of their values.
+     * A byte is sorted as a key of its frequency and its value, so no objects are sorted.
+     * Frequencies which don't fit a key beside the value are sorted by their highest bits
+     *
+     * @param frequencies Frequencies of bytes indexed by the unsigned byte value
+     * @param keys        Array of at least 256 keys to put the sorted keys to, the lowest byte of a key is the byte value
+     * @return            Amount of present bytes
+     */
+    public static int sortSymbols(long[] frequencies, long[] keys) {
+        long maxFrequency = 0;
+        for (long frequency : frequencies) {
+            maxFrequency = Math.max(maxFrequency, frequency);
+        }
+        int shift = Math.max(0, SYMBOL_BITS + 1 - Long.numberOfLeadingZeros(maxFrequency));
+        int symbolsAmount = 0;
+        for (int symbol = 0; symbol < frequencies.length; symbol++) {
+            if (frequencies[symbol] != 0) {
+                keys[symbolsAmount++] = (frequencies[symbol] >>> shift) << SYMBOL_BITS | symbol;
+            }
+        }
+        Arrays.sort(keys, 0, symbolsAmount);
+        return symbolsAmount;
+    }
+}
@@ -0,0 +1,29 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of one phase of archiving or unArchiving.
+ * Events are created only while a recording has them enabled, like
+ * "java -XX:StartFlightRecording:filename=archiver.jfr ...", see {@link ProcessMetrics}.
+ */
+@Name("com.shpp.p2p.cs.ekondratiuk.assignment15.Phase")
+@Label("Archiver Phase")
+@Category("Archiver")
+@Description("Phase of archiving or unArchiving: frequencies, tree, codes, encoding, decoding or I/O")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Bytes")
+    @Description("Amount of bytes processed by the phase")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,182 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Input stream whose data is read from the channel ahead by its own reader thread,
+ * so decoding goes on while the next data is read.
+ * The reader fills large pooled buffers and hands them by the queue of filled buffers,
+ * a buffer read to its end goes back to the reader by the queue of free ones.
+ * The reader runs ahead at most by the pool size. A failure of the reader is thrown after the read data.
+ */
+public class PipelinedInputStream extends InputStream {
+    /** Marker of the end of the data in the queue of filled buffers */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Channel to read from */
+    private final ReadableByteChannel channel;
+
+    /** Buffers handed by the reader */
+    private final SpscQueue<ByteBuffer> filledBuffers;
+
+    /** Buffers returned to the reader */
+    private final SpscQueue<ByteBuffer> freeBuffers;
+
+    /** The reader thread */
+    private final Thread reader;
+
+    /** Metrics where reads from the channel are measured */
+    private final ProcessMetrics metrics;
+
+    /** Buffer which is being read, END after the end of the data */
+    private ByteBuffer current;
+
+    /** Failure of the reader */
+    private volatile IOException failure;
+
+    /** True after closing */
+    private volatile boolean closed;
+
+    /**
+     * Starts the reader thread
+     *
+     * @param channel    Channel to read from, it is closed by closing the stream
+     * @param bufferSize Size of pooled buffers
+     * @param buffers    Amount of pooled buffers, at least 2
+     * @param metrics    Metrics where reads from the channel are measured as the read phase
+     */
+    public PipelinedInputStream(ReadableByteChannel channel, int bufferSize, int buffers, ProcessMetrics metrics)
+            throws IOException {
+        if (buffers < 2) {
+            throw new IllegalArgumentException("A pipeline needs at least 2 buffers");
+        }
+        this.channel = channel;
+        this.metrics = metrics;
+        /* The end marker takes a place in the queue of filled buffers too */
+        this.filledBuffers = new SpscQueue<>(buffers + 1);
+        this.freeBuffers = new SpscQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            freeBuffers.put(ByteBuffer.allocate(bufferSize));
+        }
+        this.reader = new Thread(this::readBuffers, "pipeline-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBuffer()) {
+            return -1;
+        }
+        return current.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBuffer()) {
+            return -1;
+        }
+        int bytes = Math.min(len, current.remaining());
+        current.get(b, off, bytes);
+        return bytes;
+    }
+
+    /**
+     * Makes the current buffer have bytes: a buffer read to its end goes back to the reader
+     * and the next filled one is taken
+     *
+     * @return False at the end of the data
+     */
+    private boolean nextBuffer() throws IOException {
+        if (current != null && current.hasRemaining()) {
+            return true;
+        }
+        if (current == END) {
+            return false;
+        }
+        try {
+            if (current != null) {
+                freeBuffers.put(current);
+            }
+            current = filledBuffers.take();
+        } catch (IOException exception) {
+            throw failure != null ? failure : exception;
+        }
+        if (current == END) {
+            if (failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /** Fills free buffers from the channel until its end, then puts the end marker */
+    private void readBuffers() {
+        try {
+            while (true) {
+                ByteBuffer buffer = freeBuffers.take();
+                buffer.clear();
+                ProcessMetrics.Span span = metrics.begin(ProcessMetrics.Phase.READ);
+                int bytes = 0;
+                while (buffer.hasRemaining() && bytes != -1) {
+                    bytes = channel.read(buffer);
+                }
+                buffer.flip();
+                span.end(buffer.remaining());
+                if (buffer.hasRemaining()) {
+                    filledBuffers.put(buffer);
+                }
+                if (bytes == -1) {
+                    break;
+                }
+            }
+        } catch (IOException exception) {
+            fail(exception);
+        } catch (Throwable exception) {
+            /* Any failure of the reader fails the stream, so the decoding thread doesn't wait for it forever */
+            fail(new IOException(exception));
+        } finally {
+            /* The end marker always has a place: the queue holds all the buffers and the marker */
+            filledBuffers.offer(END);
+        }
+    }
+
+    /**
+     * Keeps the failure of the reader and stops waits of both threads.
+     * Buffers filled before it are still taken, the failure is thrown at the end marker
+     */
+    private void fail(IOException exception) {
+        if (!closed) {
+            failure = exception;
+        }
+        filledBuffers.cancel();
+        freeBuffers.cancel();
+    }
+
+    /** Stops the reader and closes the channel */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        filledBuffers.cancel();
+        freeBuffers.cancel();
+        try {
+            reader.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading was interrupted");
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream whose data is written to the channel by its own writer thread,
+ * so coding goes on while the previous data is written.
+ * Written bytes are collected in large pooled buffers. A full buffer is handed to the writer
+ * by the queue of filled buffers, and the writer returns it by the queue of free ones.
+ * The writer falls behind at most by the pool size: then the coding thread waits for a free buffer.
+ * A failure of the writer, whatever it is, is thrown once: by the next write or by closing.
+ */
+public class PipelinedOutputStream extends OutputStream {
+    /** Marker of the end of the data in the queue of filled buffers */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /** Channel to write to */
+    private final WritableByteChannel channel;
+
+    /** Buffers handed to the writer */
+    private final SpscQueue<ByteBuffer> filledBuffers;
+
+    /** Buffers returned by the writer */
+    private final SpscQueue<ByteBuffer> freeBuffers;
+
+    /** The writer thread */
+    private final Thread writer;
+
+    /** Metrics where writes to the channel are measured */
+    private final ProcessMetrics metrics;
+
+    /** Buffer which is being filled */
+    private ByteBuffer current;
+
+    /** Failure of the writer */
+    private volatile IOException failure;
+
+    /** True after the failure is thrown, so closing doesn't throw it again */
+    private boolean failureThrown;
+
+    /** True after closing */
+    private boolean closed;
+
+    /**
+     * Starts the writer thread
+     *
+     * @param channel    Channel to write to, it is closed by closing the stream
+     * @param bufferSize Size of pooled buffers
+     * @param buffers    Amount of pooled buffers, at least 2
+     * @param metrics    Metrics where writes to the channel are measured as the write phase
+     */
+    public PipelinedOutputStream(WritableByteChannel channel, int bufferSize, int buffers, ProcessMetrics metrics)
+            throws IOException {
+        if (buffers < 2) {
+            throw new IllegalArgumentException("A pipeline needs at least 2 buffers");
+        }
+        this.channel = channel;
+        this.metrics = metrics;
+        /* The end marker takes a place in the queue of filled buffers too */
+        this.filledBuffers = new SpscQueue<>(buffers + 1);
+        this.freeBuffers = new SpscQueue<>(buffers);
+        this.current = ByteBuffer.allocate(bufferSize);
+        for (int i = 1; i < buffers; i++) {
+            freeBuffers.put(ByteBuffer.allocate(bufferSize));
+        }
+        this.writer = new Thread(this::writeBuffers, "pipeline-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!current.hasRemaining()) {
+            handOver();
+        }
+        current.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!current.hasRemaining()) {
+                handOver();
+            }
+            int bytes = Math.min(len, current.remaining());
+            current.put(b, off, bytes);
+            off += bytes;
+            len -= bytes;
+        }
+    }
+
+    /** Hands the collected bytes to the writer without waiting for them to be written */
+    @Override
+    public void flush() throws IOException {
+        if (current.position() > 0) {
+            handOver();
+        }
+    }
+
+    /** Hands the current buffer to the writer and takes a free one */
+    private void handOver() throws IOException {
+        try {
+            current.flip();
+            filledBuffers.put(current);
+            current = freeBuffers.take();
+            current.clear();
+        } catch (IOException exception) {
+            if (failure == null) {
+                throw exception;
+            }
+            failureThrown = true;
+            throw failure;
+        }
+    }
+
+    /** Writes filled buffers to the channel until the end marker, then returns them to the pool */
+    private void writeBuffers() {
+        try {
+            ByteBuffer buffer;
+            while ((buffer = filledBuffers.take()) != END) {
+                ProcessMetrics.Span span = metrics.begin(ProcessMetrics.Phase.WRITE);
+                int bytesToWrite = buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                span.end(bytesToWrite);
+                freeBuffers.put(buffer);
+            }
+        } catch (IOException exception) {
+            fail(exception);
+        } catch (Throwable exception) {
+            /* Any failure of the writer fails the stream, so the coding thread doesn't wait for it forever */
+            fail(new IOException(exception));
+        }
+    }
+
+    /** Keeps the failure of the writer and stops waits of both threads */
+    private void fail(IOException exception) {
+        failure = exception;
+        filledBuffers.cancel();
+        freeBuffers.cancel();
+    }
+
+    /** Hands the rest of the data to the writer, waits until everything is written and closes the channel */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            current.flip();
+            if (current.hasRemaining()) {
+                filledBuffers.put(current);
+            }
+            filledBuffers.put(END);
+            writer.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            filledBuffers.cancel();
+            throw new InterruptedIOException("Writing was interrupted");
+        } catch (IOException exception) {
+            if (failure == null) {
+                throw exception;
+            }
+        } finally {
+            channel.close();
+        }
+        if (failure != null && !failureThrown) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import jdk.jfr.EventType;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of archiving or unArchiving: time, calls and bytes of every phase, bytes in and out of the process.
+ * A phase is measured by a span: {@code Span span = metrics.begin(Phase.ENCODE); ... span.end(bytes);}.
+ * Spans of parallel blocks are summed, so phases of several threads may take more time than the whole process.
+ * Every span is also a {@link PhaseEvent} of Flight Recorder while a recording has the event enabled.
+ * Disabled metrics without a recording give a shared span which does nothing, so the overhead is one check per phase.
+ * Sizes of every processed file are added, so metrics shared by a batch of files sum the sizes of all its files.
+ */
+public class ProcessMetrics {
+    /** Metrics which are not collected. Flight Recorder events are emitted anyway */
+    public static final ProcessMetrics DISABLED = new ProcessMetrics(false);
+
+    /** Type of Flight Recorder events of phases */
+    private static final EventType EVENT_TYPE = EventType.getEventType(PhaseEvent.class);
+
+    /** Bytes in a megabyte for throughput */
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    /** Nanoseconds in a millisecond */
+    private static final double NANOS_IN_MILLISECOND = 1e6;
+
+    /** Span which measures nothing */
+    private static final Span NO_SPAN = new Span(null, null, null);
+
+    /** Phases of archiving and unArchiving. Names are the names of the methods which did the phase originally */
+    public enum Phase {
+        /** The whole archiving or unArchiving */
+        TOTAL("total"),
+        /** Counting of byte frequencies */
+        FREQUENCIES("getFrequencies"),
+        /** Building of the Huffman tree */
+        TREE("getHuffmanTree"),
+        /** Building of codes by the tree, or restoring of codes from the archive */
+        CODES("buildCodingTable"),
+        /** Coding of the data */
+        ENCODE("ProcessFile"),
+        /** Decoding of the data */
+        DECODE("processFile"),
+        /** Calculating or checking of checksums of blocks */
+        CHECKSUM("checksum"),
+        /** Reading of the data which is not memory-mapped */
+        READ("read"),
+        /** Writing of the result */
+        WRITE("write");
+
+        /** Name of the phase in reports */
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /** True if metrics are collected */
+    private final boolean enabled;
+
+    /** Time of phases in nanoseconds indexed by the phase ordinal */
+    private final LongAdder[] nanos = new LongAdder[Phase.values().length];
+
+    /** Amount of spans of phases */
+    private final LongAdder[] calls = new LongAdder[Phase.values().length];
+
+    /** Bytes processed by phases */
+    private final LongAdder[] bytes = new LongAdder[Phase.values().length];
+
+    /** Name of the measured operation, like "archive" */
+    private volatile String operation = "";
+
+    /** Size of the process input */
+    private final LongAdder bytesIn = new LongAdder();
+
+    /** Size of the process output */
+    private final LongAdder bytesOut = new LongAdder();
+
+    /** Amount of original bytes, which are symbols of the Huffman codes */
+    private final LongAdder symbols = new LongAdder();
+
+    /** Size of the archive */
+    private final LongAdder compressedSize = new LongAdder();
+
+    /** Collected metrics */
+    public ProcessMetrics() {
+        this(true);
+    }
+
+    private ProcessMetrics(boolean enabled) {
+        this.enabled = enabled;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+            calls[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+        }
+    }
+
+    /** Measurement of one phase */
+    public static class Span {
+        /** Metrics of the span, null for the span which measures nothing */
+        private final ProcessMetrics metrics;
+
+        private final Phase phase;
+
+        /** Flight Recorder event of the span or null if the event is not recorded */
+        private final PhaseEvent event;
+
+        /** Start time in nanoseconds */
+        private final long start;
+
+        private Span(ProcessMetrics metrics, Phase phase, PhaseEvent event) {
+            this.metrics = metrics;
+            this.phase = phase;
+            this.event = event;
+            if (event != null) {
+                event.begin();
+            }
+            start = metrics != null && metrics.enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Ends the span
+         *
+         * @param processedBytes Amount of bytes processed by the phase
+         */
+        public void end(long processedBytes) {
+            if (metrics == null) {
+                return;
+            }
+            if (metrics.enabled) {
+                int index = phase.ordinal();
+                metrics.nanos[index].add(System.nanoTime() - start);
+                metrics.calls[index].increment();
+                metrics.bytes[index].add(processedBytes);
+            }
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.phase = phase.getName();
+                    event.bytes = processedBytes;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /** Begins the span of the phase */
+    public Span begin(Phase phase) {
+        boolean recorded = EVENT_TYPE.isEnabled();
+        if (!enabled && !recorded) {
+            return NO_SPAN;
+        }
+        return new Span(this, phase, recorded ? new PhaseEvent() : null);
+    }
+
+    /**
+     * Adds sizes of one processed file or stream to the sizes of the process
+     *
+     * @param operation      Name of the operation, like "archive"
+     * @param originalSize   Size of the original data
+     * @param compressedSize Size of the archive
+     * @param archiving      True if the original data is the input, false if it is the output
+     */
+    public void addSizes(String operation, long originalSize, long compressedSize, boolean archiving) {
+        if (enabled) {
+            this.operation = operation;
+            this.symbols.add(originalSize);
+            this.compressedSize.add(compressedSize);
+            this.bytesIn.add(archiving ? originalSize : compressedSize);
+            this.bytesOut.add(archiving ? compressedSize : originalSize);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Gets the time of the phase in nanoseconds */
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    /** Gets the amount of bytes processed by the phase */
+    public long getBytes(Phase phase) {
+        return bytes[phase.ordinal()].sum();
+    }
+
+    /** Gets the amount of spans of the phase */
+    public long getCalls(Phase phase) {
+        return calls[phase.ordinal()].sum();
+    }
+
+    /** Gets the average length of a code in bits: compressed bits per original byte */
+    public double getBitsPerSymbol() {
+        long symbols = this.symbols.sum();
+        return symbols == 0 ? 0 : compressedSize.sum() * (double) Byte.SIZE / symbols;
+    }
+
+    /** Gets the throughput of the phase in megabytes of processed bytes per second */
+    public double getThroughput(Phase phase) {
+        long phaseNanos = getNanos(phase);
+        long phaseBytes = phase == Phase.TOTAL ? symbols.sum() : getBytes(phase);
+        return phaseNanos == 0 ? 0 : phaseBytes / BYTES_IN_MEGABYTE / (phaseNanos / 1e9);
+    }
+
+    /** Prints the metrics as a table */
+    public void print(PrintStream out) {
+        out.println(String.format(Locale.ROOT, "%-17s %12s %8s %16s %10s", "Phase", "Time, ms", "Calls", "Bytes", "MB/s"));
+        for (Phase phase : Phase.values()) {
+            if (getCalls(phase) > 0) {
+                out.println(String.format(Locale.ROOT, "%-17s %12.3f %8d %,16d %10.1f", phase.getName(),
+                        getNanos(phase) / NANOS_IN_MILLISECOND, getCalls(phase),
+                        phase == Phase.TOTAL ? symbols.sum() : getBytes(phase), getThroughput(phase)));
+            }
+        }
+        out.println("Bytes in..............: " + String.format("%,dB", bytesIn.sum()));
+        out.println("Bytes out.............: " + String.format("%,dB", bytesOut.sum()));
+        out.println("Bits per symbol.......: " + String.format(Locale.ROOT, "%.3f", getBitsPerSymbol()));
+    }
+
+    /** Prints the metrics as one JSON object */
+    public void printJson(PrintStream out) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"operation\":\"").append(operation).append('"')
+                .append(",\"bytesIn\":").append(bytesIn.sum())
+                .append(",\"bytesOut\":").append(bytesOut.sum())
+                .append(",\"symbols\":").append(symbols.sum())
+                .append(String.format(Locale.ROOT, ",\"bitsPerSymbol\":%.4f", getBitsPerSymbol()))
+                .append(",\"phases\":{");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            if (getCalls(phase) > 0) {
+                json.append(first ? "" : ",").append('"').append(phase.getName()).append("\":{")
+                        .append("\"nanos\":").append(getNanos(phase))
+                        .append(",\"calls\":").append(getCalls(phase))
+                        .append(",\"bytes\":").append(phase == Phase.TOTAL ? symbols.sum() : getBytes(phase))
+                        .append(String.format(Locale.ROOT, ",\"mbPerSecond\":%.2f", getThroughput(phase)))
+                        .append('}');
+                first = false;
+            }
+        }
+        out.println(json.append("}}"));
+    }
+}
@@ -0,0 +1,163 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free queue of one producer thread and one consumer thread, which hands buffers
+ * between stages of a pipeline. Elements are kept in a ring, the producer moves only the tail
+ * and the consumer moves only the head, so neither of them takes a lock.
+ * A full queue makes the producer wait and an empty one makes the consumer wait: they spin for a while,
+ * then park until the other thread unparks them by the next put or take, so an idle stage doesn't take the processor.
+ * A cancelled queue stops both waits, so a failed stage doesn't hang the other one.
+ *
+ * @param <E> Type of elements
+ */
+public class SpscQueue<E> {
+    /** Amount of spins before the waiting thread starts to park */
+    private static final int SPINS = 100;
+
+    /** Maximal time of one park of the waiting thread, it is usually unparked earlier */
+    private static final long PARK_NANOS = 1_000_000;
+
+    /** Ring of elements, its length is a power of two */
+    private final Object[] elements;
+
+    /** Mask of the index in the ring */
+    private final int mask;
+
+    /** Amount of taken elements, it is changed only by the consumer */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Amount of put elements, it is changed only by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /** The producer parked while the queue is full, null if it doesn't wait */
+    private volatile Thread waitingProducer;
+
+    /** The consumer parked while the queue is empty, null if it doesn't wait */
+    private volatile Thread waitingConsumer;
+
+    /** True if waits must stop */
+    private volatile boolean cancelled;
+
+    /**
+     * Queue of the specified capacity
+     *
+     * @param capacity Maximal amount of elements, it is rounded up to a power of two
+     */
+    public SpscQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Queue capacity must be from 1 to 2^30");
+        }
+        int length = Integer.highestOneBit(capacity);
+        if (length < capacity) {
+            length <<= 1;
+        }
+        this.elements = new Object[length];
+        this.mask = length - 1;
+    }
+
+    /**
+     * Puts the element if the queue is not full. Called only by the producer
+     *
+     * @return False if the queue is full
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        if (position - head.get() == elements.length) {
+            return false;
+        }
+        elements[(int) position & mask] = element;
+        /* The element is published by the volatile write of the tail, which is ordered before the check of the waiter */
+        tail.set(position + 1);
+        unpark(waitingConsumer);
+        return true;
+    }
+
+    /**
+     * Takes the element if the queue is not empty. Called only by the consumer
+     *
+     * @return The element or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        if (position == tail.get()) {
+            return null;
+        }
+        int index = (int) position & mask;
+        E element = (E) elements[index];
+        elements[index] = null;
+        head.set(position + 1);
+        unpark(waitingProducer);
+        return element;
+    }
+
+    /** Puts the element, waiting while the queue is full. Called only by the producer */
+    public void put(E element) throws IOException {
+        for (int attempt = 0; !offer(element); attempt++) {
+            checkCancelled();
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            /* The queue is checked again after the registration, so a take between them is not missed */
+            waitingProducer = Thread.currentThread();
+            if (tail.get() - head.get() == elements.length) {
+                park();
+            }
+            waitingProducer = null;
+        }
+    }
+
+    /** Takes the element, waiting while the queue is empty. Called only by the consumer */
+    public E take() throws IOException {
+        E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            checkCancelled();
+            if (attempt < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            /* The queue is checked again after the registration, so a put between them is not missed */
+            waitingConsumer = Thread.currentThread();
+            if (head.get() == tail.get()) {
+                park();
+            }
+            waitingConsumer = null;
+        }
+        return element;
+    }
+
+    /** Stops the current and the next waits of both threads */
+    public void cancel() {
+        cancelled = true;
+        unpark(waitingProducer);
+        unpark(waitingConsumer);
+    }
+
+    /** Throws if the queue is cancelled */
+    private void checkCancelled() throws IOException {
+        if (cancelled) {
+            throw new IOException("The pipeline was cancelled");
+        }
+    }
+
+    /** Parks the current thread until it is unparked or the time of one park passes */
+    private void park() throws IOException {
+        LockSupport.parkNanos(this, PARK_NANOS);
+        if (Thread.interrupted()) {
+            throw new InterruptedIOException("The pipeline was interrupted");
+        }
+    }
+
+    /** Unparks the waiting thread if it is */
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
 
 /**
  * Auxiliary class with separate methods to help of
@@ -11,9 +21,43 @@ import java.nio.file.Paths;
 public class Tools {
 
     public static boolean checkArgs(String[] args) {
+        /* The batch mode needs the direction and at least one source */
+        if (args.length > 0 && args[0].equals(BATCH_FLAG)) {
+            if (args.length < 3 || !(args[1].equals("-a") || args[1].equals("-u"))) {
+                throw new IllegalArgumentException("Wrong argument(s) Syntax");
+            }
+            return true;
+        }
+        /* Training needs the dictionary and at least one sample */
+        if (args.length > 0 && args[0].equals(TRAIN_FLAG)) {
+            if (args.length < 3) {
+                throw new IllegalArgumentException("Wrong argument(s) Syntax");
+            }
+            return true;
+        }
+        /* The daemon needs only its address */
+        if (args.length > 0 && args[0].equals(SERVE_FLAG)) {
+            if (args.length != 2) {
+                throw new IllegalArgumentException("Wrong argument(s) Syntax");
+            }
+            return true;
+        }
         if (args.length > 3) {
             throw new IllegalArgumentException("Too many arguments");
         }
+        /* Listing and testing need the archive, extracting needs the archive and the entry name */
+        if (args.length > 0 && (args[0].equals(LIST_FLAG) || args[0].equals(TEST_FLAG))) {
+            if (args.length != 2 || !isAllowedFileName(args[1]) || isStandardStream(args[1])) {
+                throw new IllegalArgumentException("Wrong argument(s) Syntax");
+            }
+            return true;
+        }
+        if (args.length > 0 && args[0].equals(EXTRACT_FLAG)) {
+            if (args.length != 3 || !isAllowedFileName(args[1]) || isStandardStream(args[1])) {
+                throw new IllegalArgumentException("Wrong argument(s) Syntax");
+            }
+            return true;
+        }
         if (args.length == 3 && !("-a, -u".contains(args[0])) ||
                 (args.length == 3 && (!isAllowedFileName(args[1]) || !isAllowedFileName(args[2]))) ||
                 (args.length == 1 && !isAllowedFileName(args[0]) && !("-a, -u".contains(args[0])))
@@ -45,13 +89,107 @@ public class Tools {
         return true;
     }
 
+    /**
+     * Removes the option with its value from the arguments
+     *
+     * @param args   Program arguments
+     * @param option The option name, like "-b"
+     * @return       The option value or null if the option is not specified
+     */
+    public static String extractOption(List<String> args, String option) {
+        int pos = args.indexOf(option);
+        if (pos == -1) {
+            return null;
+        }
+        if (pos == args.size() - 1) {
+            throw new IllegalArgumentException("Specify the value of the " + option + " option");
+        }
+        args.remove(pos);
+        return args.remove(pos);
+    }
+
+    /**
+     * Parses a positive size like 1048576, 512K or 4M
+     */
+    public static int parseSize(String value) {
+        long size = parseLongSize(value);
+        if (size <= 0 || size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Wrong size: " + value);
+        }
+        return (int) size;
+    }
+
+    /**
+     * Parses a range "offset:length" of sizes like 1048576, 512K or 4M
+     *
+     * @return The offset and the length
+     */
+    public static long[] parseRange(String value) {
+        int pos = value.indexOf(':');
+        if (pos == -1) {
+            throw new IllegalArgumentException("Wrong range: " + value + ". Specify it as offset:length");
+        }
+        return new long[] {parseLongSize(value.substring(0, pos)), parseLongSize(value.substring(pos + 1))};
+    }
+
+    /**
+     * Parses the address of the daemon: a port number means the port of the local host,
+     * anything else is the path of a Unix domain socket.
+     * The daemon is never reachable from other hosts, because its requests name files of this one
+     */
+    public static SocketAddress parseDaemonAddress(String value) {
+        if (value.matches("[0-9]+")) {
+            int port = value.length() <= 5 ? Integer.parseInt(value) : 0;
+            if (port == 0 || port > 65535) {
+                throw new IllegalArgumentException("Wrong port: " + value);
+            }
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        }
+        return UnixDomainSocketAddress.of(value);
+    }
+
+    /**
+     * Parses a not negative size like 1048576, 512K, 4M or 2G
+     */
+    public static long parseLongSize(String value) {
+        long multiplier = 1;
+        String number = value;
+        if (value.endsWith("K") || value.endsWith("k")) {
+            multiplier = 1024;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("M") || value.endsWith("m")) {
+            multiplier = 1024 * 1024;
+            number = value.substring(0, value.length() - 1);
+        } else if (value.endsWith("G") || value.endsWith("g")) {
+            multiplier = 1024L * 1024 * 1024;
+            number = value.substring(0, value.length() - 1);
+        }
+        try {
+            long size = Math.multiplyExact(Long.parseLong(number), multiplier);
+            if (size < 0) {
+                throw new NumberFormatException();
+            }
+            return size;
+        } catch (NumberFormatException | ArithmeticException exception) {
+            throw new IllegalArgumentException("Wrong size: " + value);
+        }
+    }
+
     /**
      * Checks if the specified string is correct file name
      * Correct name may content alphabet russian and english symbols
      * in both low and upper cases with numbers and points.
+     * "-" is allowed as the standard input or output
      */
     private static boolean isAllowedFileName(String s) {
-        return s.matches("^[а-яА-ЯёЁa-zA-Z0-9.]*\\.?[a-zA-Z]*$");
+        return isStandardStream(s) || s.matches("^[а-яА-ЯёЁa-zA-Z0-9.]*\\.?[a-zA-Z]*$");
+    }
+
+    /**
+     * Checks if the source or target name means the standard input or output
+     */
+    public static boolean isStandardStream(String s) {
+        return STANDARD_STREAM_NAME.equals(s);
     }
 
     /**
@@ -61,6 +199,36 @@ public class Tools {
         return Files.size(Paths.get(file));
     }
 
+    /**
+     * Checks if the data is read or written by its own thread while it is coded.
+     * It pays off for large data only, and only if the thread has a processor of its own
+     *
+     * @param size Size of the data
+     */
+    public static boolean isPipelined(long size) {
+        return size >= MIN_PIPELINED_SIZE && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * Opens the file for writing from its beginning. Large data is written by its own thread
+     * while the next data is coded, see {@link #isPipelined(long)}, other data is written by the calling thread
+     *
+     * @param file         The file
+     * @param expectedSize Expected size of the data
+     * @param metrics      Metrics where writes are measured
+     */
+    public static OutputStream openFileOutput(String file, long expectedSize, ProcessMetrics metrics)
+            throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(file),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (isPipelined(expectedSize)) {
+            return new PipelinedOutputStream(channel, PIPELINE_BUFFER_SIZE, PIPELINE_BUFFERS, metrics);
+        }
+        ChannelOutputStream out = new ChannelOutputStream(channel);
+        out.setMetrics(metrics);
+        return out;
+    }
+
     /**
      * Gets specified file's name without its last extension
      * A file may contain more than one extension in its name
@@ -78,5 +246,4 @@ public class Tools {
     public static boolean fileHasParExtension(String arg) {
         return arg.matches("[а-яА-ЯёЁa-zA-Z0-9.]+\\.par");
     }
-
 }
@@ -0,0 +1,307 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+class ArchiverTest {
+    @TempDir
+    Path directory;
+
+    /** Formats of single files with the archivers which write them */
+    enum Format {
+        CANONICAL(CANONICAL_FORMAT_VERSION),
+        BLOCKS(TAGGED_BLOCK_FORMAT_VERSION),
+        INTERLEAVED_BLOCKS(TAGGED_BLOCK_FORMAT_VERSION),
+        DICTIONARY(DICTIONARY_FORMAT_VERSION),
+        CONTEXT_MODEL(CONTEXT_FORMAT_VERSION);
+
+        /** Format version of the archives */
+        private final int version;
+
+        Format(int version) {
+            this.version = version;
+        }
+
+        private Archiver createArchiver() throws IOException {
+            switch (this) {
+                case BLOCKS:
+                    return createBlockArchiver();
+                case INTERLEAVED_BLOCKS:
+                    return createInterleavedArchiver();
+                case DICTIONARY:
+                    return createDictionaryArchiver();
+                case CONTEXT_MODEL:
+                    return createContextArchiver();
+                default:
+                    return new Archiver();
+            }
+        }
+    }
+
+    /** Files of edge cases archived by every format */
+    static Stream<Arguments> filesOfFormats() {
+        return Stream.of(Format.values()).flatMap(format -> Stream.of(
+                Arguments.of(format, "empty file", new byte[0]),
+                Arguments.of(format, "single byte", new byte[]{'a'}),
+                /* Files smaller than a block keep the canonical format, bytes absent in samples have codes too */
+                Arguments.of(format, "incompressible file", makeRandom(MIN_BLOCK_SIZE - 1)),
+                Arguments.of(format, "file larger than buffers", makeText(3 * BIT_READER_BUFFER_SIZE + 1))));
+    }
+
+    @ParameterizedTest(name = "{0}: {1}")
+    @MethodSource("filesOfFormats")
+    void roundTripsFileOfFormat(Format format, String name, byte[] data) throws IOException {
+        assertRoundTrip(format.createArchiver(), data, format.version);
+    }
+
+    @Test
+    void roundTripsManyBlocksOfOneStream() throws IOException {
+        /* The last block is shorter than the others */
+        Path archive = assertRoundTrip(createBlockArchiver(), makeText(5 * MIN_BLOCK_SIZE + 17),
+                TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(HUFFMAN_BLOCK_MODE, getBlockModes(archive).get(0));
+    }
+
+    @Test
+    void roundTripsManyInterleavedBlocks() throws IOException {
+        /* The last block is not divisible into four equal parts */
+        Path archive = assertRoundTrip(createInterleavedArchiver(), makeText(5 * MIN_BLOCK_SIZE + 17),
+                TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(INTERLEAVED_BLOCK_MODE, getBlockModes(archive).get(0));
+    }
+
+    @Test
+    void reusesBlocksOfArchiverFromFileToFile() throws IOException {
+        for (int threads : new int[]{1, 2}) {
+            Archiver archiver = new Archiver();
+            archiver.setThreads(threads);
+            archiver.setBlockSize(MIN_BLOCK_SIZE);
+            assertRoundTrip(archiver, makeText(5 * MIN_BLOCK_SIZE + 17), TAGGED_BLOCK_FORMAT_VERSION);
+            assertRoundTrip(archiver, makeRandom(2 * MIN_BLOCK_SIZE), TAGGED_BLOCK_FORMAT_VERSION);
+            archiver.setStreams(INTERLEAVED_STREAMS);
+            Path archive = assertRoundTrip(archiver, makeText(3 * MIN_BLOCK_SIZE), TAGGED_BLOCK_FORMAT_VERSION);
+            assertEquals(INTERLEAVED_BLOCK_MODE, getBlockModes(archive).get(0));
+            archiver.setBlockSize(2 * MIN_BLOCK_SIZE);
+            assertRoundTrip(archiver, makeText(3 * MIN_BLOCK_SIZE + 1), TAGGED_BLOCK_FORMAT_VERSION);
+            /* Files of the canonical format share the bits writer */
+            archiver.setBlockSize(0);
+            assertRoundTrip(archiver, makeText(MIN_BLOCK_SIZE), CANONICAL_FORMAT_VERSION);
+            assertRoundTrip(archiver, makeText(BIT_READER_BUFFER_SIZE + 1), CANONICAL_FORMAT_VERSION);
+        }
+    }
+
+    @Test
+    void storesIncompressibleFileWithoutBlockSize() throws IOException {
+        Path archive = assertRoundTrip(new Archiver(), makeRandom(3 * MIN_BLOCK_SIZE), TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(List.of(STORED_BLOCK_MODE), getBlockModes(archive));
+    }
+
+    @Test
+    void keepsOneByteOfFileOfRepeatedByteWithoutBlockSize() throws IOException {
+        byte[] data = new byte[3 * MIN_BLOCK_SIZE];
+        Arrays.fill(data, (byte) 'a');
+        Path archive = assertRoundTrip(new Archiver(), data, TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(List.of(CONSTANT_BLOCK_MODE), getBlockModes(archive));
+        assertTrue(Files.size(archive) < 100);
+    }
+
+    @Test
+    void roundTripsEmptyFileOfBlocks() throws IOException {
+        Path archive = assertRoundTrip(createBlockArchiver(), new byte[0], TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(List.of(), getBlockModes(archive));
+    }
+
+    @Test
+    void roundTripsSingleByteOfBlocks() throws IOException {
+        Path archive = assertRoundTrip(createBlockArchiver(), new byte[]{'a'}, TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(List.of(CONSTANT_BLOCK_MODE), getBlockModes(archive));
+    }
+
+    @Test
+    void codesEveryBlockByItsOwnMode() throws IOException {
+        byte[] data = new byte[3 * MIN_BLOCK_SIZE + 17];
+        System.arraycopy(makeText(MIN_BLOCK_SIZE), 0, data, 0, MIN_BLOCK_SIZE);
+        System.arraycopy(makeRandom(MIN_BLOCK_SIZE), 0, data, MIN_BLOCK_SIZE, MIN_BLOCK_SIZE);
+        Arrays.fill(data, 2 * MIN_BLOCK_SIZE, data.length, (byte) 'a');
+        Path archive = assertRoundTrip(createBlockArchiver(), data, TAGGED_BLOCK_FORMAT_VERSION);
+        assertEquals(List.of(HUFFMAN_BLOCK_MODE, STORED_BLOCK_MODE, CONSTANT_BLOCK_MODE, CONSTANT_BLOCK_MODE),
+                getBlockModes(archive));
+    }
+
+    @Test
+    void roundTripsStreamByBlocks() throws IOException {
+        byte[] data = makeText(5 * MIN_BLOCK_SIZE + 17);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        createBlockArchiver().archive(new ByteArrayInputStream(data), archive);
+        assertEquals(TAGGED_BLOCK_FORMAT_VERSION, archive.toByteArray()[FORMAT_MAGIC_IN_BYTES]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new UnArchiver().unArchive(new ByteArrayInputStream(archive.toByteArray()), out);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    void keepsCanonicalFormatOfFilesAfterStream() throws IOException {
+        Archiver archiver = new Archiver();
+        byte[] data = makeText(MIN_BLOCK_SIZE);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        archiver.archive(new ByteArrayInputStream(data), archive);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new UnArchiver().unArchive(new ByteArrayInputStream(archive.toByteArray()), out);
+        assertArrayEquals(data, out.toByteArray());
+        /* Streams are archived by blocks of the default size, files without a block size are not */
+        assertRoundTrip(archiver, data, CANONICAL_FORMAT_VERSION);
+    }
+
+    @Test
+    void roundTripsDirectoryByMultiFileFormat() throws IOException {
+        Path files = directory.resolve("files");
+        Files.createDirectories(files.resolve("nested"));
+        Files.write(files.resolve("empty.txt"), new byte[0]);
+        Files.write(files.resolve("single.txt"), new byte[]{'a'});
+        Files.write(files.resolve("random.bin"), makeRandom(2 * MIN_BLOCK_SIZE));
+        Files.write(files.resolve("nested/text.txt"), makeText(3 * BIT_READER_BUFFER_SIZE + 1));
+        Path archive = directory.resolve("files.par");
+        new Archiver().archiveDirectory(files.toString(), archive.toString());
+        assertEquals(MULTI_FILE_FORMAT_VERSION, getFormatVersion(archive));
+
+        Path target = directory.resolve("out");
+        new UnArchiver().unArchive(archive.toString(), target.toString());
+        for (String name : new String[]{"empty.txt", "single.txt", "random.bin", "nested/text.txt"}) {
+            assertArrayEquals(Files.readAllBytes(files.resolve(name)), Files.readAllBytes(target.resolve(name)));
+        }
+        Path entry = directory.resolve("text.out");
+        new UnArchiver().extractEntry(archive.toString(), "nested/text.txt", entry.toString());
+        assertArrayEquals(Files.readAllBytes(files.resolve("nested/text.txt")), Files.readAllBytes(entry));
+    }
+
+    @Test
+    void roundTripsDirectoryOfBlocksByMultiFileFormat() throws IOException {
+        Path files = directory.resolve("files");
+        Files.createDirectories(files);
+        Files.write(files.resolve("empty.txt"), new byte[0]);
+        Files.write(files.resolve("text.txt"), makeText(5 * MIN_BLOCK_SIZE + 17));
+        Path archive = directory.resolve("files.par");
+        createBlockArchiver().archiveDirectory(files.toString(), archive.toString());
+
+        Path target = directory.resolve("out");
+        new UnArchiver().unArchive(archive.toString(), target.toString());
+        assertEquals(0, Files.size(target.resolve("empty.txt")));
+        assertArrayEquals(Files.readAllBytes(files.resolve("text.txt")), Files.readAllBytes(target.resolve("text.txt")));
+    }
+
+    @Test
+    void codesTextByContextModelShorterThanCanonicalFormat() throws IOException {
+        byte[] data = makeText(3 * BIT_READER_BUFFER_SIZE + 1);
+        long contextSize = Files.size(assertRoundTrip(createContextArchiver(), data, CONTEXT_FORMAT_VERSION));
+        /* Every word is known by its first byte, so the context model codes the text better */
+        assertTrue(contextSize < Files.size(assertRoundTrip(new Archiver(), data, CANONICAL_FORMAT_VERSION)));
+    }
+
+    /** Creates the archiver by the order-1 context model */
+    private static Archiver createContextArchiver() {
+        Archiver archiver = new Archiver();
+        archiver.setContextOrder(1);
+        return archiver;
+    }
+
+    /** Creates the archiver of blocks of the minimal size */
+    private static Archiver createBlockArchiver() {
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(MIN_BLOCK_SIZE);
+        return archiver;
+    }
+
+    /** Creates the archiver by the dictionary trained on text */
+    private static Archiver createDictionaryArchiver() throws IOException {
+        long[] frequencies = new long[ALPHABET_SIZE];
+        for (byte value : makeText(MIN_BLOCK_SIZE)) {
+            frequencies[value & 0xff]++;
+        }
+        Archiver archiver = new Archiver();
+        archiver.setDictionary(Dictionary.train(frequencies, DEFAULT_CODE_LENGTH_LIMIT));
+        return archiver;
+    }
+
+    /** Creates the archiver of small blocks coded by four streams */
+    private static Archiver createInterleavedArchiver() {
+        Archiver archiver = createBlockArchiver();
+        archiver.setStreams(INTERLEAVED_STREAMS);
+        return archiver;
+    }
+
+    /** Gets coding modes of the blocks of the archive of the tagged block format in their order */
+    static List<Integer> getBlockModes(Path archive) throws IOException {
+        List<Integer> modes = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(archive.toFile())))) {
+            in.skipNBytes(FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES);
+            /* Zero raw size marks the end of blocks */
+            while (in.readInt() != 0) {
+                int encodedSize = in.readInt();
+                in.skipNBytes(CHECKSUM_IN_BYTES);
+                modes.add(in.readUnsignedByte());
+                in.skipNBytes(encodedSize - BLOCK_MODE_IN_BYTES);
+            }
+        }
+        return modes;
+    }
+
+    /**
+     * Archives the data, checks the format version of the archive and that it is unArchived to the same data
+     *
+     * @return The archive
+     */
+    Path assertRoundTrip(Archiver archiver, byte[] data, int version) throws IOException {
+        Path source = directory.resolve("file.txt");
+        Path archive = directory.resolve("file.txt.par");
+        Path target = directory.resolve("file.out");
+        Files.write(source, data);
+        archiver.archive(source.toString(), archive.toString());
+        assertEquals(version, getFormatVersion(archive));
+        new UnArchiver().unArchive(archive.toString(), target.toString());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        return archive;
+    }
+
+    /** Gets the format version of the archive after its magic number */
+    static int getFormatVersion(Path archive) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(archive.toFile()))) {
+            assertEquals(FORMAT_MAGIC, in.readInt());
+            return in.readUnsignedByte();
+        }
+    }
+
+    /** Makes the text of random words, which compresses well */
+    static byte[] makeText(int size) {
+        String[] words = {"huffman ", "archive ", "block ", "the ", "of ", "code\n"};
+        Random random = new Random(size);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < size) {
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Makes random bytes, which Huffman coding doesn't compress */
+    static byte[] makeRandom(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,133 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiverTest.makeText;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class CompressionDaemonTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void compressesAndDecompressesData() throws IOException {
+        byte[] data = makeText(100_000);
+        try (DaemonClient client = connect(startDaemon(UnixDomainSocketAddress.of(directory.resolve("d.sock"))))) {
+            int id = client.compress(data);
+            DaemonClient.Result compressed = client.receive();
+            assertEquals(id, compressed.id);
+            assertNull(compressed.failure);
+            assertTrue(compressed.data.length < data.length);
+
+            client.decompress(compressed.data);
+            DaemonClient.Result decompressed = client.receive();
+            assertNull(decompressed.failure);
+            assertArrayEquals(data, decompressed.data);
+        }
+    }
+
+    @Test
+    void archivesAndUnArchivesFilesOfItsOwner() throws IOException {
+        Path source = directory.resolve("file.txt");
+        Path archive = directory.resolve("file.txt.par");
+        Path target = directory.resolve("file.out");
+        Files.write(source, makeText(100_000));
+        try (DaemonClient client = connect(startDaemon(UnixDomainSocketAddress.of(directory.resolve("d.sock"))))) {
+            client.archive(source.toString(), archive.toString());
+            assertNull(client.receive().failure);
+            client.unArchive(archive.toString(), target.toString());
+            assertNull(client.receive().failure);
+        }
+        assertArrayEquals(Files.readAllBytes(source), Files.readAllBytes(target));
+    }
+
+    @Test
+    void listensOnSocketOnlyItsOwnerMayUse() throws IOException {
+        Path socket = directory.resolve("d.sock");
+        try (DaemonClient client = connect(startDaemon(UnixDomainSocketAddress.of(socket)))) {
+            assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(socket));
+            /* The directory where the socket was bound is removed */
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(List.of(socket), files.collect(Collectors.toList()));
+            }
+            client.compress(makeText(1000));
+            assertNull(client.receive().failure);
+        }
+    }
+
+    @Test
+    void refusedFileRequestLeavesTargetUntouched() throws IOException {
+        Path source = directory.resolve("file.txt");
+        Path target = directory.resolve("file.txt.par");
+        Files.write(source, makeText(1000));
+        byte[] targetData = "the target".getBytes(StandardCharsets.UTF_8);
+        Files.write(target, targetData);
+        /* File requests are refused to clients of a port */
+        try (DaemonClient client = connect(startDaemon(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                getFreePort())))) {
+            client.archive(source.toString(), target.toString());
+            assertNotNull(client.receive().failure);
+
+            /* The connection keeps serving data requests */
+            client.compress(targetData);
+            assertNull(client.receive().failure);
+        }
+        assertArrayEquals(targetData, Files.readAllBytes(target));
+    }
+
+    /** Starts the daemon on the address in a thread which ends with the tests */
+    private static SocketAddress startDaemon(SocketAddress address) {
+        CompressionDaemon daemon = new CompressionDaemon();
+        daemon.setThreads(2);
+        Thread thread = new Thread(() -> {
+            try {
+                daemon.serve(address, new PrintStream(OutputStream.nullOutputStream()));
+            } catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return address;
+    }
+
+    /** Connects to the daemon as soon as it listens */
+    private static DaemonClient connect(SocketAddress address) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return new DaemonClient(address);
+            } catch (IOException exception) {
+                if (attempt == 100) {
+                    throw exception;
+                }
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException exception) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /** Gets a port of the local host which is free now */
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import org.junit.jupiter.api.Test;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiverTest.makeRandom;
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiverTest.makeText;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+class HuffmanStreamsTest {
+    @Test
+    void roundTripsStreamOfManyBlocks() throws IOException {
+        byte[] data = makeText(5 * MIN_BLOCK_SIZE + 17);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        try (HuffmanOutputStream out = new HuffmanOutputStream(archive, MIN_BLOCK_SIZE)) {
+            /* Single bytes and arrays across block boundaries */
+            out.write(data[0]);
+            out.write(data, 1, MIN_BLOCK_SIZE);
+            for (int i = MIN_BLOCK_SIZE + 1; i < 2 * MIN_BLOCK_SIZE + 1; i++) {
+                out.write(data[i]);
+            }
+            out.write(data, 2 * MIN_BLOCK_SIZE + 1, data.length - 2 * MIN_BLOCK_SIZE - 1);
+        }
+        assertRoundTrip(archive.toByteArray(), data);
+    }
+
+    @Test
+    void roundTripsEmptyStream() throws IOException {
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        new HuffmanOutputStream(archive).close();
+        assertRoundTrip(archive.toByteArray(), new byte[0]);
+    }
+
+    @Test
+    void rejectsWritesAfterFinish() throws IOException {
+        byte[] data = makeRandom(MIN_BLOCK_SIZE);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        HuffmanOutputStream out = new HuffmanOutputStream(archive, MIN_BLOCK_SIZE);
+        out.write(data);
+        out.finish();
+        int size = archive.size();
+        assertThrows(IOException.class, () -> out.write('a'));
+        assertThrows(IOException.class, () -> out.write(data));
+        /* The finished archive is not changed by finishing or closing it again */
+        out.finish();
+        out.close();
+        assertEquals(size, archive.size());
+        assertRoundTrip(archive.toByteArray(), data);
+    }
+
+    @Test
+    void roundTripsBuffersByCodec() throws IOException {
+        /* Text larger than the decoding buffer is decoded to a direct buffer part by part */
+        byte[][] files = {new byte[0], {'a'}, makeRandom(MIN_BLOCK_SIZE), makeText(DECODING_BUFFER_SIZE + 1)};
+        for (byte[] data : files) {
+            HuffmanCodec codec = new HuffmanCodec();
+            for (boolean direct : new boolean[]{false, true}) {
+                ByteBuffer src = ByteBuffer.wrap(data);
+                ByteBuffer compressed = allocate((int) HuffmanCodec.getMaxCompressedSize(data.length), direct);
+                int compressedSize = codec.compress(src, compressed);
+                assertFalse(src.hasRemaining());
+                assertEquals(compressedSize, compressed.position());
+                compressed.flip();
+                assertTrue(HuffmanCodec.isCompressed(compressed));
+                assertEquals(data.length, HuffmanCodec.getDecompressedSize(compressed));
+
+                ByteBuffer decompressed = allocate(data.length, direct);
+                assertEquals(data.length, codec.decompress(compressed, decompressed));
+                assertFalse(compressed.hasRemaining());
+                assertFalse(decompressed.hasRemaining());
+                byte[] result = new byte[data.length];
+                decompressed.flip().get(result);
+                assertArrayEquals(data, result);
+            }
+        }
+    }
+
+    @Test
+    void rejectsShortBuffersOfCodec() throws IOException {
+        byte[] data = makeText(MIN_BLOCK_SIZE);
+        HuffmanCodec codec = new HuffmanCodec();
+        ByteBuffer src = ByteBuffer.wrap(data);
+        assertThrows(BufferOverflowException.class, () -> codec.compress(src,
+                ByteBuffer.allocate((int) HuffmanCodec.getMaxCompressedSize(data.length) - 1)));
+        assertEquals(0, src.position());
+
+        ByteBuffer compressed = ByteBuffer.allocate((int) HuffmanCodec.getMaxCompressedSize(data.length));
+        codec.compress(src, compressed);
+        compressed.flip();
+        assertThrows(BufferOverflowException.class,
+                () -> codec.decompress(compressed, ByteBuffer.allocateDirect(data.length - 1)));
+        assertEquals(0, compressed.position());
+        assertFalse(HuffmanCodec.isCompressed(ByteBuffer.wrap(data)));
+    }
+
+    /** Allocates a heap buffer or a direct one, which has no accessible array */
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /** Checks that the archive is read to the data by the input stream and unArchived to it by the unArchiver */
+    private static void assertRoundTrip(byte[] archive, byte[] data) throws IOException {
+        try (HuffmanInputStream in = new HuffmanInputStream(new ByteArrayInputStream(archive))) {
+            assertArrayEquals(data, in.readAllBytes());
+            assertEquals(-1, in.read());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new UnArchiver().unArchive(new ByteArrayInputStream(archive), out);
+        assertArrayEquals(data, out.toByteArray());
+    }
+}
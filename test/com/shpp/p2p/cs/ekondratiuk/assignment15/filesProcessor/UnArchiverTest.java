@@ -0,0 +1,327 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor;
+
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.BitWriter;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.CanonicalCodes;
+import com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils.Checksums;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiverTest.makeRandom;
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.ArchiverTest.makeText;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+class UnArchiverTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void unArchivesLegacyTreeOfMaximalDepth() throws IOException {
+        Path archive = writeLegacyArchive(MAX_CODE_LENGTH + 1);
+        Path target = directory.resolve("file.txt");
+        new UnArchiver().unArchive(archive.toString(), target.toString());
+        assertEquals(0, Files.size(target));
+    }
+
+    @Test
+    void rejectsLegacyTreeDeeperThanMaximalCodeLength() throws IOException {
+        Path archive = writeLegacyArchive(MAX_CODE_LENGTH + 2);
+        Path target = directory.resolve("file.txt");
+        IOException exception = assertThrows(IOException.class,
+                () -> new UnArchiver().unArchive(archive.toString(), target.toString()));
+        assertEquals("Corrupted archive header", exception.getMessage());
+    }
+
+    /** Files of edge cases of both formats of blocks without coding modes */
+    static Stream<Arguments> filesOfBlockFormats() {
+        return IntStream.of(BLOCK_FORMAT_VERSION, CHECKED_BLOCK_FORMAT_VERSION).boxed().flatMap(version -> Stream.of(
+                Arguments.of(version, "empty file", new byte[0]),
+                Arguments.of(version, "single byte", new byte[]{'a'}),
+                Arguments.of(version, "incompressible file", makeRandom(MIN_BLOCK_SIZE)),
+                Arguments.of(version, "many blocks", makeText(5 * MIN_BLOCK_SIZE + 17))));
+    }
+
+    @ParameterizedTest(name = "version {0}: {1}")
+    @MethodSource("filesOfBlockFormats")
+    void unArchivesFileOfBlockFormat(int version, String name, byte[] data) throws IOException {
+        assertUnArchives(writeBlockArchive(version, data, MIN_BLOCK_SIZE), data);
+    }
+
+    @Test
+    void testsManyBlocksOfCheckedBlockFormat() throws IOException {
+        byte[] data = makeText(5 * MIN_BLOCK_SIZE + 17);
+        Path archive = writeBlockArchive(CHECKED_BLOCK_FORMAT_VERSION, data, MIN_BLOCK_SIZE);
+        UnArchiver unArchiver = new UnArchiver();
+        assertEquals(data.length, unArchiver.test(archive.toString()));
+        assertTrue(unArchiver.isChecksummed());
+    }
+
+    @Test
+    void rejectsFlippedByteOfCheckedBlockFormat() throws IOException {
+        Path archive = writeBlockArchive(CHECKED_BLOCK_FORMAT_VERSION, makeText(2 * MIN_BLOCK_SIZE), MIN_BLOCK_SIZE);
+        /* The last byte of the codes of the second block */
+        flipByte(archive, Files.size(archive) - getIndexSize(2) - Integer.BYTES - 1);
+        Path target = directory.resolve("file.out");
+        assertThrows(IOException.class, () -> new UnArchiver().unArchive(archive.toString(), target.toString()));
+        assertThrows(IOException.class, () -> new UnArchiver().test(archive.toString()));
+    }
+
+    @Test
+    void rejectsFlippedByteOfStoredBlock() throws IOException {
+        Path archive = archiveByBlocks(makeRandom(MIN_BLOCK_SIZE));
+        assertEquals(List.of(STORED_BLOCK_MODE), ArchiverTest.getBlockModes(archive));
+        /* The first byte of the block data after the header, the block size, the block header and its mode */
+        flipByte(archive, FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES +
+                BLOCK_HEADER_SIZE + CHECKSUM_IN_BYTES + BLOCK_MODE_IN_BYTES);
+        Path target = directory.resolve("file.out");
+        IOException exception = assertThrows(IOException.class,
+                () -> new UnArchiver().unArchive(archive.toString(), target.toString()));
+        assertEquals("Checksum mismatch in block 0", exception.getMessage());
+        exception = assertThrows(IOException.class, () -> new UnArchiver().test(archive.toString()));
+        assertEquals("Checksum mismatch in block 0", exception.getMessage());
+    }
+
+    @Test
+    void unArchivesRangesOfBlocks() throws IOException {
+        byte[] data = makeText(5 * MIN_BLOCK_SIZE + 17);
+        Path archive = archiveByBlocks(data);
+        long[][] ranges = {
+                {0, data.length},
+                /* Ranges across one and two block boundaries */
+                {MIN_BLOCK_SIZE - 10, 20},
+                {MIN_BLOCK_SIZE + 1, 2 * MIN_BLOCK_SIZE},
+                {3 * MIN_BLOCK_SIZE, MIN_BLOCK_SIZE},
+                /* Ranges cut at the end of the file */
+                {data.length - 5, 100},
+                {0, Long.MAX_VALUE}
+        };
+        for (long[] range : ranges) {
+            int from = (int) range[0];
+            int to = (int) Math.min(data.length, range[0] + Math.min(range[1], data.length));
+            assertRange(archive, range[0], range[1], Arrays.copyOfRange(data, from, to));
+        }
+    }
+
+    @Test
+    void unArchivesEmptyRanges() throws IOException {
+        byte[] data = makeText(3 * MIN_BLOCK_SIZE);
+        Path archive = archiveByBlocks(data);
+        assertRange(archive, MIN_BLOCK_SIZE, 0, new byte[0]);
+        assertRange(archive, data.length, 10, new byte[0]);
+        assertRange(archive, data.length + MIN_BLOCK_SIZE + 1, 10, new byte[0]);
+        assertRange(archiveByBlocks(new byte[0]), 0, 10, new byte[0]);
+        assertThrows(IllegalArgumentException.class,
+                () -> new UnArchiver().unArchiveRange(archive.toString(), -1, 10, OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    void unArchivesRangeOfLegacyBlockFormat() throws IOException {
+        byte[] data = makeText(3 * MIN_BLOCK_SIZE);
+        Path archive = writeBlockArchive(CHECKED_BLOCK_FORMAT_VERSION, data, MIN_BLOCK_SIZE);
+        assertRange(archive, MIN_BLOCK_SIZE - 1, 2, Arrays.copyOfRange(data, MIN_BLOCK_SIZE - 1, MIN_BLOCK_SIZE + 1));
+    }
+
+    @Test
+    void rejectsRangeOfArchiveWithoutBlocks() throws IOException {
+        Path source = directory.resolve("file.txt");
+        Path archive = directory.resolve("file.txt.par");
+        Files.write(source, makeText(MIN_BLOCK_SIZE));
+        new Archiver().archive(source.toString(), archive.toString());
+        IOException exception = assertThrows(IOException.class,
+                () -> new UnArchiver().unArchiveRange(archive.toString(), 0, 10, OutputStream.nullOutputStream()));
+        assertTrue(exception.getMessage().startsWith("Only archives of the block format"));
+    }
+
+    @Test
+    void refusesToOverwriteFilesByExtractedEntry() throws IOException {
+        Path files = directory.resolve("files");
+        Files.createDirectories(files.resolve("sub"));
+        Files.write(files.resolve("sub/d.par"), makeText(MIN_BLOCK_SIZE));
+        Path archive = directory.resolve("d.par");
+        new Archiver().archiveDirectory(files.toString(), archive.toString());
+        byte[] archiveData = Files.readAllBytes(archive);
+        /* The entry named like the archive is not extracted over it */
+        IOException exception = assertThrows(IOException.class,
+                () -> new UnArchiver().extractEntry(archive.toString(), "sub/d.par", archive.toString()));
+        assertTrue(exception.getMessage().startsWith("The entry can't be extracted over the archive"));
+        assertArrayEquals(archiveData, Files.readAllBytes(archive));
+
+        Path target = directory.resolve("d.txt");
+        byte[] targetData = {'a'};
+        Files.write(target, targetData);
+        assertThrows(IOException.class,
+                () -> new UnArchiver().extractEntry(archive.toString(), "sub/d.par", target.toString()));
+        assertArrayEquals(targetData, Files.readAllBytes(target));
+
+        /* A dangling link is not followed to create its target */
+        Path link = Files.createSymbolicLink(directory.resolve("link.txt"), directory.resolve("missing.txt"));
+        exception = assertThrows(IOException.class,
+                () -> new UnArchiver().extractEntry(archive.toString(), "sub/d.par", link.toString()));
+        assertTrue(exception.getMessage().startsWith("The file " + link + " already exists"));
+        assertFalse(Files.exists(directory.resolve("missing.txt")));
+    }
+
+    @Test
+    void refusesToExtractEntriesThroughLinks() throws IOException {
+        Path files = directory.resolve("files");
+        Files.createDirectories(files.resolve("sub"));
+        Files.write(files.resolve("a.txt"), makeText(MIN_BLOCK_SIZE));
+        Files.write(files.resolve("sub/b.txt"), makeText(MIN_BLOCK_SIZE));
+        Path archive = directory.resolve("files.par");
+        new Archiver().archiveDirectory(files.toString(), archive.toString());
+        Path outside = Files.createDirectories(directory.resolve("outside"));
+        byte[] outsideData = {'a'};
+        Files.write(outside.resolve("a.txt"), outsideData);
+
+        /* Links to a file and to a directory out of the output directory */
+        Path target = Files.createDirectories(directory.resolve("out"));
+        Files.createSymbolicLink(target.resolve("a.txt"), outside.resolve("a.txt"));
+        assertThrows(IOException.class, () -> new UnArchiver().unArchive(archive.toString(), target.toString()));
+        assertArrayEquals(outsideData, Files.readAllBytes(outside.resolve("a.txt")));
+        Files.delete(target.resolve("a.txt"));
+        Files.createSymbolicLink(target.resolve("sub"), outside);
+        assertThrows(IOException.class, () -> new UnArchiver().unArchive(archive.toString(), target.toString()));
+        assertFalse(Files.exists(outside.resolve("b.txt")));
+    }
+
+    /** Archives the data by blocks of the minimal size */
+    private Path archiveByBlocks(byte[] data) throws IOException {
+        Path source = directory.resolve("file.txt");
+        Path archive = directory.resolve("file.txt.par");
+        Files.write(source, data);
+        Archiver archiver = new Archiver();
+        archiver.setBlockSize(MIN_BLOCK_SIZE);
+        archiver.archive(source.toString(), archive.toString());
+        return archive;
+    }
+
+    /** Gets the size of the index of the checked block format with the blocks amount and its trailer */
+    private static long getIndexSize(int blocksAmount) {
+        return Integer.BYTES + blocksAmount * (BLOCK_INDEX_ENTRY_SIZE + CHECKSUM_IN_BYTES) +
+                BLOCK_TRAILER_SIZE + CHECKSUM_IN_BYTES;
+    }
+
+    /** Inverts all the bits of the byte of the file */
+    private static void flipByte(Path file, long position) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file.toFile(), "rw")) {
+            out.seek(position);
+            int value = out.readUnsignedByte();
+            out.seek(position);
+            out.writeByte(~value);
+        }
+    }
+
+    /** Checks that the range of the archive is unArchived to the data */
+    private static void assertRange(Path archive, long offset, long length, byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(data.length, new UnArchiver().unArchiveRange(archive.toString(), offset, length, out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    /** Checks that the archive is unArchived to the data both as a file and as a stream */
+    private void assertUnArchives(Path archive, byte[] data) throws IOException {
+        Path target = directory.resolve("file.out");
+        new UnArchiver().unArchive(archive.toString(), target.toString());
+        assertArrayEquals(data, Files.readAllBytes(target));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new FileInputStream(archive.toFile())) {
+            new UnArchiver().unArchive(in, out);
+        }
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    /**
+     * Writes the archive of the block format, which the archiver doesn't write any more:
+     * every block is coded by its own canonical codes, its body has no coding mode
+     *
+     * @param version   Format version of the archive
+     * @param data      The original file
+     * @param blockSize Size of blocks
+     */
+    private Path writeBlockArchive(int version, byte[] data, int blockSize) throws IOException {
+        BlockIndex index = new BlockIndex(version);
+        Path archive = directory.resolve("file.txt.par");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(archive.toFile())))) {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeByte(version);
+            out.writeInt(blockSize);
+            long position = FORMAT_MAGIC_IN_BYTES + FORMAT_VERSION_IN_BYTES + Integer.BYTES;
+            for (int start = 0; start < data.length; start += blockSize) {
+                int rawSize = Math.min(blockSize, data.length - start);
+                byte[] body = encodeBlock(data, start, rawSize);
+                int checksum = Checksums.checksum(data, start, rawSize);
+                out.writeInt(rawSize);
+                out.writeInt(body.length);
+                if (index.isChecksummed()) {
+                    out.writeInt(checksum);
+                }
+                out.write(body);
+                index.add(position, body.length, rawSize, checksum);
+                position += index.getBlockHeaderSize() + body.length;
+            }
+            /* Zero raw size marks the end of blocks */
+            out.writeInt(0);
+            index.write(out, position + Integer.BYTES);
+        }
+        return archive;
+    }
+
+    /** Encodes the block body: the code lengths table and the codes of the bytes */
+    private static byte[] encodeBlock(byte[] data, int start, int size) throws IOException {
+        long[] frequencies = new long[ALPHABET_SIZE];
+        for (int i = start; i < start + size; i++) {
+            frequencies[data[i] & 0xff]++;
+        }
+        long[] codes = new long[ALPHABET_SIZE];
+        int[] codeLengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.buildCodes(frequencies, codes, codeLengths);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        BitWriter bitWriter = new BitWriter(body, BIT_WRITER_BUFFER_SIZE);
+        CanonicalCodes.writeLengths(codeLengths, bitWriter);
+        bitWriter.alignToByte();
+        for (int i = start; i < start + size; i++) {
+            bitWriter.writeBits(codes[data[i] & 0xff], codeLengths[data[i] & 0xff]);
+        }
+        bitWriter.finish();
+        return body.toByteArray();
+    }
+
+    /**
+     * Writes the legacy archive of an empty file whose tree is a chain: every node has a leaf on the left,
+     * so the two deepest leaves get codes one bit shorter than the amount of leaves
+     *
+     * @param leavesAmount Amount of leaves of the tree
+     */
+    private Path writeLegacyArchive(int leavesAmount) throws IOException {
+        int shapeBits = 2 * leavesAmount - 1;
+        byte[] shape = new byte[(shapeBits + Byte.SIZE - 1) / Byte.SIZE];
+        /* Preorder walk of the chain is "10" for every node and "0" for the last leaf */
+        for (int i = 0; i < shapeBits - 1; i += 2) {
+            shape[i / Byte.SIZE] |= (byte) (1 << (Byte.SIZE - 1 - i % Byte.SIZE));
+        }
+        Path archive = directory.resolve("file.txt.par");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(archive.toFile()))) {
+            out.writeLong(0);
+            out.writeShort(shapeBits);
+            out.writeShort(shape.length);
+            out.writeShort(leavesAmount);
+            out.write(shape);
+            for (int leaf = 0; leaf < leavesAmount; leaf++) {
+                out.writeByte(leaf);
+            }
+        }
+        return archive;
+    }
+}
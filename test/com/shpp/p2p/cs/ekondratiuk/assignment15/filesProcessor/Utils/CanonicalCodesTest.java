@@ -0,0 +1,67 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+
+class CanonicalCodesTest {
+    /** Amount of bytes of the Fibonacci distribution, their Huffman codes are up to 65 bits long */
+    private static final int FIBONACCI_BYTES = 66;
+
+    @ParameterizedTest(name = "limit {0}")
+    @ValueSource(ints = {MIN_CODE_LENGTH_LIMIT, 11, DEFAULT_CODE_LENGTH_LIMIT, MAX_CODE_LENGTH})
+    void limitsLengthsOfFibonacciFrequencies(int limit) throws IOException {
+        long[] frequencies = makeFibonacciFrequencies();
+        int[] lengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.limitLengths(frequencies, limit, lengths);
+        assertLengths(frequencies, lengths, limit);
+
+        long[] codes = new long[ALPHABET_SIZE];
+        int[] builtLengths = new int[ALPHABET_SIZE];
+        long extraBits = CanonicalCodes.buildCodes(frequencies, codes, builtLengths, limit, ProcessMetrics.DISABLED);
+        assertLengths(frequencies, builtLengths, limit);
+        assertTrue(extraBits >= 0);
+        /* Package-merge gives the best lengths within the limit, whichever of them it takes */
+        assertEquals(getCodedBits(frequencies, lengths), getCodedBits(frequencies, builtLengths));
+    }
+
+    /** Checks that every present byte has a code within the limit and the codes make up a full tree */
+    private static void assertLengths(long[] frequencies, int[] lengths, int limit) {
+        long kraftSum = 0;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            assertEquals(frequencies[symbol] > 0, lengths[symbol] > 0);
+            assertTrue(lengths[symbol] <= limit);
+            if (lengths[symbol] > 0) {
+                kraftSum += 1L << (limit - lengths[symbol]);
+            }
+        }
+        assertEquals(1L << limit, kraftSum);
+    }
+
+    /** Gets the amount of bits of all the bytes coded by codes of the lengths */
+    private static long getCodedBits(long[] frequencies, int[] lengths) {
+        long bits = 0;
+        for (int symbol = 0; symbol < ALPHABET_SIZE; symbol++) {
+            bits += frequencies[symbol] * lengths[symbol];
+        }
+        return bits;
+    }
+
+    /** Makes Fibonacci frequencies of bytes spread over the alphabet, which give the deepest Huffman tree */
+    private static long[] makeFibonacciFrequencies() {
+        long[] frequencies = new long[ALPHABET_SIZE];
+        long previous = 1;
+        long current = 1;
+        for (int i = 0; i < FIBONACCI_BYTES; i++) {
+            frequencies[i * 3] = current;
+            long next = previous + current;
+            previous = current;
+            current = next;
+        }
+        return frequencies;
+    }
+}
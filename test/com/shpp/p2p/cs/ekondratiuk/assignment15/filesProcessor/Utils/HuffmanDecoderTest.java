@@ -0,0 +1,119 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static com.shpp.p2p.cs.ekondratiuk.assignment15.Constants.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+class HuffmanDecoderTest {
+    @Test
+    void decodesTextByMultiSymbolTable() throws IOException {
+        byte[] data = "the huffman code of the block of the archive\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        assertTrue(assertDecodesByBothModes(data, DEFAULT_CODE_LENGTH_LIMIT));
+    }
+
+    @Test
+    void decodesCodesOfSubtablesByMultiSymbolTable() throws IOException {
+        byte[] data = makeFibonacciData();
+        /* Codes from 12 to 15 bits are finished by subtables */
+        assertTrue(assertDecodesByBothModes(data, DEFAULT_CODE_LENGTH_LIMIT));
+    }
+
+    @Test
+    void decodesCodesOfTreeByMultiSymbolTable() throws IOException {
+        byte[] data = makeFibonacciData();
+        /* Codes more than 8 bits longer than the table are finished over the long codes tree */
+        assertTrue(assertDecodesByBothModes(data, MAX_CODE_LENGTH));
+    }
+
+    @Test
+    void skipsMultiSymbolTableOfRandomData() throws IOException {
+        byte[] data = new byte[100_000];
+        new Random(1).nextBytes(data);
+        assertFalse(assertDecodesByBothModes(data, DEFAULT_CODE_LENGTH_LIMIT));
+    }
+
+    /**
+     * Codes the data by its own codes and checks that it is decoded the same
+     * with the multi-symbol mode and without it, both by one stream and by four interleaved ones
+     *
+     * @return True if the multi-symbol table is used for the codes
+     */
+    private static boolean assertDecodesByBothModes(byte[] data, int codeLengthLimit) throws IOException {
+        long[] frequencies = new long[ALPHABET_SIZE];
+        for (byte value : data) {
+            frequencies[value & 0xff]++;
+        }
+        long[] codes = new long[ALPHABET_SIZE];
+        int[] lengths = new int[ALPHABET_SIZE];
+        CanonicalCodes.buildCodes(frequencies, codes, lengths, codeLengthLimit, ProcessMetrics.DISABLED);
+        byte[] coded = encode(data, 0, data.length, codes, lengths);
+        int partSize = (data.length + INTERLEAVED_STREAMS - 1) / INTERLEAVED_STREAMS;
+        byte[][] parts = new byte[INTERLEAVED_STREAMS][];
+        for (int part = 0; part < INTERLEAVED_STREAMS; part++) {
+            int start = Math.min(data.length, part * partSize);
+            parts[part] = encode(data, start, Math.min(data.length, start + partSize) - start, codes, lengths);
+        }
+
+        HuffmanDecoder multiDecoder = new HuffmanDecoder(codes, lengths, DECODING_TABLE_BITS);
+        HuffmanDecoder singleDecoder = new HuffmanDecoder(DECODING_TABLE_BITS);
+        singleDecoder.setMultiSymbol(false);
+        singleDecoder.setCodes(codes, lengths);
+        assertFalse(singleDecoder.isMultiTableUsed());
+        for (HuffmanDecoder decoder : new HuffmanDecoder[]{multiDecoder, singleDecoder}) {
+            byte[] out = new byte[data.length];
+            decoder.decode(new BitReader(coded, 0, coded.length), out, 0, out.length);
+            assertArrayEquals(data, out);
+
+            out = new byte[data.length];
+            BitReader[] readers = new BitReader[INTERLEAVED_STREAMS];
+            for (int part = 0; part < INTERLEAVED_STREAMS; part++) {
+                readers[part] = new BitReader(parts[part], 0, parts[part].length);
+            }
+            decoder.decodeInterleaved(readers, out, 0, out.length);
+            assertArrayEquals(data, out);
+        }
+        return multiDecoder.isMultiTableUsed();
+    }
+
+    /** Codes the part of the data to whole bytes */
+    private static byte[] encode(byte[] data, int start, int length, long[] codes, int[] lengths) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BitWriter bitWriter = new BitWriter(out, BIT_WRITER_BUFFER_SIZE);
+        for (int i = start; i < start + length; i++) {
+            bitWriter.writeBits(codes[data[i] & 0xff], lengths[data[i] & 0xff]);
+        }
+        bitWriter.finish();
+        return out.toByteArray();
+    }
+
+    /** Makes shuffled data of 25 bytes of Fibonacci frequencies, whose Huffman codes are up to 24 bits long */
+    private static byte[] makeFibonacciData() {
+        int[] frequencies = new int[25];
+        int size = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = i < 2 ? 1 : frequencies[i - 1] + frequencies[i - 2];
+            size += frequencies[i];
+        }
+        byte[] data = new byte[size];
+        int position = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            for (int j = 0; j < frequencies[i]; j++) {
+                data[position++] = (byte) ('a' + i);
+            }
+        }
+        Random random = new Random(size);
+        for (int i = data.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte value = data[i];
+            data[i] = data[j];
+            data[j] = value;
+        }
+        return data;
+    }
+}
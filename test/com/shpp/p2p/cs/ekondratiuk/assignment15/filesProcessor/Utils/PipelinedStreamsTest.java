@@ -0,0 +1,205 @@
+package com.shpp.p2p.cs.ekondratiuk.assignment15.filesProcessor.Utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+
+/** Pipelines are built directly, since files are not pipelined on a machine of one processor */
+class PipelinedStreamsTest {
+    /** Small buffers, so the data is handed over many times */
+    private static final int BUFFER_SIZE = 64;
+
+    private static final int BUFFERS = 3;
+
+    /** Time after which a pipeline is taken for a hung one */
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesAndReadsByRandomSizes() throws IOException {
+        byte[] data = new byte[100 * BUFFER_SIZE + 17];
+        Random random = new Random(1);
+        random.nextBytes(data);
+        Path file = directory.resolve("file.bin");
+        try (OutputStream out = new PipelinedOutputStream(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE), BUFFER_SIZE, BUFFERS, new ProcessMetrics())) {
+            for (int position = 0; position < data.length; ) {
+                int bytes = Math.min(random.nextInt(3 * BUFFER_SIZE), data.length - position);
+                if (bytes == 1) {
+                    out.write(data[position]);
+                } else {
+                    out.write(data, position, bytes);
+                }
+                position += bytes;
+                if (random.nextInt(4) == 0) {
+                    out.flush();
+                }
+            }
+        }
+        assertArrayEquals(data, Files.readAllBytes(file));
+
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        try (InputStream in = new PipelinedInputStream(FileChannel.open(file), BUFFER_SIZE, BUFFERS,
+                new ProcessMetrics())) {
+            byte[] buffer = new byte[3 * BUFFER_SIZE];
+            while (true) {
+                int bytes = random.nextInt(buffer.length);
+                if (bytes == 1) {
+                    int value = in.read();
+                    if (value == -1) {
+                        break;
+                    }
+                    read.write(value);
+                } else {
+                    bytes = in.read(buffer, 0, bytes);
+                    if (bytes == -1) {
+                        break;
+                    }
+                    read.write(buffer, 0, bytes);
+                }
+            }
+            assertEquals(-1, in.read());
+        }
+        assertArrayEquals(data, read.toByteArray());
+    }
+
+    @Test
+    void writesAndReadsEmptyData() throws IOException {
+        Path file = directory.resolve("file.bin");
+        new PipelinedOutputStream(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE),
+                BUFFER_SIZE, BUFFERS, ProcessMetrics.DISABLED).close();
+        assertEquals(0, Files.size(file));
+        try (InputStream in = new PipelinedInputStream(FileChannel.open(file), BUFFER_SIZE, BUFFERS,
+                ProcessMetrics.DISABLED)) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void closesInputBeforeItsEnd() throws IOException {
+        Path file = directory.resolve("file.bin");
+        byte[] data = new byte[100 * BUFFER_SIZE];
+        new Random(2).nextBytes(data);
+        Files.write(file, data);
+        FileChannel channel = FileChannel.open(file);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            InputStream in = new PipelinedInputStream(channel, BUFFER_SIZE, BUFFERS, ProcessMetrics.DISABLED);
+            assertEquals(data[0] & 0xff, in.read());
+            /* The reader waits for a free buffer now */
+            in.close();
+            in.close();
+        });
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void throwsIOExceptionOfWriter() {
+        assertWriterFailure(new IOException("No space left"));
+    }
+
+    @Test
+    void throwsRuntimeExceptionOfWriter() {
+        assertWriterFailure(new IllegalStateException("Broken channel"));
+    }
+
+    @Test
+    void throwsIOExceptionOfReader() {
+        assertReaderFailure(new IOException("Bad sector"));
+    }
+
+    @Test
+    void throwsRuntimeExceptionOfReader() {
+        assertReaderFailure(new IllegalStateException("Broken channel"));
+    }
+
+    /** Checks that the failure of the second write to the channel is thrown to the writing thread */
+    private static void assertWriterFailure(Exception failure) {
+        FailingChannel channel = new FailingChannel(failure);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            OutputStream out = new PipelinedOutputStream(channel, BUFFER_SIZE, BUFFERS, ProcessMetrics.DISABLED);
+            IOException exception = assertThrows(IOException.class, () -> {
+                try (out) {
+                    for (int i = 0; i < 100; i++) {
+                        out.write(new byte[BUFFER_SIZE]);
+                    }
+                }
+            });
+            assertSame(failure, failure instanceof IOException ? exception : exception.getCause());
+        });
+        assertFalse(channel.isOpen());
+    }
+
+    /** Checks that the data before the failure of the second read from the channel is read, then it is thrown */
+    private static void assertReaderFailure(Exception failure) {
+        FailingChannel channel = new FailingChannel(failure);
+        assertTimeoutPreemptively(TIMEOUT, () -> {
+            try (InputStream in = new PipelinedInputStream(channel, BUFFER_SIZE, BUFFERS,
+                    ProcessMetrics.DISABLED)) {
+                assertEquals(BUFFER_SIZE, in.readNBytes(BUFFER_SIZE).length);
+                IOException exception = assertThrows(IOException.class, in::read);
+                assertSame(failure, failure instanceof IOException ? exception : exception.getCause());
+            }
+        });
+        assertFalse(channel.isOpen());
+    }
+
+    /** Channel of endless zeros whose second read or write throws the failure */
+    private static class FailingChannel implements ReadableByteChannel, WritableByteChannel {
+        private final Exception failure;
+
+        private int calls;
+
+        private boolean open = true;
+
+        FailingChannel(Exception failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            return transfer(buffer);
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) throws IOException {
+            return transfer(buffer);
+        }
+
+        /** Skips the bytes of the buffer or throws the failure */
+        private int transfer(ByteBuffer buffer) throws IOException {
+            if (++calls == 2) {
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+            int bytes = buffer.remaining();
+            buffer.position(buffer.limit());
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}